@@ -0,0 +1,80 @@
+package com.example.moviltpi.core.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.User;
+import com.parse.ParseObject;
+import com.parse.ParseUser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pruebas de {@link UsuarioCache} y {@link AvatarCache} con usuarios proyectados, como los de la lista de
+ * usuarios (selectKeys): sin nada guardado de antes, registrarlos debe dejar su perfil en la caché y su foto
+ * lista para mostrarse, aunque Parse no los marque como completos.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UsuarioCacheInstrumentedTest {
+
+    private static final String URL = "https://example.com/avatar.jpg";
+
+    @Test
+    public void usuarioProyectadoRegistraPerfilYAvatarEnFrio() {
+        String userId = "prueba" + System.nanoTime();
+        SharedPreferences prefs = avatares();
+        prefs.edit().remove(userId).commit();
+
+        ParseUser usuario = proyectado(userId);
+        usuario.put(AvatarCache.KEY_FOTO, URL);
+        usuario.put(User.KEY_FOTO_PERFIL_VERSION, 2);
+        usuario.put(User.KEY_ULTIMA_CONEXION, new Date());
+        assertFalse(usuario.isDataAvailable());
+        assertTrue(UsuarioCache.tienePerfil(usuario));
+
+        MyApplication.getUsuarioCache().registrar(usuario);
+
+        assertSame(usuario, MyApplication.getUsuarioCache().buscar(userId));
+        assertEquals("2|" + URL, prefs.getString(userId, null));
+        prefs.edit().remove(userId).commit();
+    }
+
+    @Test
+    public void usuarioSinLosCamposDelPerfilNoSeRegistra() {
+        String userId = "prueba" + System.nanoTime();
+        ParseUser usuario = proyectado(userId);
+
+        assertFalse(UsuarioCache.tienePerfil(usuario));
+        MyApplication.getUsuarioCache().registrar(usuario);
+
+        assertNull(MyApplication.getUsuarioCache().buscar(userId));
+        assertNull(avatares().getString(userId, null));
+    }
+
+    /**
+     * Crea un usuario sin datos completos que solo trae su nombre, como uno recién llegado de una proyección.
+     */
+    private static ParseUser proyectado(String userId) {
+        ParseUser usuario = ParseObject.createWithoutData(ParseUser.class, userId);
+        usuario.put(User.KEY_USERNAME, "usuario_" + userId);
+        return usuario;
+    }
+
+    private static SharedPreferences avatares() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        return context.getSharedPreferences("avatar_cache", Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.moviltpi.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+import com.parse.livequery.LiveQueryException;
+import com.parse.livequery.ParseLiveQueryClient;
+import com.parse.livequery.ParseLiveQueryClientCallbacks;
+import com.parse.livequery.SubscriptionHandling;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Gestor único de la conexión LiveQuery de la aplicación, creado y mantenido por {@link MyApplication}.
+ * Centraliza lo que antes hacía cada proveedor por su cuenta:
+ * - Expone el estado de la conexión como LiveData
+ * - Multiplexa las suscripciones: varios oyentes con la misma clave comparten una única suscripción
+ * - Reconecta con backoff exponencial con jitter cuando el socket se cae
+ * - Al reconectarse (el cliente vuelve a suscribir las consultas activas) avisa a los oyentes para que
+ *   recuperen los eventos perdidos durante el corte
+ */
+public class LiveQueryManager {
+
+    private static final String TAG = "LiveQueryManager";
+
+    /** Espera inicial antes del primer reintento de conexión */
+    private static final long RECONEXION_BASE_MS = 1000;
+
+    /** Espera máxima entre reintentos de conexión */
+    private static final long RECONEXION_MAX_MS = 30000;
+
+    /**
+     * Estados posibles de la conexión LiveQuery.
+     */
+    public enum EstadoConexion {
+        /** Conectando o esperando para reintentar */
+        CONECTANDO,
+        /** Socket abierto y suscripciones activas */
+        CONECTADO,
+        /** Desconectado sin reintentos pendientes (sin suscripciones o cierre voluntario) */
+        DESCONECTADO
+    }
+
+    /**
+     * Oyente de eventos de una suscripción gestionada.
+     *
+     * @param <T> Tipo de objeto Parse de la consulta.
+     */
+    public interface Listener<T extends ParseObject> {
+        /**
+         * Se llama por cada evento recibido desde LiveQuery, en el hilo del socket.
+         *
+         * @param event  Tipo de evento.
+         * @param object Objeto afectado.
+         */
+        void onEvento(SubscriptionHandling.Event event, T object);
+
+        /**
+         * Se llama cuando la suscripción queda confirmada por el servidor, tanto la primera vez
+         * como después de cada reconexión. Es el momento de recuperar los eventos perdidos.
+         */
+        default void onSuscrito() {
+        }
+    }
+
+    /**
+     * Suscripción compartida por todos los oyentes registrados con la misma clave.
+     */
+    private static final class Suscripcion<T extends ParseObject> {
+        final String clave;
+        final ParseQuery<T> query;
+        final CopyOnWriteArrayList<Listener<T>> listeners = new CopyOnWriteArrayList<>();
+        SubscriptionHandling<T> handling;
+        /** Si el servidor ya confirmó la suscripción; las confirmaciones de las reconexiones no avisan */
+        boolean confirmada;
+
+        Suscripcion(String clave, ParseQuery<T> query) {
+            this.clave = clave;
+            this.query = query;
+        }
+    }
+
+    private final ParseLiveQueryClient client;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final MutableLiveData<EstadoConexion> estado = new MutableLiveData<>(EstadoConexion.DESCONECTADO);
+
+    /** Suscripciones activas indexadas por clave; solo se accede desde el hilo principal */
+    private final Map<String, Suscripcion<?>> suscripciones = new HashMap<>();
+
+    private int intentosReconexion = 0;
+    private boolean reconexionProgramada = false;
+    private boolean huboDesconexion = false;
+
+    private final Runnable reconectarRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reconexionProgramada = false;
+            if (!suscripciones.isEmpty()) {
+                Log.d(TAG, "Reintentando conexión LiveQuery (intento " + intentosReconexion + ")");
+                client.reconnect();
+            }
+        }
+    };
+
+    /**
+     * Crea el gestor para el servidor LiveQuery indicado.
+     *
+     * @param wsUri URI del WebSocket de LiveQuery.
+     */
+    public LiveQueryManager(@NonNull URI wsUri) {
+        client = ParseLiveQueryClient.Factory.getClient(wsUri);
+        client.registerListener(new ParseLiveQueryClientCallbacks() {
+            @Override
+            public void onLiveQueryClientConnected(ParseLiveQueryClient c) {
+                handler.post(() -> onConectado());
+            }
+
+            @Override
+            public void onLiveQueryClientDisconnected(ParseLiveQueryClient c, boolean userInitiated) {
+                handler.post(() -> onDesconectado(userInitiated));
+            }
+
+            @Override
+            public void onLiveQueryError(ParseLiveQueryClient c, LiveQueryException reason) {
+                Log.e(TAG, "Error de LiveQuery: " + reason.getMessage(), reason);
+            }
+
+            @Override
+            public void onSocketError(ParseLiveQueryClient c, Throwable reason) {
+                Log.e(TAG, "Error en el socket de LiveQuery: " + reason.getMessage(), reason);
+                handler.post(() -> onDesconectado(false));
+            }
+        });
+    }
+
+    /**
+     * Obtiene el estado de la conexión.
+     *
+     * @return LiveData con el estado actual de la conexión LiveQuery.
+     */
+    public LiveData<EstadoConexion> getEstado() {
+        return estado;
+    }
+
+    /**
+     * Indica si la conexión está abierta en este momento.
+     *
+     * @return true si el estado actual es {@link EstadoConexion#CONECTADO}.
+     */
+    public boolean isConectado() {
+        return estado.getValue() == EstadoConexion.CONECTADO;
+    }
+
+    /**
+     * Registra un oyente para la consulta indicada. Si ya existe una suscripción con la misma clave,
+     * el oyente se agrega a ella y no se abre una nueva. Debe llamarse desde el hilo principal.
+     *
+     * @param clave    Clave que identifica la consulta (dos consultas con la misma clave deben ser equivalentes).
+     * @param query    Consulta a suscribir.
+     * @param listener Oyente que recibirá los eventos.
+     * @param <T>      Tipo de objeto Parse de la consulta.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends ParseObject> void suscribir(@NonNull String clave, @NonNull ParseQuery<T> query,
+                                                  @NonNull Listener<T> listener) {
+        Suscripcion<T> suscripcion = (Suscripcion<T>) suscripciones.get(clave);
+        if (suscripcion == null) {
+            suscripcion = new Suscripcion<>(clave, query);
+            suscripciones.put(clave, suscripcion);
+            suscripcion.listeners.add(listener);
+            abrir(suscripcion);
+        } else {
+            suscripcion.listeners.addIfAbsent(listener);
+            if (isConectado()) {
+                listener.onSuscrito();
+            }
+        }
+    }
+
+    /**
+     * Quita un oyente. Cuando una clave se queda sin oyentes, la suscripción se cancela en el servidor.
+     * Debe llamarse desde el hilo principal.
+     *
+     * @param clave    Clave usada al suscribir.
+     * @param listener Oyente a quitar.
+     */
+    public void desuscribir(@NonNull String clave, @NonNull Listener<?> listener) {
+        Suscripcion<?> suscripcion = suscripciones.get(clave);
+        if (suscripcion == null) {
+            return;
+        }
+        suscripcion.listeners.remove(listener);
+        if (suscripcion.listeners.isEmpty()) {
+            suscripciones.remove(clave);
+            cerrar(suscripcion);
+        }
+    }
+
+    /**
+     * Abre la suscripción en el cliente y conecta sus eventos con los oyentes registrados.
+     */
+    private <T extends ParseObject> void abrir(Suscripcion<T> suscripcion) {
+        if (estado.getValue() == EstadoConexion.DESCONECTADO) {
+            estado.setValue(EstadoConexion.CONECTANDO);
+        }
+        try {
+            SubscriptionHandling<T> handling = client.subscribe(suscripcion.query);
+            handling.handleEvents((query, event, object) -> {
+                for (Listener<T> listener : suscripcion.listeners) {
+                    listener.onEvento(event, object);
+                }
+            });
+            handling.handleSubscribe(query -> handler.post(() -> {
+                // La confirmación implica que el socket está abierto, aunque no haya llegado el callback de conexión
+                if (estado.getValue() != EstadoConexion.CONECTADO) {
+                    estado.setValue(EstadoConexion.CONECTADO);
+                }
+                // Al reconectar, el cliente vuelve a suscribir por su cuenta y la recuperación la dispara onConectado
+                if (!suscripcion.confirmada) {
+                    suscripcion.confirmada = true;
+                    for (Listener<T> listener : suscripcion.listeners) {
+                        listener.onSuscrito();
+                    }
+                }
+            }));
+            handling.handleError((query, exception) ->
+                    Log.e(TAG, "Error en la suscripción " + suscripcion.clave + ": " + exception.getMessage(), exception));
+            suscripcion.handling = handling;
+            suscripcion.confirmada = false;
+            Log.d(TAG, "Suscripción abierta: " + suscripcion.clave);
+        } catch (Exception e) {
+            Log.e(TAG, "Error al suscribir " + suscripcion.clave + ": " + e.getMessage(), e);
+            programarReconexion();
+        }
+    }
+
+    /**
+     * Cancela la suscripción en el cliente.
+     */
+    private <T extends ParseObject> void cerrar(Suscripcion<T> suscripcion) {
+        try {
+            if (suscripcion.handling != null) {
+                client.unsubscribe(suscripcion.query, suscripcion.handling);
+            }
+            Log.d(TAG, "Suscripción cerrada: " + suscripcion.clave);
+        } catch (Exception e) {
+            Log.e(TAG, "Error al cancelar la suscripción " + suscripcion.clave + ": " + e.getMessage(), e);
+        }
+        suscripcion.handling = null;
+    }
+
+    /**
+     * Conexión establecida: reinicia el backoff y, si venimos de un corte, avisa a los oyentes para que recuperen
+     * los eventos perdidos. Las suscripciones no se reabren: el cliente las vuelve a enviar al reconectarse, y
+     * cerrarlas y abrirlas de nuevo perdería los eventos que lleguen entre una cosa y la otra.
+     */
+    private void onConectado() {
+        intentosReconexion = 0;
+        handler.removeCallbacks(reconectarRunnable);
+        reconexionProgramada = false;
+        estado.setValue(EstadoConexion.CONECTADO);
+
+        if (huboDesconexion) {
+            huboDesconexion = false;
+            Log.d(TAG, "Reconectado: recuperando eventos de " + suscripciones.size() + " suscripciones");
+            for (Suscripcion<?> suscripcion : suscripciones.values()) {
+                for (Listener<?> listener : suscripcion.listeners) {
+                    listener.onSuscrito();
+                }
+            }
+        }
+    }
+
+    /**
+     * Conexión perdida: si hay suscripciones activas y el cierre no fue voluntario, programa un reintento.
+     */
+    private void onDesconectado(boolean voluntario) {
+        huboDesconexion = true;
+        if (voluntario || suscripciones.isEmpty()) {
+            estado.setValue(EstadoConexion.DESCONECTADO);
+            return;
+        }
+        estado.setValue(EstadoConexion.CONECTANDO);
+        programarReconexion();
+    }
+
+    /**
+     * Programa un reintento de conexión con backoff exponencial y jitter completo,
+     * para que muchos dispositivos no reconecten todos al mismo tiempo tras un corte del servidor.
+     */
+    private void programarReconexion() {
+        if (reconexionProgramada) {
+            return;
+        }
+        long tope = Math.min(RECONEXION_MAX_MS, RECONEXION_BASE_MS << Math.min(intentosReconexion, 5));
+        long espera = RECONEXION_BASE_MS / 2 + (long) (random.nextDouble() * tope);
+        intentosReconexion++;
+        reconexionProgramada = true;
+        Log.d(TAG, "Reconexión programada en " + espera + " ms");
+        handler.postDelayed(reconectarRunnable, espera);
+    }
+}
@@ -4,15 +4,23 @@ import android.app.Application;
 
 import com.example.moviltpi.R;
 import com.example.moviltpi.core.models.Comentario;
+import com.example.moviltpi.core.models.Conversacion;
 import com.example.moviltpi.core.models.Mensaje;
 import com.example.moviltpi.core.models.Post;
 import com.example.moviltpi.core.models.User;
+import com.example.moviltpi.core.utils.AvatarCache;
+import com.example.moviltpi.core.utils.UsuarioCache;
+import com.example.moviltpi.features.chat.LatenciaChat;
+import com.example.moviltpi.features.chat.MarcadorLectura;
+import com.example.moviltpi.features.chat.MensajeIndice;
+import com.example.moviltpi.features.chat.MensajeOutbox;
+import com.example.moviltpi.features.chat.MensajeRouter;
 import com.parse.Parse;
 import com.parse.ParseACL;
 import com.parse.ParseInstallation;
 import com.parse.ParseObject;
-import com.parse.livequery.ParseLiveQueryClient;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -20,6 +28,103 @@ import java.net.URISyntaxException;
  * Clase de aplicación personalizada que inicializa Parse y configura ParseLiveQueryClient.
  */
 public class MyApplication extends Application {
+
+    /** Gestor de la conexión LiveQuery compartido por toda la aplicación */
+    private static LiveQueryManager liveQueryManager;
+
+    /** Cola de salida de mensajes del chat, compartida por toda la aplicación */
+    private static MensajeOutbox mensajeOutbox;
+
+    /** Suscripción única a los mensajes del usuario, compartida por todos los chats */
+    private static MensajeRouter mensajeRouter;
+
+    /** Marcas de lectura pendientes de escribir, agrupadas entre conversaciones */
+    private static MarcadorLectura marcadorLectura;
+
+    /** Latido de presencia del usuario actual */
+    private static Presencia presencia;
+
+    /** Perfiles de usuario ya descargados, compartidos por todas las pantallas */
+    private static UsuarioCache usuarioCache;
+
+    /** Índices de búsqueda de los chats, guardados junto con el historial local */
+    private static MensajeIndice mensajeIndice;
+
+    /** Métricas de latencia de los mensajes del chat */
+    private static LatenciaChat latenciaChat;
+
+    /**
+     * Obtiene el gestor de LiveQuery de la aplicación.
+     *
+     * @return El gestor creado en {@link #onCreate()}, o null si la URL del WebSocket no era válida.
+     */
+    public static LiveQueryManager getLiveQueryManager() {
+        return liveQueryManager;
+    }
+
+    /**
+     * Obtiene la cola de salida de mensajes del chat.
+     *
+     * @return La cola creada en {@link #onCreate()}.
+     */
+    public static MensajeOutbox getMensajeOutbox() {
+        return mensajeOutbox;
+    }
+
+    /**
+     * Obtiene el router de mensajes del chat.
+     *
+     * @return El router creado en {@link #onCreate()}.
+     */
+    public static MensajeRouter getMensajeRouter() {
+        return mensajeRouter;
+    }
+
+    /**
+     * Obtiene el marcador de lectura de los chats.
+     *
+     * @return El marcador creado en {@link #onCreate()}.
+     */
+    public static MarcadorLectura getMarcadorLectura() {
+        return marcadorLectura;
+    }
+
+    /**
+     * Obtiene el latido de presencia del usuario actual.
+     *
+     * @return La presencia creada en {@link #onCreate()}.
+     */
+    public static Presencia getPresencia() {
+        return presencia;
+    }
+
+    /**
+     * Obtiene la caché de perfiles de usuario.
+     *
+     * @return La caché creada en {@link #onCreate()}.
+     */
+    public static UsuarioCache getUsuarioCache() {
+        return usuarioCache;
+    }
+
+    /**
+     * Obtiene los índices de búsqueda de los chats.
+     *
+     * @return Los índices creados en {@link #onCreate()}.
+     */
+    public static MensajeIndice getMensajeIndice() {
+        return mensajeIndice;
+    }
+
+    /**
+     * Obtiene las métricas de latencia del chat.
+     *
+     * @return Las métricas creadas en {@link #onCreate()}.
+     */
+    public static LatenciaChat getLatenciaChat() {
+        return latenciaChat;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -32,6 +137,7 @@ public class MyApplication extends Application {
         ParseObject.registerSubclass(User.class);
         ParseObject.registerSubclass(Comentario.class);
         ParseObject.registerSubclass(Mensaje.class);
+        ParseObject.registerSubclass(Conversacion.class);
 
         // Inicializa Parse con las credenciales de la aplicación.
         Parse.initialize(new Parse.Configuration.Builder(this)
@@ -40,6 +146,15 @@ public class MyApplication extends Application {
                 .server(getString(R.string.back4app_server_url))
                 .build());
 
+        // Inicializa la caché de fotos de perfil compartida por todas las pantallas.
+        AvatarCache.init(this);
+
+        // Crea la caché de perfiles de usuario, que llenan las pantallas que ya consultaron usuarios.
+        usuarioCache = new UsuarioCache();
+
+        // Crea los índices de búsqueda de los chats; cada conversación se guarda en su propio archivo.
+        mensajeIndice = new MensajeIndice(new File(getFilesDir(), "indice_chat"));
+
         // Configura ParseLiveQueryClient para la comunicación en tiempo real.
         try {
             // Construye la URL del WebSocket a partir de la URL del servidor Parse.
@@ -48,15 +163,26 @@ public class MyApplication extends Application {
                     .replace("http://", "ws://")
                     .replaceAll("/parse$", "/parse/liveQuery"); // Asegura el formato correcto.
 
-            // Crea una instancia de ParseLiveQueryClient con la URL del WebSocket.
-            ParseLiveQueryClient client = ParseLiveQueryClient.Factory.getClient(new URI(wsUrl));
-            // Nota: Podría ser útil guardar esta instancia en una variable estática o singleton
-            // para su reutilización en toda la aplicación.
+            // Crea el gestor único de LiveQuery, que mantiene la conexión y las suscripciones de toda la app.
+            liveQueryManager = new LiveQueryManager(new URI(wsUrl));
         } catch (URISyntaxException e) {
             // Maneja la excepción si la URL del WebSocket no es válida.
             e.printStackTrace();
         }
 
+        // Crea las métricas de latencia antes que la cola de salida, que marca cada envío.
+        latenciaChat = new LatenciaChat();
+
+        // Crea la cola de salida de mensajes; reintenta los fallidos cada vez que LiveQuery reconecta.
+        mensajeOutbox = new MensajeOutbox(liveQueryManager);
+
+        // Crea el router de mensajes; se suscribe cuando hay una sesión iniciada.
+        mensajeRouter = new MensajeRouter(liveQueryManager);
+
+        // Crea el marcador de lectura y el latido de presencia; ambos agrupan sus escrituras.
+        marcadorLectura = new MarcadorLectura();
+        presencia = new Presencia();
+
         // Configura los Access Control Lists (ACLs) predeterminados para Parse.
         // Permite acceso público de lectura y escritura a los objetos Parse.
         ParseACL defaultACL = new ParseACL();
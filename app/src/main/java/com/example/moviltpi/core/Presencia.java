@@ -0,0 +1,101 @@
+package com.example.moviltpi.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.moviltpi.core.models.User;
+import com.parse.ParseUser;
+
+import java.util.Date;
+
+/**
+ * Latido de presencia del usuario actual, compartido por toda la aplicación.
+ * <p>
+ * Mientras haya un chat en primer plano se escribe {@link User#KEY_ULTIMA_CONEXION} como mucho una vez
+ * cada {@link #INTERVALO_LATIDO_MS}: abrir y cerrar chats seguidos no genera una escritura por cada uno,
+ * y al pausar el último chat el latido se detiene. Los demás usuarios consideran en línea a quien escribió
+ * su latido hace menos de dos intervalos.
+ * <p>
+ * Todos los métodos deben llamarse desde el hilo principal.
+ */
+public class Presencia {
+
+    private static final String TAG = "Presencia";
+
+    /** Intervalo entre latidos mientras hay un chat a la vista */
+    public static final long INTERVALO_LATIDO_MS = 60_000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable latidoRunnable = this::latido;
+
+    /** Pantallas que pidieron el latido y todavía no lo soltaron */
+    private int activos = 0;
+
+    /** Momento del último latido escrito, en tiempo de reloj monotónico */
+    private long ultimoLatido = 0;
+
+    /**
+     * Empieza (o mantiene) el latido. Si el último se escribió hace menos de un intervalo no se
+     * vuelve a escribir hasta que se cumpla.
+     */
+    public void iniciar() {
+        activos++;
+        if (activos > 1) {
+            return;
+        }
+        long transcurrido = SystemClock.elapsedRealtime() - ultimoLatido;
+        if (ultimoLatido == 0 || transcurrido >= INTERVALO_LATIDO_MS) {
+            latido();
+        } else {
+            handler.postDelayed(latidoRunnable, INTERVALO_LATIDO_MS - transcurrido);
+        }
+    }
+
+    /**
+     * Suelta el latido pedido con {@link #iniciar()}; se detiene cuando ninguna pantalla lo necesita.
+     */
+    public void detener() {
+        if (activos == 0) {
+            return;
+        }
+        activos--;
+        if (activos == 0) {
+            handler.removeCallbacks(latidoRunnable);
+        }
+    }
+
+    /**
+     * Escribe la hora de conexión del usuario actual y programa el siguiente latido.
+     */
+    private void latido() {
+        handler.removeCallbacks(latidoRunnable);
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (activos == 0 || currentUser == null) {
+            return;
+        }
+        ultimoLatido = SystemClock.elapsedRealtime();
+        currentUser.put(User.KEY_ULTIMA_CONEXION, new Date());
+        currentUser.saveInBackground(e -> {
+            if (e != null) {
+                Log.e(TAG, "Error al guardar la presencia: " + e.getMessage(), e);
+            }
+        });
+        handler.postDelayed(latidoRunnable, INTERVALO_LATIDO_MS);
+    }
+
+    /**
+     * Indica si un usuario está en línea según su último latido.
+     *
+     * @param usuario Usuario ya cargado
+     * @return true si escribió su latido hace menos de dos intervalos
+     */
+    public static boolean estaEnLinea(@Nullable ParseUser usuario) {
+        Date ultimaConexion = usuario != null ? usuario.getDate(User.KEY_ULTIMA_CONEXION) : null;
+        return ultimaConexion != null
+                && System.currentTimeMillis() - ultimaConexion.getTime() < 2 * INTERVALO_LATIDO_MS;
+    }
+}
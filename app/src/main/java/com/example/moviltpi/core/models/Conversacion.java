@@ -0,0 +1,176 @@
+package com.example.moviltpi.core.models;
+
+import com.parse.ParseClassName;
+import com.parse.ParseObject;
+import com.parse.ParseUser;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversación entre dos usuarios, usada como bandeja de entrada.
+ * Guarda una copia del último mensaje y un contador de no leídos por participante,
+ * para que la lista de chats se cargue con una única consulta sin leer los mensajes.
+ */
+@ParseClassName("Conversacion")
+public class Conversacion extends ParseObject {
+
+    public static final String KEY_CLAVE = "clave";
+    public static final String KEY_PARTICIPANTES = "participantes";
+    public static final String KEY_PARTICIPANTES_IDS = "participantesIds";
+    public static final String KEY_ULTIMO_MENSAJE = "ultimoMensaje";
+    public static final String KEY_ULTIMO_REMITENTE_ID = "ultimoRemitenteId";
+    public static final String KEY_ULTIMO_MENSAJE_AT = "ultimoMensajeAt";
+    public static final String KEY_NO_LEIDOS = "noLeidos";
+    public static final String KEY_LEIDO_HASTA = "leidoHasta";
+
+    public Conversacion() {
+    }
+
+    /**
+     * Calcula la clave canónica de la conversación entre dos usuarios: sus IDs ordenados,
+     * de modo que no importa quién envía y quién recibe.
+     *
+     * @param idA ID de uno de los participantes
+     * @param idB ID del otro participante
+     * @return Clave de la conversación
+     */
+    public static String calcularClave(String idA, String idB) {
+        return idA.compareTo(idB) < 0 ? idA + "_" + idB : idB + "_" + idA;
+    }
+
+    public String getClave() {
+        return getString(KEY_CLAVE);
+    }
+
+    public List<ParseUser> getParticipantes() {
+        return getList(KEY_PARTICIPANTES);
+    }
+
+    /**
+     * Establece los dos participantes, junto con sus IDs (para filtrar la bandeja) y la clave.
+     */
+    public void setParticipantes(ParseUser a, ParseUser b) {
+        put(KEY_PARTICIPANTES, Arrays.asList(a, b));
+        put(KEY_PARTICIPANTES_IDS, Arrays.asList(a.getObjectId(), b.getObjectId()));
+        put(KEY_CLAVE, calcularClave(a.getObjectId(), b.getObjectId()));
+    }
+
+    /**
+     * Obtiene el participante que no es el usuario indicado.
+     *
+     * @param userId ID del usuario actual
+     * @return El otro participante, o null si no se encuentra
+     */
+    public ParseUser getOtroParticipante(String userId) {
+        List<ParseUser> participantes = getParticipantes();
+        if (participantes == null) {
+            return null;
+        }
+        for (ParseUser participante : participantes) {
+            if (participante != null && !participante.getObjectId().equals(userId)) {
+                return participante;
+            }
+        }
+        return null;
+    }
+
+    public String getUltimoMensaje() {
+        return getString(KEY_ULTIMO_MENSAJE);
+    }
+
+    public String getUltimoRemitenteId() {
+        return getString(KEY_ULTIMO_REMITENTE_ID);
+    }
+
+    public Date getUltimoMensajeAt() {
+        return getDate(KEY_ULTIMO_MENSAJE_AT);
+    }
+
+    /**
+     * Registra mensajes nuevos: suma uno por mensaje al contador de no leídos de su destinatario y
+     * actualiza la copia del último mensaje solo con los posteriores al que ya tiene, para que un mensaje
+     * confirmado tarde no reemplace a uno más nuevo. En una conversación existente se usa un incremento
+     * atómico en el servidor para no pisar lecturas o envíos concurrentes.
+     *
+     * @param mensajes Mensajes ya guardados en el servidor
+     */
+    public void registrarMensajes(List<Mensaje> mensajes) {
+        Map<String, Integer> nuevos = new HashMap<>();
+        for (Mensaje mensaje : mensajes) {
+            Date fecha = mensaje.getCreatedAt() != null ? mensaje.getCreatedAt() : new Date();
+            Date actual = getUltimoMensajeAt();
+            if (actual == null || !fecha.before(actual)) {
+                put(KEY_ULTIMO_MENSAJE, mensaje.getTexto());
+                put(KEY_ULTIMO_REMITENTE_ID, mensaje.getRemitente().getObjectId());
+                put(KEY_ULTIMO_MENSAJE_AT, fecha);
+            }
+            nuevos.merge(mensaje.getDestinatario().getObjectId(), 1, Integer::sum);
+        }
+        if (getObjectId() == null) {
+            Map<String, Object> noLeidos = new HashMap<>();
+            List<String> ids = getList(KEY_PARTICIPANTES_IDS);
+            if (ids != null) {
+                for (String id : ids) {
+                    noLeidos.put(id, 0);
+                }
+            }
+            noLeidos.putAll(nuevos);
+            put(KEY_NO_LEIDOS, noLeidos);
+        } else {
+            for (Map.Entry<String, Integer> entrada : nuevos.entrySet()) {
+                increment(KEY_NO_LEIDOS + "." + entrada.getKey(), entrada.getValue());
+            }
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de mensajes no leídos por un participante.
+     *
+     * @param userId ID del participante
+     * @return Cantidad de mensajes no leídos, nunca negativa
+     */
+    public int getNoLeidos(String userId) {
+        Map<String, Object> noLeidos = getMap(KEY_NO_LEIDOS);
+        if (noLeidos == null) {
+            return 0;
+        }
+        Object valor = noLeidos.get(userId);
+        return valor instanceof Number ? Math.max(0, ((Number) valor).intValue()) : 0;
+    }
+
+    /**
+     * Obtiene hasta dónde leyó un participante: el createdAt del último mensaje que vio.
+     *
+     * @param userId ID del participante
+     * @return Fecha del último mensaje leído, o null si nunca abrió la conversación
+     */
+    public Date getLeidoHasta(String userId) {
+        Map<String, Object> leidoHasta = getMap(KEY_LEIDO_HASTA);
+        if (leidoHasta == null) {
+            return null;
+        }
+        Object valor = leidoHasta.get(userId);
+        return valor instanceof Date ? (Date) valor : null;
+    }
+
+    /**
+     * Marca la conversación como leída por un participante hasta un mensaje: guarda la marca de lectura
+     * y descuenta de sus no leídos los mensajes que vio, en la misma escritura. El descuento es un
+     * incremento negativo en el servidor, así que no pisa los mensajes que el otro participante sume
+     * entre la lectura de la conversación y el guardado.
+     *
+     * @param userId     ID del participante
+     * @param leidoHasta createdAt del último mensaje que vio
+     * @param leidos     Cantidad de no leídos que cubre la marca
+     */
+    public void marcarLeidaHasta(String userId, Date leidoHasta, int leidos) {
+        put(KEY_LEIDO_HASTA + "." + userId, leidoHasta);
+        if (leidos > 0) {
+            increment(KEY_NO_LEIDOS + "." + userId, -leidos);
+        }
+    }
+}
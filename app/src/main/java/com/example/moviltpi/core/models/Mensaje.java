@@ -11,6 +11,20 @@ public class Mensaje extends ParseObject {
     public static final String KEY_TEXTO = "texto";
     public static final String KEY_REMITENTE = "remitente";
     public static final String KEY_DESTINATARIO = "destinatario";
+    public static final String KEY_CONVERSACION_ID = "conversacionId";
+    public static final String KEY_CLIENT_ID = "clientId";
+    /** Hora del dispositivo del remitente al enviar el mensaje; solo para medir latencias */
+    public static final String KEY_ENVIADO_EN = "enviadoEn";
+
+    /** Estado de envío de un mensaje propio, visto desde este dispositivo */
+    public enum EstadoEnvio {
+        ENVIANDO,
+        ENVIADO,
+        FALLIDO
+    }
+
+    /** Solo existe en memoria; no se guarda en el servidor */
+    private volatile boolean envioFallido = false;
 
     public Mensaje() {
     }
@@ -39,6 +53,56 @@ public class Mensaje extends ParseObject {
         put(KEY_DESTINATARIO, user);
     }
 
+    public String getConversacionId() {
+        return getString(KEY_CONVERSACION_ID);
+    }
+
+    public void setConversacionId(String conversacionId) {
+        put(KEY_CONVERSACION_ID, conversacionId);
+    }
+
+    public String getClientId() {
+        return getString(KEY_CLIENT_ID);
+    }
+
+    public void setClientId(String clientId) {
+        put(KEY_CLIENT_ID, clientId);
+    }
+
+    public Date getEnviadoEn() {
+        return getDate(KEY_ENVIADO_EN);
+    }
+
+    public void setEnviadoEn(Date enviadoEn) {
+        put(KEY_ENVIADO_EN, enviadoEn);
+    }
+
+    /**
+     * Obtiene un ID estable desde que el mensaje se crea en el dispositivo: el clientId si lo tiene
+     * (no cambia al guardarse), o el objectId para los mensajes anteriores a ese campo.
+     *
+     * @return ID local del mensaje, o null si no tiene ninguno de los dos
+     */
+    public String getIdLocal() {
+        String clientId = getClientId();
+        return clientId != null ? clientId : getObjectId();
+    }
+
+    /**
+     * Obtiene el estado de envío: enviado si ya tiene objectId, fallido si se agotaron los reintentos,
+     * o enviando mientras está en la cola de salida.
+     */
+    public EstadoEnvio getEstadoEnvio() {
+        if (getObjectId() != null) {
+            return EstadoEnvio.ENVIADO;
+        }
+        return envioFallido ? EstadoEnvio.FALLIDO : EstadoEnvio.ENVIANDO;
+    }
+
+    public void setEnvioFallido(boolean envioFallido) {
+        this.envioFallido = envioFallido;
+    }
+
     public Date getFecha() {
         return getCreatedAt();
     }
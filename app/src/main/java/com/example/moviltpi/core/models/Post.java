@@ -17,6 +17,7 @@ public class Post extends ParseObject {
     public static final String KEY_CATEGORIA = "categoria";
     public static final String KEY_PRESUPUESTO = "presupuesto";
     public static final String KEY_IMAGENES = "imagenes";
+    public static final String KEY_PLACEHOLDERS = "placeholders";
     public static final String KEY_USER = "user";
 
     public String getId() {
@@ -71,6 +72,34 @@ public class Post extends ParseObject {
         put(KEY_IMAGENES, imagenes);
     }
 
+    /**
+     * Vistas previas de las imágenes, en el mismo orden que {@link #getImagenes()}.
+     * Un elemento puede ser null si no se pudo calcular la vista previa de esa imagen.
+     */
+    public List<String> getPlaceholders() {
+        return getList(KEY_PLACEHOLDERS);
+    }
+
+    /**
+     * Busca la vista previa de una imagen por su URL.
+     *
+     * @param url URL de la imagen, tal como aparece en {@link #getImagenes()}.
+     * @return La vista previa, o null si la imagen no tiene.
+     */
+    public String getPlaceholder(String url) {
+        List<String> imagenes = getImagenes();
+        List<String> placeholders = getPlaceholders();
+        if (imagenes == null || placeholders == null) {
+            return null;
+        }
+        int index = imagenes.indexOf(url);
+        return index >= 0 && index < placeholders.size() ? placeholders.get(index) : null;
+    }
+
+    public void setPlaceholders(List<String> placeholders) {
+        put(KEY_PLACEHOLDERS, placeholders);
+    }
+
     public User getUser() {
         return (User) getParseObject(KEY_USER);
     }
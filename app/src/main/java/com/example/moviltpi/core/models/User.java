@@ -8,9 +8,11 @@ public class User extends ParseObject {
 
     public static final String KEY_RED_SOCIAL = "redSocial";
     public static final String KEY_FOTO_PERFIL = "fotoperfil";
+    public static final String KEY_FOTO_PERFIL_VERSION = "fotoPerfilVersion";
     public static final String KEY_USERNAME = "username";
     public static final String KEY_EMAIL = "email";
     public static final String KEY_PASSWORD = "password";
+    public static final String KEY_ULTIMA_CONEXION = "ultimaConexion";
 
     public User() {
         // Constructor vacío necesario para Parse
@@ -36,6 +38,14 @@ public class User extends ParseObject {
         }
     }
 
+    public int getFotoPerfilVersion() {
+        return getInt(KEY_FOTO_PERFIL_VERSION);
+    }
+
+    public void setFotoPerfilVersion(int version) {
+        put(KEY_FOTO_PERFIL_VERSION, version);
+    }
+
     public String getUsername() {
         return getString(KEY_USERNAME);
     }
@@ -0,0 +1,224 @@
+package com.example.moviltpi.core.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.ObjectKey;
+import com.example.moviltpi.R;
+import com.example.moviltpi.core.models.User;
+import com.parse.ParseUser;
+
+/**
+ * Caché de fotos de perfil indexada por ID de usuario.
+ * Mantiene en memoria y en disco la URL vigente de cada avatar junto con su versión, y carga las imágenes
+ * con Glide usando como firma el par (usuario, versión). Así, una vez vista, cada foto de perfil se sirve
+ * desde la caché de memoria o de disco de Glide, y al actualizarse el perfil el incremento de versión
+ * invalida todas las entradas anteriores sin tener que limpiar nada manualmente.
+ */
+public class AvatarCache {
+
+    private static final String TAG = "AvatarCache";
+
+    /** Campo del usuario de Parse que contiene la URL de la foto de perfil */
+    static final String KEY_FOTO = "foto_perfil";
+
+    /** Archivo de preferencias donde se persiste el mapa usuario → versión|url */
+    private static final String PREFS = "avatar_cache";
+
+    /** Cantidad máxima de entradas que se mantienen en memoria */
+    private static final int MAX_ENTRADAS_MEMORIA = 500;
+
+    private static AvatarCache instance;
+
+    private final Context appContext;
+    private final SharedPreferences prefs;
+    private final LruCache<String, Entrada> entradas = new LruCache<>(MAX_ENTRADAS_MEMORIA);
+
+    /**
+     * Variantes de tamaño en las que se decodifican los avatares.
+     * Cada variante ocupa su propia entrada en la caché de Glide.
+     */
+    public enum Tamano {
+        /** Listas y filas (usuarios, chat) */
+        CHICO(48),
+        /** Cabeceras de perfil y detalle de post */
+        GRANDE(120);
+
+        private final int dp;
+
+        Tamano(int dp) {
+            this.dp = dp;
+        }
+    }
+
+    /**
+     * URL y versión vigentes del avatar de un usuario.
+     */
+    private static final class Entrada {
+        final String url;
+        final int version;
+
+        Entrada(String url, int version) {
+            this.url = url;
+            this.version = version;
+        }
+    }
+
+    private AvatarCache(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Inicializa la caché. Debe llamarse una vez desde {@code MyApplication.onCreate()}.
+     *
+     * @param context Contexto de la aplicación.
+     */
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache(context);
+        }
+    }
+
+    /**
+     * Obtiene la instancia única de la caché.
+     *
+     * @return La instancia inicializada en {@link #init(Context)}.
+     */
+    public static AvatarCache getInstance() {
+        if (instance == null) {
+            throw new IllegalStateException(TAG + " no fue inicializado");
+        }
+        return instance;
+    }
+
+    /**
+     * Registra la foto de perfil de un usuario ya descargado desde Parse, completo o con solo algunos
+     * campos (selectKeys). No hace nada si no se descargó su foto o si no tiene.
+     *
+     * @param user Usuario de Parse.
+     */
+    public void registrar(@Nullable ParseUser user) {
+        if (user == null || !user.isDataAvailable(KEY_FOTO)) {
+            return;
+        }
+        int version = user.isDataAvailable(User.KEY_FOTO_PERFIL_VERSION) ? user.getInt(User.KEY_FOTO_PERFIL_VERSION) : 0;
+        registrar(user.getObjectId(), user.getString(KEY_FOTO), version);
+    }
+
+    /**
+     * Registra la URL y versión del avatar de un usuario.
+     * Solo reemplaza la entrada existente si la versión es igual o más nueva, o si la URL cambió,
+     * para que datos viejos que lleguen tarde no pisen una foto recién actualizada.
+     *
+     * @param userId  ID del usuario.
+     * @param url     URL de la foto de perfil.
+     * @param version Versión de la foto según el servidor.
+     */
+    public synchronized void registrar(@Nullable String userId, @Nullable String url, int version) {
+        if (userId == null || url == null) {
+            return;
+        }
+        Entrada actual = buscar(userId);
+        if (actual != null && (actual.version > version || (actual.version == version && actual.url.equals(url)))) {
+            return;
+        }
+        guardar(userId, new Entrada(url, version));
+    }
+
+    /**
+     * Actualiza la foto de perfil del usuario indicado incrementando su versión.
+     * Modifica el usuario (que el llamador debe guardar) y la entrada local, de modo que todas
+     * las vistas que carguen el avatar a partir de ahora obtengan la foto nueva.
+     *
+     * @param user     Usuario cuya foto cambió.
+     * @param nuevaUrl URL de la nueva foto de perfil.
+     */
+    public synchronized void invalidar(@NonNull ParseUser user, @NonNull String nuevaUrl) {
+        user.put(KEY_FOTO, nuevaUrl);
+        user.increment(User.KEY_FOTO_PERFIL_VERSION);
+
+        Entrada actual = buscar(user.getObjectId());
+        int nuevaVersion = Math.max(user.getInt(User.KEY_FOTO_PERFIL_VERSION),
+                actual != null ? actual.version + 1 : 0);
+        guardar(user.getObjectId(), new Entrada(nuevaUrl, nuevaVersion));
+    }
+
+    /**
+     * Carga el avatar de un usuario en un ImageView.
+     * Si el usuario no tiene una foto registrada se muestra el ícono por defecto.
+     *
+     * @param destino ImageView donde se muestra el avatar.
+     * @param userId  ID del usuario.
+     * @param tamano  Variante de tamaño a decodificar.
+     */
+    public void cargar(@NonNull ImageView destino, @Nullable String userId, @NonNull Tamano tamano) {
+        Entrada entrada;
+        synchronized (this) {
+            entrada = userId != null ? buscar(userId) : null;
+        }
+        if (entrada == null) {
+            Glide.with(destino).clear(destino);
+            destino.setImageResource(R.drawable.ic_person);
+            return;
+        }
+
+        int px = Math.round(tamano.dp * appContext.getResources().getDisplayMetrics().density);
+        Glide.with(destino)
+                .load(entrada.url)
+                .override(px, px)
+                .centerCrop()
+                .signature(new ObjectKey(userId + ":" + entrada.version))
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .placeholder(R.drawable.ic_person)
+                .error(R.drawable.ic_person)
+                .dontAnimate() // CircleImageView no soporta las transiciones de Glide
+                .into(destino);
+    }
+
+    /**
+     * Busca la entrada de un usuario en memoria y, si no está, en disco.
+     *
+     * @param userId ID del usuario.
+     * @return La entrada, o null si no hay foto registrada.
+     */
+    @Nullable
+    private Entrada buscar(String userId) {
+        Entrada entrada = entradas.get(userId);
+        if (entrada != null) {
+            return entrada;
+        }
+        String guardada = prefs.getString(userId, null);
+        if (guardada == null) {
+            return null;
+        }
+        int separador = guardada.indexOf('|');
+        try {
+            entrada = new Entrada(guardada.substring(separador + 1),
+                    Integer.parseInt(guardada.substring(0, separador)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            prefs.edit().remove(userId).apply(); // Entrada corrupta: descartarla
+            return null;
+        }
+        entradas.put(userId, entrada);
+        return entrada;
+    }
+
+    /**
+     * Guarda una entrada en memoria y en disco.
+     *
+     * @param userId  ID del usuario.
+     * @param entrada Entrada a guardar.
+     */
+    private void guardar(String userId, Entrada entrada) {
+        entradas.put(userId, entrada);
+        prefs.edit().putString(userId, entrada.version + "|" + entrada.url).apply();
+    }
+}
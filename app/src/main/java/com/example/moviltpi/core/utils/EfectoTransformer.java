@@ -9,6 +9,8 @@ import androidx.viewpager2.widget.ViewPager2;
  * Esta clase implementa la interfaz {@link ViewPager2.PageTransformer} para aplicar un efecto de transformación
  * a las páginas de un {@link ViewPager2}. El efecto consiste en escalar y ajustar la opacidad de las páginas
  * a medida que se desplazan, creando una apariencia de "profundidad" o "zoom out".
+ * Mientras una página está en transición se le asigna una capa de hardware, de modo que los cambios
+ * de escala y opacidad se componen en la GPU sin redibujar la vista; en reposo la capa se libera.
  */
 public class EfectoTransformer implements ViewPager2.PageTransformer {
 
@@ -43,5 +45,12 @@ public class EfectoTransformer implements ViewPager2.PageTransformer {
         // Esto crea un efecto de desvanecimiento a medida que las páginas se alejan del centro.
         // La fórmula asegura que la opacidad varíe entre 0.5 (cuando la escala es MIN_SCALE) y 1 (cuando la escala es 1).
         page.setAlpha(0.5f + (scale - MIN_SCALE) / (1 - MIN_SCALE) * (1 - 0.5f));
+
+        // Solo las páginas que se están moviendo (ni centradas ni fuera de pantalla) necesitan la capa de hardware.
+        boolean enTransicion = position != 0f && Math.abs(position) < 1f;
+        int tipoCapa = enTransicion ? View.LAYER_TYPE_HARDWARE : View.LAYER_TYPE_NONE;
+        if (page.getLayerType() != tipoCapa) {
+            page.setLayerType(tipoCapa, null);
+        }
     }
 }
\ No newline at end of file
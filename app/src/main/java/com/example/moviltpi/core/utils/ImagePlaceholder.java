@@ -0,0 +1,112 @@
+package com.example.moviltpi.core.utils;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Genera y decodifica vistas previas diminutas de imágenes para usarlas como placeholder.
+ * La vista previa es una grilla de {@value #LADO}x{@value #LADO} colores RGB codificada en Base64
+ * (64 caracteres), que se guarda junto a la URL de la imagen. Al mostrarla, la grilla se escala con
+ * filtrado bilineal y se ve como una versión desenfocada de la imagen original, sin ninguna petición de red.
+ */
+public class ImagePlaceholder {
+
+    private static final String TAG = "ImagePlaceholder";
+
+    /** Lado de la grilla de colores */
+    private static final int LADO = 4;
+
+    /** Tamaño aproximado al que se submuestrea la imagen antes de reducirla a la grilla */
+    private static final int TAMANO_MUESTREO = 64;
+
+    private ImagePlaceholder() {
+    }
+
+    /**
+     * Calcula la vista previa de una imagen a partir de sus bytes comprimidos (JPEG, PNG, etc.).
+     *
+     * @param bytes Bytes de la imagen.
+     * @return La vista previa codificada, o null si la imagen no se pudo decodificar.
+     */
+    @Nullable
+    public static String codificar(byte[] bytes) {
+        // Leer solo las dimensiones para decodificar una versión submuestreada
+        BitmapFactory.Options opciones = new BitmapFactory.Options();
+        opciones.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opciones);
+        if (opciones.outWidth <= 0 || opciones.outHeight <= 0) {
+            Log.w(TAG, "No se pudieron leer las dimensiones de la imagen");
+            return null;
+        }
+
+        int muestreo = 1;
+        while (Math.min(opciones.outWidth, opciones.outHeight) / (muestreo * 2) >= TAMANO_MUESTREO) {
+            muestreo *= 2;
+        }
+        opciones.inJustDecodeBounds = false;
+        opciones.inSampleSize = muestreo;
+        Bitmap muestra = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opciones);
+        if (muestra == null) {
+            return null;
+        }
+
+        Bitmap grilla = Bitmap.createScaledBitmap(muestra, LADO, LADO, true);
+        byte[] rgb = new byte[LADO * LADO * 3];
+        for (int y = 0; y < LADO; y++) {
+            for (int x = 0; x < LADO; x++) {
+                int color = grilla.getPixel(x, y);
+                int i = (y * LADO + x) * 3;
+                rgb[i] = (byte) Color.red(color);
+                rgb[i + 1] = (byte) Color.green(color);
+                rgb[i + 2] = (byte) Color.blue(color);
+            }
+        }
+        if (grilla != muestra) {
+            grilla.recycle();
+        }
+        muestra.recycle();
+        return Base64.encodeToString(rgb, Base64.NO_WRAP);
+    }
+
+    /**
+     * Decodifica una vista previa en un Drawable listo para usarse como placeholder.
+     * El costo es el de crear un bitmap de {@value #LADO}x{@value #LADO} píxeles, por lo que puede
+     * llamarse directamente desde {@code onBindViewHolder}.
+     *
+     * @param resources   Recursos usados para crear el Drawable.
+     * @param placeholder Vista previa generada por {@link #codificar(byte[])}.
+     * @return El Drawable, o null si la vista previa es nula o inválida.
+     */
+    @Nullable
+    public static Drawable decodificar(Resources resources, @Nullable String placeholder) {
+        if (placeholder == null) {
+            return null;
+        }
+        byte[] rgb;
+        try {
+            rgb = Base64.decode(placeholder, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (rgb.length != LADO * LADO * 3) {
+            return null;
+        }
+
+        int[] colores = new int[LADO * LADO];
+        for (int i = 0; i < colores.length; i++) {
+            colores[i] = Color.rgb(rgb[i * 3] & 0xFF, rgb[i * 3 + 1] & 0xFF, rgb[i * 3 + 2] & 0xFF);
+        }
+        BitmapDrawable drawable = new BitmapDrawable(resources,
+                Bitmap.createBitmap(colores, LADO, LADO, Bitmap.Config.ARGB_8888));
+        drawable.setFilterBitmap(true); // Escalado bilineal para obtener el efecto desenfocado
+        return drawable;
+    }
+}
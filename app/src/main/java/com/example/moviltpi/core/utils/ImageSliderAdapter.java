@@ -2,6 +2,8 @@ package com.example.moviltpi.core.utils;
 
 import static com.example.moviltpi.core.utils.ImageUtils.getRealPathFromURI;
 
+import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.util.Log;
 import android.view.ViewGroup;
@@ -11,6 +13,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.request.RequestOptions;
 import com.example.moviltpi.R;
 
@@ -19,11 +22,20 @@ import java.util.List;
 /**
  * Adaptador para RecyclerView que muestra un slider de imágenes cargadas desde URLs o URIs usando Glide.
  * Intenta obtener la ruta real del archivo desde la URI y utiliza Glide para cargar las imágenes.
+ * Las imágenes se decodifican a un tamaño fijo para que la precarga de las páginas adyacentes
+ * y la carga en el ImageView compartan la misma entrada de la caché de memoria de Glide.
  */
 public class ImageSliderAdapter extends RecyclerView.Adapter<ImageSliderAdapter.ImageViewHolder> {
 
+    /** Cantidad de páginas a cada lado de la actual que se precargan */
+    private static final int PAGINAS_ADYACENTES = 1;
+
     private final List<String> imageUrls;
 
+    /** Tamaño en píxeles al que se decodifican las imágenes (0 = tamaño de la vista) */
+    private int anchoObjetivo = 0;
+    private int altoObjetivo = 0;
+
     /**
      * Constructor del adaptador.
      *
@@ -33,6 +45,37 @@ public class ImageSliderAdapter extends RecyclerView.Adapter<ImageSliderAdapter.
         this.imageUrls = imageUrls;
     }
 
+    /**
+     * Establece el tamaño al que se decodificarán todas las imágenes del slider.
+     * Debe llamarse antes de asignar el adaptador al ViewPager2 para que la primera página
+     * y las precargas usen la misma clave de caché.
+     *
+     * @param ancho Ancho en píxeles.
+     * @param alto  Alto en píxeles.
+     */
+    public void setTamanoObjetivo(int ancho, int alto) {
+        this.anchoObjetivo = ancho;
+        this.altoObjetivo = alto;
+    }
+
+    /**
+     * Precarga en la caché de memoria de Glide las imágenes de las páginas vecinas a la posición dada,
+     * para que al deslizar no se vea el placeholder.
+     *
+     * @param context  Contexto usado por Glide.
+     * @param posicion Posición de la página actualmente seleccionada.
+     */
+    public void precargarAdyacentes(Context context, int posicion) {
+        if (anchoObjetivo <= 0 || altoObjetivo <= 0) {
+            return; // Sin tamaño fijo la precarga no coincidiría con la carga real
+        }
+        for (int i = posicion - PAGINAS_ADYACENTES; i <= posicion + PAGINAS_ADYACENTES; i++) {
+            if (i != posicion && i >= 0 && i < imageUrls.size()) {
+                construirPeticion(context, imageUrls.get(i)).preload(anchoObjetivo, altoObjetivo);
+            }
+        }
+    }
+
     /**
      * Crea una nueva vista para un elemento del RecyclerView (un ImageView).
      *
@@ -62,27 +105,34 @@ public class ImageSliderAdapter extends RecyclerView.Adapter<ImageSliderAdapter.
         String imageUrl = imageUrls.get(position);
         Log.d("ImageSliderAdapter", "Cargando imagen: " + imageUrl);
 
+        construirPeticion(holder.imageView.getContext(), imageUrl)
+                .apply(new RequestOptions()
+                        .placeholder(R.drawable.uploadimg) // Imagen de carga mientras se carga
+                        .error(R.drawable.ic_close)) // Imagen de error si falla la carga
+                .into(holder.imageView);
+    }
+
+    /**
+     * Construye la petición de Glide para una imagen del slider.
+     * Intenta cargar la imagen desde la ruta real del archivo y, si no es posible, directamente desde la URI.
+     * La misma petición se usa para la carga y para la precarga, por lo que ambas generan la misma clave de caché.
+     *
+     * @param context  Contexto usado por Glide.
+     * @param imageUrl URL o URI de la imagen.
+     * @return La petición de Glide configurada.
+     */
+    private RequestBuilder<Drawable> construirPeticion(Context context, String imageUrl) {
         Uri uri = Uri.parse(imageUrl);
-        String realPath = getRealPathFromURI(holder.imageView.getContext(), uri);
-
-        if (realPath != null) {
-            // Intenta cargar la imagen desde la ruta real del archivo.
-            Glide.with(holder.imageView.getContext())
-                    .load(realPath)
-                    .centerCrop()
-                    .apply(new RequestOptions()
-                            .placeholder(R.drawable.uploadimg) // Imagen de carga mientras se carga
-                            .error(R.drawable.ic_close)) // Imagen de error si falla la carga
-                    .into(holder.imageView);
-        } else {
-            // Si no se puede obtener la ruta real, carga la imagen directamente desde la URI.
-            Glide.with(holder.imageView.getContext())
-                    .load(uri)
-                    .apply(new RequestOptions()
-                            .placeholder(R.drawable.uploadimg)
-                            .error(R.drawable.ic_close))
-                    .into(holder.imageView);
+        String realPath = getRealPathFromURI(context, uri);
+
+        RequestBuilder<Drawable> peticion = realPath != null
+                ? Glide.with(context).load(realPath)
+                : Glide.with(context).load(uri);
+        peticion = peticion.centerCrop();
+        if (anchoObjetivo > 0 && altoObjetivo > 0) {
+            peticion = peticion.override(anchoObjetivo, altoObjetivo);
         }
+        return peticion;
     }
 
     /**
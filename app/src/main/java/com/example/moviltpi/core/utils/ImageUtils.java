@@ -7,6 +7,8 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -19,6 +21,8 @@ import com.parse.SaveCallback;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Clase de utilidades para el manejo de imágenes, incluyendo permisos, acceso a la galería,
@@ -26,6 +30,12 @@ import java.io.InputStream;
  */
 public class ImageUtils {
 
+    /** Hilo donde se leen las imágenes y se calculan sus vistas previas, fuera del hilo principal */
+    private static final ExecutorService HILO_IMAGENES = Executors.newSingleThreadExecutor();
+
+    /** Handler para entregar los errores en el hilo principal, como los resultados de Parse */
+    private static final Handler HILO_PRINCIPAL = new Handler(Looper.getMainLooper());
+
     /**
      * Solicita permisos para acceder a las imágenes del dispositivo.
      *
@@ -55,44 +65,54 @@ public class ImageUtils {
 
     /**
      * Sube una imagen a Parse desde un URI.
+     * La lectura y la vista previa, que decodifica la imagen completa, se hacen en un hilo aparte; el
+     * callback se llama en el hilo principal.
      *
      * @param context    El contexto de la aplicación.
      * @param imageUri   El URI de la imagen a subir.
      * @param callback   El callback para manejar el resultado de la subida.
      */
     public static void subirImagenAParse(Context context, Uri imageUri, ImageUploadCallback callback) {
-        InputStream inputStream = null;
-        try {
-            inputStream = context.getContentResolver().openInputStream(imageUri);
-            byte[] bytes = getBytesFromInputStream(inputStream);
+        Context appContext = context.getApplicationContext();
+        HILO_IMAGENES.execute(() -> {
+            byte[] bytes;
+            InputStream inputStream = null;
+            try {
+                inputStream = appContext.getContentResolver().openInputStream(imageUri);
+                bytes = inputStream != null ? getBytesFromInputStream(inputStream) : null;
+            } catch (IOException e) {
+                HILO_PRINCIPAL.post(() -> callback.onFailure(e));
+                return;
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
 
             if (bytes == null) {
-                callback.onFailure(new Exception("El arreglo de bytes es null"));
+                HILO_PRINCIPAL.post(() -> callback.onFailure(new Exception("El arreglo de bytes es null")));
                 return;
             }
+            // Calcular la vista previa mientras los bytes están en memoria, antes de subirlos
+            String placeholder = ImagePlaceholder.codificar(bytes);
             ParseFile parseFile = new ParseFile("image.jpg", bytes);
+            // Parse entrega el resultado en el hilo principal
             parseFile.saveInBackground(new SaveCallback() {
                 @Override
                 public void done(ParseException e) {
                     if (e == null) {
                         String imageUrl = parseFile.getUrl();
-                        callback.onSuccess(imageUrl);
+                        callback.onSuccess(imageUrl, placeholder);
                     } else {
                         callback.onFailure(e);
                     }
                 }
             });
-        } catch (IOException e) {
-            callback.onFailure(e);
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        });
     }
 
     /**
@@ -126,6 +146,17 @@ public class ImageUtils {
          */
         void onSuccess(String imageUrl);
 
+        /**
+         * Se llama cuando la subida de la imagen es exitosa, junto con su vista previa.
+         * Por defecto ignora la vista previa y delega en {@link #onSuccess(String)}.
+         *
+         * @param imageUrl    La URL de la imagen subida.
+         * @param placeholder La vista previa de la imagen (ver {@link ImagePlaceholder}), o null.
+         */
+        default void onSuccess(String imageUrl, String placeholder) {
+            onSuccess(imageUrl);
+        }
+
         /**
          * Se llama cuando la subida de la imagen falla.
          *
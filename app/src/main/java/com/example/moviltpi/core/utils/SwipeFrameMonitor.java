@@ -0,0 +1,131 @@
+package com.example.moviltpi.core.utils;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+import androidx.viewpager2.widget.ViewPager2;
+
+import java.util.Locale;
+
+/**
+ * Mide la duración de los frames durante cada deslizamiento de un {@link ViewPager2}.
+ * Registra un {@link Choreographer.FrameCallback} mientras el ViewPager2 no está en reposo y,
+ * al terminar el gesto, informa la cantidad de frames, la duración media y máxima y los frames perdidos.
+ */
+public class SwipeFrameMonitor extends ViewPager2.OnPageChangeCallback implements Choreographer.FrameCallback {
+
+    private static final String TAG = "SwipeFrameMonitor";
+
+    /** Duración de un frame a 60 Hz, en nanosegundos */
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    /** Listener opcional para recibir el resumen de cada deslizamiento */
+    @Nullable
+    private final Listener listener;
+
+    private boolean midiendo = false;
+    private long ultimoFrameNanos = 0;
+    private long inicioNanos = 0;
+    private int frames = 0;
+    private int framesPerdidos = 0;
+    private long maxFrameNanos = 0;
+
+    /**
+     * Interfaz para recibir el resumen de cada deslizamiento.
+     */
+    public interface Listener {
+        /**
+         * Se llama cuando el ViewPager2 vuelve al reposo después de un deslizamiento.
+         *
+         * @param frames         Cantidad de frames dibujados durante el deslizamiento.
+         * @param duracionMs     Duración total del deslizamiento en milisegundos.
+         * @param maxFrameMs     Duración del frame más largo en milisegundos.
+         * @param framesPerdidos Cantidad de frames que superaron el presupuesto de 16,6 ms.
+         */
+        void onSwipeMedido(int frames, double duracionMs, double maxFrameMs, int framesPerdidos);
+    }
+
+    /**
+     * Crea un monitor que solo informa por Logcat.
+     */
+    public SwipeFrameMonitor() {
+        this(null);
+    }
+
+    /**
+     * Crea un monitor que informa por Logcat y al listener indicado.
+     *
+     * @param listener Listener que recibe el resumen de cada deslizamiento, puede ser null.
+     */
+    public SwipeFrameMonitor(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        if (state != ViewPager2.SCROLL_STATE_IDLE && !midiendo) {
+            iniciar();
+        } else if (state == ViewPager2.SCROLL_STATE_IDLE && midiendo) {
+            finalizar();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!midiendo) {
+            return;
+        }
+        if (ultimoFrameNanos != 0) {
+            long duracion = frameTimeNanos - ultimoFrameNanos;
+            frames++;
+            maxFrameNanos = Math.max(maxFrameNanos, duracion);
+            // Cada período de 16,6 ms adicional es un frame que no se llegó a dibujar a tiempo.
+            framesPerdidos += (int) Math.max(0, (duracion - 1) / FRAME_NANOS);
+        } else {
+            inicioNanos = frameTimeNanos;
+        }
+        ultimoFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Detiene la medición en curso sin informar resultados.
+     * Debe llamarse al destruir la vista que contiene el ViewPager2.
+     */
+    public void detener() {
+        midiendo = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * Reinicia los contadores y comienza a escuchar frames.
+     */
+    private void iniciar() {
+        midiendo = true;
+        ultimoFrameNanos = 0;
+        inicioNanos = 0;
+        frames = 0;
+        framesPerdidos = 0;
+        maxFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Deja de escuchar frames e informa el resumen del deslizamiento.
+     */
+    private void finalizar() {
+        detener();
+        if (frames == 0) {
+            return;
+        }
+        double duracionMs = (ultimoFrameNanos - inicioNanos) / 1_000_000.0;
+        double maxFrameMs = maxFrameNanos / 1_000_000.0;
+        Log.d(TAG, String.format(Locale.US,
+                "Swipe: %d frames en %.1f ms (máx %.1f ms, %d perdidos)",
+                frames, duracionMs, maxFrameMs, framesPerdidos));
+        if (listener != null) {
+            listener.onSwipeMedido(frames, duracionMs, maxFrameMs, framesPerdidos);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.moviltpi.core.utils;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.moviltpi.core.models.User;
+import com.parse.GetCallback;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caché en memoria de perfiles de usuario ya descargados, indexada por ID y compartida por toda la
+ * aplicación.
+ * <p>
+ * Las pantallas que ya consultaron usuarios (la lista de usuarios, la bandeja de chats) los registran
+ * aquí; las que solo tienen un ID los leen al instante si la caché está caliente, o los piden en segundo
+ * plano con {@link #resolver(String, GetCallback)}. Varias peticiones del mismo usuario en curso se
+ * resuelven con una sola consulta. Al registrar un usuario también se registra su foto en {@link AvatarCache}.
+ * <p>
+ * Los usuarios pueden venir de consultas con selectKeys: alcanza con que tengan los {@link #CAMPOS_PERFIL},
+ * que son los únicos que leen quienes usan la caché.
+ * <p>
+ * {@link #resolver(String, GetCallback)} debe llamarse desde el hilo principal.
+ */
+public class UsuarioCache {
+
+    private static final String TAG = "UsuarioCache";
+
+    /** Cantidad máxima de perfiles que se mantienen en memoria */
+    private static final int MAX_USUARIOS = 500;
+
+    /** Campos del perfil que leen las pantallas a partir de la caché; una proyección debe incluirlos todos */
+    public static final List<String> CAMPOS_PERFIL = Collections.unmodifiableList(Arrays.asList(
+            User.KEY_USERNAME, AvatarCache.KEY_FOTO, User.KEY_FOTO_PERFIL_VERSION, User.KEY_ULTIMA_CONEXION));
+
+    private final LruCache<String, ParseUser> usuarios = new LruCache<>(MAX_USUARIOS);
+
+    /** Callbacks esperando cada consulta en curso, por ID de usuario */
+    private final Map<String, List<GetCallback<ParseUser>>> enCurso = new HashMap<>();
+
+    /**
+     * Indica si un usuario trae todos los {@link #CAMPOS_PERFIL}, ya sea completo o proyectado.
+     *
+     * @param usuario Usuario de Parse.
+     * @return true si se pueden leer su nombre, su foto y su última conexión.
+     */
+    public static boolean tienePerfil(@Nullable ParseUser usuario) {
+        if (usuario == null) {
+            return false;
+        }
+        for (String campo : CAMPOS_PERFIL) {
+            if (!usuario.isDataAvailable(campo)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registra un usuario con sus datos ya descargados. Los punteros sin los campos del perfil se ignoran, y una copia
+     * más vieja (updatedAt anterior) no reemplaza a la guardada: cada vez que una consulta trae una
+     * versión nueva del perfil, la caché se actualiza sola.
+     *
+     * @param usuario Usuario de Parse.
+     */
+    public void registrar(@Nullable ParseUser usuario) {
+        if (usuario == null || usuario.getObjectId() == null || !tienePerfil(usuario)) {
+            return;
+        }
+        ParseUser actual = usuarios.get(usuario.getObjectId());
+        if (actual != null && actual != usuario && actual.getUpdatedAt() != null && usuario.getUpdatedAt() != null
+                && actual.getUpdatedAt().after(usuario.getUpdatedAt())) {
+            return;
+        }
+        usuarios.put(usuario.getObjectId(), usuario);
+        AvatarCache.getInstance().registrar(usuario);
+    }
+
+    /**
+     * Obtiene el perfil completo de un usuario que llegó como puntero, por ejemplo el remitente de un
+     * mensaje consultado sin incluir usuarios.
+     *
+     * @param puntero Usuario, con o sin datos.
+     * @return El usuario de la caché, el mismo puntero si ya tiene el perfil, o null si no se conoce.
+     */
+    @Nullable
+    public ParseUser resolver(@Nullable ParseUser puntero) {
+        if (puntero == null) {
+            return null;
+        }
+        ParseUser usuario = usuarios.get(puntero.getObjectId());
+        if (usuario != null) {
+            return usuario;
+        }
+        return tienePerfil(puntero) ? puntero : null;
+    }
+
+    /**
+     * Registra varios usuarios ya descargados.
+     *
+     * @param lista Usuarios de Parse.
+     */
+    public void registrarTodos(@NonNull Iterable<ParseUser> lista) {
+        for (ParseUser usuario : lista) {
+            registrar(usuario);
+        }
+    }
+
+    /**
+     * Obtiene un usuario de la caché sin consultar al servidor.
+     *
+     * @param userId ID del usuario.
+     * @return El usuario con sus datos, o null si no está en la caché.
+     */
+    @Nullable
+    public ParseUser buscar(@Nullable String userId) {
+        return userId != null ? usuarios.get(userId) : null;
+    }
+
+    /**
+     * Obtiene un usuario: de la caché si está, o del servidor en segundo plano. El callback se llama
+     * en el hilo principal, con el usuario o con el error de la consulta.
+     *
+     * @param userId   ID del usuario.
+     * @param callback Recibe el resultado.
+     */
+    public void resolver(@NonNull String userId, @NonNull GetCallback<ParseUser> callback) {
+        ParseUser usuario = usuarios.get(userId);
+        if (usuario != null) {
+            callback.done(usuario, null);
+            return;
+        }
+        List<GetCallback<ParseUser>> esperando = enCurso.get(userId);
+        if (esperando != null) {
+            esperando.add(callback);
+            return;
+        }
+        esperando = new ArrayList<>();
+        esperando.add(callback);
+        enCurso.put(userId, esperando);
+
+        ParseQuery<ParseUser> query = ParseUser.getQuery();
+        query.getInBackground(userId, (resultado, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error al cargar el usuario " + userId + ": " + e.getMessage(), e);
+            } else {
+                registrar(resultado);
+            }
+            List<GetCallback<ParseUser>> callbacks = enCurso.remove(userId);
+            if (callbacks != null) {
+                for (GetCallback<ParseUser> pendiente : callbacks) {
+                    pendiente.done(resultado, e);
+                }
+            }
+        });
+    }
+}
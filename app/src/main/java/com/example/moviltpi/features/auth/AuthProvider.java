@@ -2,14 +2,16 @@ package com.example.moviltpi.features.auth;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.example.moviltpi.core.MyApplication;
 import com.example.moviltpi.core.models.User;
+import com.example.moviltpi.core.utils.UsuarioCache;
 import com.parse.ParseQuery;
 import com.parse.ParseUser;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -18,6 +20,9 @@ import java.util.List;
  */
 public class AuthProvider {
 
+    /** Cantidad de usuarios por página de la lista de usuarios */
+    public static final int TAMANO_PAGINA_USUARIOS = 50;
+
     /**
      * Constructor vacío para AuthProvider.
      */
@@ -97,6 +102,8 @@ public class AuthProvider {
         MutableLiveData<Boolean> logoutResult = new MutableLiveData<>();
         ParseUser.logOutInBackground(e -> {
             if (e == null) {
+                // Cerrar la suscripción de mensajes del usuario que salió
+                MyApplication.getMensajeRouter().detener();
                 logoutResult.setValue(true);
                 Log.d("AuthProvider", "Caché eliminada y usuario desconectado.");
             } else {
@@ -124,44 +131,33 @@ public class AuthProvider {
     }
 
     /**
-     * Obtiene una lista de todos los usuarios registrados, excluyendo al usuario actual.
+     * Obtiene una página de usuarios registrados en orden alfabético, excluyendo al usuario actual.
+     * El filtro, el orden y el corte de página los resuelve el servidor, y solo se descargan los campos
+     * que muestran la lista y el chat (nombre, foto y última conexión).
      *
-     * @return Un LiveData que contiene una lista de ParseUser, o null si ocurre un error.
+     * @param despuesDe Username del último usuario de la página anterior, o null para la primera página.
+     * @return Un LiveData que contiene la página de usuarios (vacía si no quedan más), o null si ocurre un error.
      */
-    public LiveData<List<ParseUser>> getAllUsers() {
+    public LiveData<List<ParseUser>> getUsuarios(@Nullable String despuesDe) {
         MutableLiveData<List<ParseUser>> usersResult = new MutableLiveData<>();
         ParseQuery<ParseUser> query = ParseUser.getQuery();
 
-        // Incluir explícitamente el username
-        query.include("username");
-        query.orderByAscending("username");
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (currentUser != null) {
+            query.whereNotEqualTo("objectId", currentUser.getObjectId());
+        }
+        if (despuesDe != null) {
+            query.whereGreaterThan(User.KEY_USERNAME, despuesDe);
+        }
+        // Los usuarios de la página se comparten con UsuarioCache: la proyección trae sus campos del perfil
+        query.selectKeys(UsuarioCache.CAMPOS_PERFIL);
+        query.orderByAscending(User.KEY_USERNAME);
+        query.setLimit(TAMANO_PAGINA_USUARIOS);
 
         query.findInBackground((users, e) -> {
             if (e == null) {
-                if (users == null || users.isEmpty()) {
-                    Log.d("AuthProvider", "No se encontraron usuarios en Parse.");
-                    usersResult.setValue(new ArrayList<>());
-                } else {
-                    Log.d("AuthProvider", "Usuarios obtenidos: " + users.size());
-
-                    for (ParseUser user : users) {
-                        Log.d("AuthProvider", "Usuario encontrado: " + user.getUsername() + " - ID: " + user.getObjectId());
-                    }
-
-                    // Filtrar manualmente al usuario actual
-                    ParseUser currentUser = ParseUser.getCurrentUser();
-                    String currentUserId = currentUser != null ? currentUser.getObjectId() : "";
-
-                    List<ParseUser> filteredUsers = new ArrayList<>();
-                    for (ParseUser user : users) {
-                        if (!user.getObjectId().equals(currentUserId)) {
-                            filteredUsers.add(user);
-                        }
-                    }
-
-                    Log.d("AuthProvider", "Usuarios después de filtrar: " + filteredUsers.size());
-                    usersResult.setValue(filteredUsers);
-                }
+                Log.d("AuthProvider", "Página de usuarios obtenida: " + users.size());
+                usersResult.setValue(users);
             } else {
                 Log.e("AuthProvider", "Error al obtener usuarios: ", e);
                 usersResult.setValue(null);
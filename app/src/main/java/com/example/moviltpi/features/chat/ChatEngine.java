@@ -0,0 +1,552 @@
+package com.example.moviltpi.features.chat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Motor de estado de un chat confinado a un único hilo.
+ * Todo el estado mutable (mensajes, índice por ID y cursor de sincronización) vive en el hilo de un
+ * ejecutor serial: LiveQuery, el polling y las cargas del historial solo encolan operaciones y nunca
+ * tocan el estado directamente, por lo que no hay carreras que dupliquen o pierdan mensajes.
+ * El cursor marca hasta dónde se recibió todo lo del servidor, así que solo lo mueven las respuestas de
+ * la sincronización ({@link #agregar}, {@link #actualizar}, {@link #reemplazar}); los mensajes propios y
+ * el historial local entran por {@link #agregarLocales} y {@link #confirmar}, que no lo tocan. Si lo
+ * movieran, un envío propio confirmado haría saltar al polling un mensaje del otro usuario anterior a él
+ * que todavía no llegó.
+ * Los cambios no se publican uno por uno: se acumulan durante una ventana alineada a los cuadros de
+ * pantalla ({@link #INTERVALO_PUBLICACION_MS}) y al cerrarla se publica una sola instantánea inmutable
+ * al {@link Sink} con todos juntos. Una ráfaga de eventos (por ejemplo, al reconectar) produce así una
+ * copia de la lista, un diff y un desplazamiento por cuadro en lugar de uno por evento.
+ * <p>
+ * Cada operación lleva la clave de la conversación para la que se pidió; si mientras tanto se abrió
+ * otra conversación, la operación se descarta.
+ * <p>
+ * La memoria por conversación está acotada: mientras la interfaz muestra los últimos mensajes, el motor
+ * conserva solo una ventana de los {@link #VENTANA_MENSAJES} más recientes. Los IDs de esa ventana
+ * detectan las reentregas recientes. Un mensaje en vivo igual o anterior al más reciente descartado (el
+ * horizonte) y anterior a todo lo cargado no se muestra, porque dejaría un hueco arriba de la lista, pero
+ * no se da por repetido: puede ser uno que llegó tarde (por la recuperación tras un corte o un polling
+ * demorado). Se entrega igual como agregado para guardarlo en el historial local, que descarta los
+ * repetidos por ID, y aparece al pedir las páginas anteriores.
+ * Las páginas del historial pedidas al hacer scroll entran sin pasar por el horizonte.
+ * <p>
+ * No depende de Android ni de Parse para poder probarlo en la JVM.
+ *
+ * @param <T> Tipo de mensaje.
+ */
+public class ChatEngine<T> {
+
+    /**
+     * Recibe las instantáneas publicadas por el motor, en el hilo del motor.
+     *
+     * @param <T> Tipo de mensaje.
+     */
+    public interface Sink<T> {
+        /**
+         * @param mensajes Lista inmutable de mensajes ordenada por fecha de creación.
+         */
+        void publicar(List<T> mensajes);
+    }
+
+    /** Cantidad de mensajes que se conservan mientras se muestran los últimos */
+    public static final int VENTANA_MENSAJES = 500;
+
+    /** Duración de la ventana en la que se acumulan cambios antes de publicar, un cuadro a 60 Hz */
+    public static final long INTERVALO_PUBLICACION_MS = 16;
+
+    /** Reloj compartido por todos los motores para programar el cierre de cada ventana de publicación */
+    private static final ScheduledExecutorService RELOJ = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "ChatEngine-reloj");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private final MensajeStore<T> store;
+    private final MensajeStore.Claves<T> claves;
+    private final ExecutorService executor;
+    private final Sink<T> sink;
+    private final int ventana;
+
+    /** Conversación abierta; solo se modifica desde el hilo del motor */
+    private String claveActual;
+
+    /**
+     * createdAt más reciente recibido por la sincronización con el servidor; lo escribe solo el hilo del
+     * motor y se puede leer desde cualquiera.
+     */
+    private volatile Date cursor;
+
+    /** createdAt e ID del mensaje más reciente que salió de la ventana; solo en el hilo del motor */
+    private Date horizonte;
+    private String horizonteId;
+
+    /** Indica si la interfaz está mostrando los últimos mensajes; solo entonces se recorta la ventana */
+    private volatile boolean siguiendoUltimos = true;
+
+    /** Recibe la conversación y el nuevo mensaje más antiguo cada vez que se recorta la ventana */
+    private BiConsumer<String, T> alRecortar;
+
+    /** Indica si hay cambios sin publicar y si ya se programó su publicación; solo en el hilo del motor */
+    private boolean cambiosPendientes;
+    private boolean publicacionProgramada;
+
+    /** Eventos recibidos (mensajes entregados, ediciones y borrados) y publicaciones hechas, para medir ráfagas */
+    private final AtomicLong eventos = new AtomicLong();
+    private final AtomicLong publicaciones = new AtomicLong();
+
+    /**
+     * Crea el motor.
+     *
+     * @param claves   Extractor de ID y fecha de los mensajes.
+     * @param executor Ejecutor serial (un solo hilo) donde vive el estado.
+     * @param sink     Destino de las instantáneas.
+     */
+    public ChatEngine(MensajeStore.Claves<T> claves, ExecutorService executor, Sink<T> sink) {
+        this(claves, executor, sink, VENTANA_MENSAJES);
+    }
+
+    /**
+     * Crea el motor con un tamaño de ventana propio.
+     *
+     * @param claves   Extractor de ID y fecha de los mensajes.
+     * @param executor Ejecutor serial (un solo hilo) donde vive el estado.
+     * @param sink     Destino de las instantáneas.
+     * @param ventana  Cantidad de mensajes que se conservan mientras se muestran los últimos.
+     */
+    public ChatEngine(MensajeStore.Claves<T> claves, ExecutorService executor, Sink<T> sink, int ventana) {
+        this.claves = claves;
+        this.store = new MensajeStore<>(claves);
+        this.executor = executor;
+        this.sink = sink;
+        this.ventana = ventana;
+    }
+
+    /**
+     * Registra quién se entera de que la ventana se recortó, por ejemplo para mover el cursor de
+     * páginas anteriores. Se invoca en el hilo del motor. Debe configurarse antes de abrir una conversación.
+     *
+     * @param alRecortar Recibe la clave de la conversación y su nuevo mensaje más antiguo.
+     */
+    public void setAlRecortar(BiConsumer<String, T> alRecortar) {
+        this.alRecortar = alRecortar;
+    }
+
+    /**
+     * Indica si la interfaz está mostrando los últimos mensajes. Mientras el usuario lee el historial
+     * no se recorta nada; al volver al final se recorta la ventana de inmediato.
+     *
+     * @param siguiendo true si se ven los últimos mensajes.
+     */
+    public void setSiguiendoUltimos(boolean siguiendo) {
+        siguiendoUltimos = siguiendo;
+        if (siguiendo) {
+            ejecutar(() -> {
+                if (claveActual != null && recortar()) {
+                    marcarCambio();
+                }
+            });
+        }
+    }
+
+    /**
+     * Abre una conversación: vacía el estado y descarta cualquier operación pendiente de la anterior.
+     * La lista vacía se publica de inmediato, sin esperar a la ventana.
+     *
+     * @param clave Clave de la conversación.
+     */
+    public void abrir(String clave) {
+        cursor = null;
+        siguiendoUltimos = true;
+        ejecutar(() -> {
+            claveActual = clave;
+            store.limpiar();
+            cursor = null;
+            horizonte = null;
+            horizonteId = null;
+            publicarAhora();
+        });
+    }
+
+    /**
+     * Agrega mensajes recibidos del servidor (LiveQuery, polling o la carga inicial), ignorando los
+     * repetidos, y avanza el cursor de sincronización. Los anteriores a la ventana no se muestran.
+     *
+     * @param clave     Conversación para la que se pidieron los mensajes.
+     * @param mensajes  Mensajes recibidos.
+     * @param agregados Si no es null, recibe (en el hilo del motor) los mensajes que efectivamente eran
+     *                  nuevos, incluidos los anteriores a la ventana que no se muestran.
+     */
+    public void agregar(String clave, Collection<T> mensajes, Consumer<List<T>> agregados) {
+        agregar(clave, mensajes, agregados, true);
+    }
+
+    /**
+     * Agrega mensajes que no vienen de la sincronización con el servidor: los propios pendientes y el
+     * historial guardado en el dispositivo. Se filtran igual que en {@link #agregar}, pero no mueven el cursor.
+     *
+     * @param clave    Conversación de los mensajes.
+     * @param mensajes Mensajes a mostrar.
+     */
+    public void agregarLocales(String clave, Collection<T> mensajes) {
+        agregar(clave, mensajes, null, false);
+    }
+
+    /**
+     * Fija el cursor de sincronización en una fecha hasta la que el servidor ya confirmó no tener nada
+     * más, si es posterior al actual (por ejemplo, el historial local cuando el servidor no devolvió
+     * mensajes nuevos).
+     *
+     * @param clave Conversación sincronizada.
+     * @param fecha createdAt hasta el que está todo recibido.
+     */
+    public void sincronizadoHasta(String clave, Date fecha) {
+        ejecutar(() -> {
+            if (esActual(clave)) {
+                avanzarCursor(fecha);
+            }
+        });
+    }
+
+    private void agregar(String clave, Collection<T> mensajes, Consumer<List<T>> agregados, boolean sincroniza) {
+        List<T> copia = new ArrayList<>(mensajes);
+        ejecutar(() -> {
+            if (!esActual(clave)) {
+                return;
+            }
+            eventos.addAndGet(copia.size());
+            List<T> nuevos = new ArrayList<>();
+            List<T> anteriores = new ArrayList<>();
+            for (T mensaje : copia) {
+                // Los repetidos de la ventana se ignoran; los anteriores a ella solo se informan
+                if (!store.contiene(claves.getId(mensaje))) {
+                    if (antesDeLaVentana(mensaje)) {
+                        anteriores.add(mensaje);
+                    } else if (store.agregar(mensaje)) {
+                        nuevos.add(mensaje);
+                    }
+                }
+                if (sincroniza) {
+                    avanzarCursor(claves.getFecha(mensaje));
+                }
+            }
+            if (!nuevos.isEmpty()) {
+                recortar();
+                marcarCambio();
+            }
+            if (agregados != null && (!nuevos.isEmpty() || !anteriores.isEmpty())) {
+                nuevos.addAll(anteriores);
+                agregados.accept(nuevos);
+            }
+        });
+    }
+
+    /**
+     * Agrega una página del historial pedida por el usuario. No se filtra por el horizonte ni se recorta,
+     * porque son justamente los mensajes que el usuario quiere volver a ver.
+     *
+     * @param clave    Conversación para la que se pidió la página.
+     * @param mensajes Mensajes de la página.
+     */
+    public void agregarAnteriores(String clave, Collection<T> mensajes) {
+        List<T> copia = new ArrayList<>(mensajes);
+        ejecutar(() -> {
+            if (esActual(clave) && store.agregarTodos(copia) > 0) {
+                marcarCambio();
+            }
+        });
+    }
+
+    /**
+     * Reemplaza todo el contenido por los mensajes dados (por ejemplo, cuando el historial local quedó
+     * demasiado desactualizado y se muestra solo la página del servidor).
+     *
+     * @param clave    Conversación para la que se pidieron los mensajes.
+     * @param mensajes Mensajes que pasan a ser el contenido completo.
+     */
+    public void reemplazar(String clave, Collection<T> mensajes) {
+        List<T> copia = new ArrayList<>(mensajes);
+        ejecutar(() -> {
+            if (!esActual(clave)) {
+                return;
+            }
+            store.limpiar();
+            horizonte = null;
+            horizonteId = null;
+            store.agregarTodos(copia);
+            for (T mensaje : copia) {
+                avanzarCursor(claves.getFecha(mensaje));
+            }
+            marcarCambio();
+        });
+    }
+
+    /**
+     * Reemplaza un mensaje editado recibido del servidor, o lo agrega si todavía no había llegado.
+     * Si es anterior a la ventana no se muestra, pero alCambiar se ejecuta igual para guardarlo.
+     *
+     * @param clave     Conversación del mensaje.
+     * @param mensaje   Versión actualizada.
+     * @param alCambiar Si no es null, se ejecuta en el hilo del motor cuando el estado cambió o el
+     *                  mensaje quedó antes de la ventana.
+     */
+    public void actualizar(String clave, T mensaje, Runnable alCambiar) {
+        actualizar(clave, mensaje, alCambiar, true);
+    }
+
+    /**
+     * Reemplaza un mensaje propio pendiente por su resultado en la cola de salida (guardado o fallido).
+     * No mueve el cursor: la confirmación de un envío no dice nada de los mensajes del otro usuario.
+     *
+     * @param clave     Conversación del mensaje.
+     * @param mensaje   Versión confirmada o fallida.
+     * @param alCambiar Si no es null, se ejecuta en el hilo del motor cuando el estado cambió.
+     */
+    public void confirmar(String clave, T mensaje, Runnable alCambiar) {
+        actualizar(clave, mensaje, alCambiar, false);
+    }
+
+    private void actualizar(String clave, T mensaje, Runnable alCambiar, boolean sincroniza) {
+        ejecutar(() -> {
+            if (!esActual(clave)) {
+                return;
+            }
+            eventos.incrementAndGet();
+            if (!store.contiene(claves.getId(mensaje)) && antesDeLaVentana(mensaje)) {
+                // Una edición de un mensaje que ya salió de la ventana no lo vuelve a traer
+                if (alCambiar != null) {
+                    alCambiar.run();
+                }
+                return;
+            }
+            if (store.actualizar(mensaje)) {
+                if (sincroniza) {
+                    avanzarCursor(claves.getFecha(mensaje));
+                }
+                recortar();
+                marcarCambio();
+                if (alCambiar != null) {
+                    alCambiar.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Elimina un mensaje por su ID.
+     *
+     * @param clave Conversación del mensaje.
+     * @param id    ID del mensaje.
+     */
+    public void eliminar(String clave, String id) {
+        ejecutar(() -> {
+            if (!esActual(clave)) {
+                return;
+            }
+            eventos.incrementAndGet();
+            if (store.eliminar(id)) {
+                marcarCambio();
+            }
+        });
+    }
+
+    /**
+     * Vuelve a publicar el estado actual aunque no haya cambios (por ejemplo, tras un error de carga,
+     * para que la interfaz deje de esperar). Publica de inmediato, junto con lo que hubiera pendiente.
+     *
+     * @param clave Conversación que se esperaba.
+     */
+    public void publicar(String clave) {
+        ejecutar(() -> {
+            if (esActual(clave)) {
+                publicarAhora();
+            }
+        });
+    }
+
+    /**
+     * Obtiene el cursor de sincronización: el createdAt más reciente recibido del servidor.
+     *
+     * @return Fecha del mensaje más reciente sincronizado, o null si todavía no hay ninguno.
+     */
+    public Date getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Obtiene la cantidad de eventos procesados de la conversación abierta desde que se creó el motor:
+     * cada mensaje entregado (aunque sea repetido), cada edición y cada borrado.
+     */
+    public long getEventos() {
+        return eventos.get();
+    }
+
+    /**
+     * Obtiene la cantidad de instantáneas publicadas desde que se creó el motor.
+     */
+    public long getPublicaciones() {
+        return publicaciones.get();
+    }
+
+    /**
+     * Espera a que se procesen todas las operaciones encoladas hasta ahora y publica lo pendiente
+     * sin esperar al cierre de la ventana.
+     *
+     * @param timeoutMs Tiempo máximo de espera.
+     * @return true si la cola se vació a tiempo.
+     * @throws InterruptedException si el hilo que espera es interrumpido.
+     */
+    public boolean esperarInactivo(long timeoutMs) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        ejecutar(() -> {
+            publicarPendiente();
+            latch.countDown();
+        });
+        return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detiene el hilo del motor. Las operaciones posteriores se ignoran.
+     */
+    public void apagar() {
+        executor.shutdown();
+    }
+
+    private void ejecutar(Runnable operacion) {
+        if (!executor.isShutdown()) {
+            try {
+                executor.execute(operacion);
+            } catch (RejectedExecutionException ignorada) {
+                // El motor se apagó entre la comprobación y el envío
+            }
+        }
+    }
+
+    /**
+     * Anota que el estado cambió y, si no hay una publicación programada, la programa para el final de
+     * la ventana actual. Las ventanas están alineadas a múltiplos de {@link #INTERVALO_PUBLICACION_MS}.
+     */
+    private void marcarCambio() {
+        cambiosPendientes = true;
+        if (publicacionProgramada) {
+            return;
+        }
+        publicacionProgramada = true;
+        long ahora = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        long espera = INTERVALO_PUBLICACION_MS - ahora % INTERVALO_PUBLICACION_MS;
+        try {
+            RELOJ.schedule(() -> ejecutar(() -> {
+                publicacionProgramada = false;
+                publicarPendiente();
+            }), espera, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            publicacionProgramada = false;
+            publicarPendiente();
+        }
+    }
+
+    private void publicarPendiente() {
+        if (cambiosPendientes) {
+            publicarAhora();
+        }
+    }
+
+    private void publicarAhora() {
+        cambiosPendientes = false;
+        publicaciones.incrementAndGet();
+        sink.publicar(store.snapshot());
+    }
+
+    private boolean esActual(String clave) {
+        return clave != null && clave.equals(claveActual);
+    }
+
+    /**
+     * Indica si el mensaje, que no está en memoria, quedaría antes de la ventana: es igual o anterior al
+     * horizonte y también anterior a todo lo cargado. Si mientras se lee el historial se cargaron páginas
+     * que lo rodean, no lo es y entra en su lugar.
+     */
+    private boolean antesDeLaVentana(T mensaje) {
+        if (!fueraDeVentana(mensaje)) {
+            return false;
+        }
+        T primero = store.primero();
+        return primero == null || !ordenaAntes(primero, mensaje);
+    }
+
+    /**
+     * Indica si el mensaje ordena igual o antes que el más reciente descartado.
+     */
+    private boolean fueraDeVentana(T mensaje) {
+        Date fecha = claves.getFecha(mensaje);
+        if (horizonte == null || fecha == null) {
+            return false;
+        }
+        int c = fecha.compareTo(horizonte);
+        if (c != 0) {
+            return c < 0;
+        }
+        String id = claves.getId(mensaje);
+        return id != null && horizonteId != null && id.compareTo(horizonteId) <= 0;
+    }
+
+    /**
+     * Indica si un mensaje ordena antes que otro con el mismo criterio (fecha, id) que el almacén.
+     */
+    private boolean ordenaAntes(T a, T b) {
+        Date fa = claves.getFecha(a);
+        Date fb = claves.getFecha(b);
+        if (fa == null || fb == null) {
+            return fb == null && fa != null;
+        }
+        int c = fa.compareTo(fb);
+        if (c != 0) {
+            return c < 0;
+        }
+        String ia = claves.getId(a);
+        String ib = claves.getId(b);
+        return ia != null && ib != null && ia.compareTo(ib) < 0;
+    }
+
+    /**
+     * Recorta los mensajes más antiguos si se superó la ventana y se están mostrando los últimos.
+     *
+     * @return true si se descartó algún mensaje.
+     */
+    private boolean recortar() {
+        if (!siguiendoUltimos) {
+            return false;
+        }
+        List<T> descartados = store.recortarAntiguos(ventana);
+        if (descartados.isEmpty()) {
+            return false;
+        }
+        // Los descartados salen en orden: el último es el nuevo horizonte si queda después del actual
+        T ultimo = descartados.get(descartados.size() - 1);
+        if (claves.getFecha(ultimo) != null && !fueraDeVentana(ultimo)) {
+            horizonte = claves.getFecha(ultimo);
+            horizonteId = claves.getId(ultimo);
+        }
+        if (alRecortar != null) {
+            alRecortar.accept(claveActual, store.primero());
+        }
+        return true;
+    }
+
+    private void avanzarCursor(Date fecha) {
+        Date actual = cursor;
+        if (fecha != null && (actual == null || fecha.after(actual))) {
+            cursor = fecha;
+        }
+    }
+}
@@ -3,19 +3,37 @@ package com.example.moviltpi.features.chat;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.moviltpi.R;
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.Presencia;
+import com.example.moviltpi.core.models.User;
+import com.example.moviltpi.core.utils.UsuarioCache;
 import com.example.moviltpi.databinding.FragmentChatBinding;
-import com.parse.ParseException;
 import com.parse.ParseUser;
 
-import java.util.ArrayList;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 /**
@@ -25,11 +43,19 @@ import java.util.Objects;
  */
 public class ChatFragment extends Fragment {
 
+    /** Cantidad de mensajes desde el principio a partir de la cual se pide la página anterior */
+    private static final int UMBRAL_CARGA_ANTERIORES = 5;
+
+    /** Largo máximo del texto de cada resultado de búsqueda en la lista */
+    private static final int LARGO_RESULTADO = 80;
+
     private FragmentChatBinding binding; // Objeto de binding para acceder a las vistas del layout
     private ChatViewModel chatViewModel; // ViewModel que gestiona la lógica del chat
     private MensajeAdapter adapter; // Adaptador para el RecyclerView que muestra los mensajes
     private ParseUser otroUsuario; // Usuario con el que se está chateando
-    private boolean isObservingMessages = false; // Bandera para verificar si se están observando mensajes
+    private LinearLayoutManager layoutManager; // Layout manager del RecyclerView de mensajes
+    private boolean siguiendoUltimos = true; // Indica si el último mensaje está a la vista
+    private String idBuscado; // objectId del resultado de búsqueda al que hay que desplazarse al cargarlo
 
     /**
      * Método llamado cuando se crea la vista del fragmento.
@@ -62,16 +88,35 @@ public class ChatFragment extends Fragment {
         }
 
         // Configuración del RecyclerView para mostrar los mensajes
-        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        layoutManager = new LinearLayoutManager(getContext());
         layoutManager.setStackFromEnd(true); // Los mensajes se apilan desde el final (abajo)
         binding.recyclerMensajes2.setLayoutManager(layoutManager);
-        adapter = new MensajeAdapter(new ArrayList<>(), ParseUser.getCurrentUser());
+        adapter = new MensajeAdapter();
         binding.recyclerMensajes2.setAdapter(adapter);
 
+        // Al llegar al principio de la lista, pedir la página anterior del historial;
+        // avisar también si el usuario dejó de ver (o vuelve a ver) los últimos mensajes
+        binding.recyclerMensajes2.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (chatViewModel == null) {
+                    return;
+                }
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= UMBRAL_CARGA_ANTERIORES) {
+                    chatViewModel.cargarMensajesAnteriores();
+                }
+                boolean alFinal = layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - 1;
+                if (alFinal != siguiendoUltimos) {
+                    siguiendoUltimos = alFinal;
+                    chatViewModel.setSiguiendoUltimos(alFinal);
+                }
+            }
+        });
+
         // Inicialización del ViewModel compartido con la actividad
         chatViewModel = new ViewModelProvider(requireActivity()).get(ChatViewModel.class);
 
-        // Obtener el usuario con el que se chateará
+        // Obtener el usuario con el que se chateará, sin esperar al servidor
         otroUsuario = obtenerOtroUsuario();
         if (otroUsuario == null) {
             Log.d("ChatsFragment", "No hay usuario seleccionado");
@@ -80,16 +125,16 @@ public class ChatFragment extends Fragment {
         }
 
         // Configurar el título de la barra de herramientas con el nombre del usuario
-        if (binding.toolbar != null && ((AppCompatActivity) requireActivity()).getSupportActionBar() != null) {
-            Objects.requireNonNull(((AppCompatActivity) requireActivity()).getSupportActionBar())
-                    .setTitle("Chat con " + otroUsuario.getUsername());
-        }
+        mostrarTitulo();
+
+        // Agregar la búsqueda de mensajes a la barra de herramientas
+        setupMenu();
 
         // Mostrar la interfaz completa del chat
         mostrarInterfazConUsuario();
 
-        // Iniciar la observación de mensajes en tiempo real
-        observarMensajes();
+        // Abrir la conversación; los mensajes se observan desde onViewCreated
+        chatViewModel.abrirConversacion(otroUsuario);
 
         // Configurar el botón flotante para enviar mensajes
         binding.fabEnviar2.setOnClickListener(v -> enviarMensaje());
@@ -97,32 +142,40 @@ public class ChatFragment extends Fragment {
         return view;
     }
 
+    /**
+     * Método llamado cuando la vista ya está creada.
+     * Observa las filas de la conversación una sola vez por vista, atadas a su ciclo de vida.
+     */
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        chatViewModel.getFilas().observe(getViewLifecycleOwner(), this::mostrarFilas);
+    }
+
     /**
      * Método llamado cuando el fragmento se reanuda.
-     * Reanuda la observación de mensajes y el polling si es necesario.
+     * Reanuda el polling de mensajes.
      */
     @Override
     public void onResume() {
         super.onResume();
-        if (otroUsuario != null && !isObservingMessages) {
-            observarMensajes(); // Reanudar la observación de mensajes si estaba pausada
-        }
         if (chatViewModel != null) {
             chatViewModel.resumePolling(); // Reanudar el polling del ViewModel
         }
+        MyApplication.getPresencia().iniciar(); // Mantener el latido de presencia mientras el chat está a la vista
     }
 
     /**
      * Método llamado cuando el fragmento se pausa.
-     * Detiene la observación de mensajes y pausa el polling.
+     * Pausa el polling de mensajes.
      */
     @Override
     public void onPause() {
         super.onPause();
-        isObservingMessages = false; // Marcar que no se están observando mensajes
         if (chatViewModel != null) {
             chatViewModel.pausePolling(); // Pausar el polling del ViewModel
         }
+        MyApplication.getPresencia().detener(); // Detener el latido de presencia
     }
 
     /**
@@ -136,65 +189,233 @@ public class ChatFragment extends Fragment {
     }
 
     /**
-     * Observa los mensajes del usuario seleccionado y actualiza el RecyclerView en tiempo real.
+     * Actualiza el adaptador con las filas de mensajes.
+     * Si cambió el último mensaje se desplaza al final; si solo se agregaron mensajes anteriores
+     * (página del historial) se conserva el mensaje que el usuario estaba viendo.
+     *
+     * @param filas Lista completa de filas, ordenada por fecha
+     */
+    private void mostrarFilas(List<MensajeFila> filas) {
+        Log.d("ChatsFragment", "Mensajes cargados: " + filas.size());
+        if (binding == null) {
+            return;
+        }
+
+        MensajeFila ultimoAnterior = adapter.getItemCount() > 0 ? adapter.getFila(adapter.getItemCount() - 1) : null;
+        MensajeFila ultimoNuevo = filas.isEmpty() ? null : filas.get(filas.size() - 1);
+        boolean cambioUltimo = ultimoNuevo != null
+                && (ultimoAnterior == null || !Objects.equals(ultimoAnterior.getIdLocal(), ultimoNuevo.getIdLocal()));
+
+        // Recordar el primer mensaje visible y su desplazamiento antes de actualizar
+        int primeraVisible = layoutManager.findFirstVisibleItemPosition();
+        String idAncla = null;
+        int offsetAncla = 0;
+        if (!cambioUltimo && primeraVisible != RecyclerView.NO_POSITION) {
+            idAncla = adapter.getFila(primeraVisible).getIdLocal();
+            View vistaAncla = layoutManager.findViewByPosition(primeraVisible);
+            offsetAncla = vistaAncla != null ? vistaAncla.getTop() : 0;
+        }
+
+        // Actualizar el adaptador; el desplazamiento se aplica cuando termina el cálculo de diferencias
+        String ancla = idAncla;
+        int offset = offsetAncla;
+        adapter.setFilas(filas, () -> desplazarTrasActualizar(filas, cambioUltimo, ancla, primeraVisible, offset));
+        chatViewModel.registrarLectura(); // Los mensajes a la vista quedan leídos
+    }
+
+    /**
+     * Tras aplicar una lista nueva, baja al último mensaje o mantiene a la vista el que se estaba leyendo.
+     */
+    private void desplazarTrasActualizar(List<MensajeFila> filas, boolean cambioUltimo, String idAncla,
+                                         int primeraVisible, int offsetAncla) {
+        if (binding == null) {
+            return;
+        }
+        if (desplazarABuscado()) {
+            return;
+        }
+        if (cambioUltimo) {
+            // Mensaje nuevo al final: desplazar el RecyclerView al último mensaje
+            binding.recyclerMensajes2.scrollToPosition(filas.size() - 1);
+        } else if (idAncla != null) {
+            // Página anterior agregada arriba: mantener a la vista el mismo mensaje
+            for (int i = 0; i < filas.size(); i++) {
+                if (idAncla.equals(filas.get(i).getIdLocal())) {
+                    if (i != primeraVisible) {
+                        layoutManager.scrollToPositionWithOffset(i, offsetAncla);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Configura el menú de la Toolbar con la búsqueda de mensajes de la conversación.
+     */
+    private void setupMenu() {
+        requireActivity().addMenuProvider(new MenuProvider() {
+            @Override
+            public void onCreateMenu(@NonNull Menu menu, @NonNull MenuInflater menuInflater) {
+                menuInflater.inflate(R.menu.chat_menu, menu);
+                SearchView searchView = (SearchView) menu.findItem(R.id.itemBuscar).getActionView();
+                searchView.setQueryHint(getString(R.string.chat_buscar));
+                searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                    @Override
+                    public boolean onQueryTextSubmit(String query) {
+                        buscarMensajes(query);
+                        searchView.clearFocus();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onQueryTextChange(String newText) {
+                        return false;
+                    }
+                });
+            }
+
+            @Override
+            public boolean onMenuItemSelected(@NonNull MenuItem menuItem) {
+                return false;
+            }
+        }, getViewLifecycleOwner(), Lifecycle.State.RESUMED);
+    }
+
+    /**
+     * Busca mensajes en la conversación y muestra los resultados para elegir a cuál ir.
+     */
+    private void buscarMensajes(String consulta) {
+        chatViewModel.buscarMensajes(consulta).observe(getViewLifecycleOwner(), resultados -> {
+            if (binding == null) {
+                return;
+            }
+            if (resultados.isEmpty()) {
+                Toast.makeText(getContext(), R.string.chat_sin_resultados, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            SimpleDateFormat formato = new SimpleDateFormat("dd/MM/yy HH:mm", Locale.getDefault());
+            String[] items = new String[resultados.size()];
+            for (int i = 0; i < resultados.size(); i++) {
+                IndiceConversacion.Documento resultado = resultados.get(i);
+                String texto = resultado.getTexto();
+                if (texto.length() > LARGO_RESULTADO) {
+                    texto = texto.substring(0, LARGO_RESULTADO) + "…";
+                }
+                items[i] = formato.format(new Date(resultado.getFecha())) + "\n" + texto;
+            }
+            new AlertDialog.Builder(requireContext())
+                    .setTitle(consulta)
+                    .setItems(items, (dialog, which) -> irAMensaje(resultados.get(which)))
+                    .show();
+        });
+    }
+
+    /**
+     * Muestra un resultado de búsqueda: si ya está en la lista se desplaza hasta él; si no, se carga el
+     * historial hasta alcanzarlo y el desplazamiento se hace al recibir las filas.
+     */
+    private void irAMensaje(IndiceConversacion.Documento resultado) {
+        idBuscado = resultado.getId();
+        siguiendoUltimos = false;
+        chatViewModel.irAMensaje(resultado);
+        desplazarABuscado();
+    }
+
+    /**
+     * Si hay un resultado de búsqueda pendiente y ya está en la lista, lo deja a la vista.
+     *
+     * @return true si se desplazó hasta el resultado
+     */
+    private boolean desplazarABuscado() {
+        if (idBuscado == null) {
+            return false;
+        }
+        for (int i = 0; i < adapter.getItemCount(); i++) {
+            if (idBuscado.equals(adapter.getFila(i).getObjectId())) {
+                idBuscado = null;
+                layoutManager.scrollToPositionWithOffset(i, binding.recyclerMensajes2.getHeight() / 3);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Muestra el nombre del otro usuario en la barra de herramientas y, debajo, su presencia.
+     * Si su perfil todavía no está cargado, se pide en segundo plano y el título se completa al llegar.
      */
-    private void observarMensajes() {
-        if (otroUsuario != null) {
-            isObservingMessages = true; // Indicar que se están observando mensajes
-            chatViewModel.getMensajes(otroUsuario).observe(getViewLifecycleOwner(), mensajes -> {
-                Log.d("ChatsFragment", "Mensajes cargados: " + mensajes.size());
-                adapter.setMensajes(mensajes); // Actualizar el adaptador con los nuevos mensajes
-                if (!mensajes.isEmpty()) {
-                    // Desplazar el RecyclerView al último mensaje
-                    binding.recyclerMensajes2.scrollToPosition(mensajes.size() - 1);
+    private void mostrarTitulo() {
+        ActionBar actionBar = getActivity() != null ? ((AppCompatActivity) getActivity()).getSupportActionBar() : null;
+        if (actionBar == null || otroUsuario == null) {
+            return;
+        }
+        if (!UsuarioCache.tienePerfil(otroUsuario)) {
+            actionBar.setTitle(R.string.chat_titulo);
+            actionBar.setSubtitle(null);
+            String userId = otroUsuario.getObjectId();
+            MyApplication.getUsuarioCache().resolver(userId, (usuario, e) -> {
+                // El fragmento pudo cerrarse o cambiar de chat mientras tanto
+                if (usuario != null && binding != null && otroUsuario != null
+                        && userId.equals(otroUsuario.getObjectId())) {
+                    otroUsuario = usuario;
+                    mostrarTitulo();
                 }
             });
+            return;
+        }
+        actionBar.setTitle("Chat con " + otroUsuario.getUsername());
+        mostrarPresencia(actionBar);
+    }
+
+    /**
+     * Muestra bajo el título si el otro usuario está en línea o cuándo se conectó por última vez.
+     */
+    private void mostrarPresencia(ActionBar actionBar) {
+        Date ultimaConexion = otroUsuario.getDate(User.KEY_ULTIMA_CONEXION);
+        if (Presencia.estaEnLinea(otroUsuario)) {
+            actionBar.setSubtitle(R.string.chat_en_linea);
+        } else if (ultimaConexion != null) {
+            String hora = new SimpleDateFormat("dd/MM HH:mm", Locale.getDefault()).format(ultimaConexion);
+            actionBar.setSubtitle(getString(R.string.chat_ultima_conexion, hora));
+        } else {
+            actionBar.setSubtitle(null);
         }
     }
 
     /**
      * Obtiene el usuario seleccionado a partir de los argumentos del fragmento.
+     * Si su perfil está en la caché se devuelve completo; si no, se devuelve un puntero con su ID, que
+     * alcanza para cargar el chat, y el nombre se completa después con {@link #mostrarTitulo()}.
      *
-     * @return El usuario seleccionado o null si no se encuentra
+     * @return El usuario seleccionado o null si no hay ninguno
      */
     private ParseUser obtenerOtroUsuario() {
         Bundle bundle = getArguments();
         if (bundle != null && bundle.containsKey("otroUsuarioId")) {
             String userId = bundle.getString("otroUsuarioId");
-            ParseUser user = ParseUser.createWithoutData(ParseUser.class, userId);
-            try {
-                user.fetchIfNeeded(); // Cargar los datos del usuario desde el servidor
-                Log.d("ChatsFragment", "Usuario cargado: " + user.getUsername());
-                return user;
-            } catch (ParseException e) {
-                Log.e("ChatsFragment", "Error al cargar usuario: ", e);
-            }
+            ParseUser user = MyApplication.getUsuarioCache().buscar(userId);
+            return user != null ? user : ParseUser.createWithoutData(ParseUser.class, userId);
         }
         return null;
     }
 
     /**
-     * Actualiza el usuario con el que se está chateando y reinicia la observación de mensajes.
+     * Actualiza el usuario con el que se está chateando y abre su conversación.
      *
      * @param newUser Nuevo usuario seleccionado
      */
     public void updateUser(ParseUser newUser) {
         this.otroUsuario = newUser;
 
-        // Actualizar el título de la barra de herramientas
-        if (getActivity() != null && ((AppCompatActivity) getActivity()).getSupportActionBar() != null) {
-            ((AppCompatActivity) getActivity()).getSupportActionBar()
-                    .setTitle("Chat con " + otroUsuario.getUsername());
-        }
-
         if (otroUsuario == null) {
             mostrarInterfazSinUsuario(); // Mostrar interfaz sin usuario si no hay selección
             return;
         }
 
+        mostrarTitulo(); // Actualizar el título de la barra de herramientas
         mostrarInterfazConUsuario(); // Mostrar interfaz de chat completa
-        isObservingMessages = false; // Reiniciar la bandera
-        observarMensajes(); // Reiniciar la observación de mensajes
+        chatViewModel.abrirConversacion(otroUsuario); // Las filas llegan por el mismo LiveData ya observado
     }
 
     /**
@@ -8,21 +8,27 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
 
+import com.example.moviltpi.core.LiveQueryManager;
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Conversacion;
 import com.example.moviltpi.core.models.Mensaje;
-import com.parse.ParseObject;
 import com.parse.ParseQuery;
 import com.parse.ParseUser;
-import com.parse.livequery.ParseLiveQueryClient;
 import com.parse.livequery.SubscriptionHandling;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Proveedor para la gestión de chats entre usuarios.
@@ -33,6 +39,17 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * - Enviar nuevos mensajes
  * - Mantener una conexión en tiempo real para recibir actualizaciones
  * - Manejar fallos en la conexión con un sistema de polling
+ * <p>
+ * El polling funciona como una máquina de estados: está apagado mientras LiveQuery está conectado,
+ * se activa con backoff exponencial mientras está desconectado y, al reconectarse, se hace una única
+ * consulta inmediata para recuperar los mensajes perdidos durante el corte.
+ * La conexión y las suscripciones LiveQuery las mantiene el {@link LiveQueryManager} de la aplicación.
+ * <p>
+ * Las últimas {@link #MAX_SESIONES} conversaciones abiertas se conservan en memoria como sesiones, cada
+ * una con su motor, sus cursores y su registro en el router. Solo la sesión activa hace polling; las
+ * demás quedan inactivas y siguen recibiendo los eventos de LiveQuery del router, sin consultas propias.
+ * Si mientras estaban inactivas se cortó LiveQuery, al volver a ellas se piden solo los mensajes
+ * posteriores a su cursor. Así, ir y volver entre chats recientes no recarga el historial.
  */
 public class ChatProvider {
     /** Nombre de la clase en Parse para los mensajes */
@@ -41,23 +58,89 @@ public class ChatProvider {
     /** Tag para los logs */
     private static final String TAG = "ChatProvider";
 
-    /** Intervalo en milisegundos para el polling de nuevos mensajes */
+    /** Intervalo inicial en milisegundos para el polling de nuevos mensajes */
     private static final long POLLING_INTERVAL = 5000; // 5 segundos
 
-    /** Cliente LiveQuery para suscripciones en tiempo real */
-    private final ParseLiveQueryClient liveQueryClient;
+    /** Intervalo máximo en milisegundos al que puede llegar el backoff del polling */
+    private static final long MAX_POLLING_INTERVAL = 60000; // 1 minuto
 
-    /** LiveData que contiene la lista de mensajes */
+    /** Cantidad de mensajes por página del historial */
+    static final int TAMANO_PAGINA = 40;
+
+    /** Cantidad de mensajes por consulta del polling; si vuelve llena se pide la siguiente */
+    static final int TAMANO_PAGINA_POLLING = 100;
+
+    /** Intervalo mínimo entre registros del ritmo de eventos del chat */
+    private static final long INTERVALO_RITMO_MS = 1000;
+
+    /** Cantidad de conversaciones recientes que se conservan en memoria */
+    static final int MAX_SESIONES = 3;
+
+    /** Cantidad máxima de mensajes por consulta al cargar el historial hasta un resultado de búsqueda */
+    private static final int TAMANO_SALTO = 500;
+
+    /** Gestor de LiveQuery de la aplicación; null si no se pudo configurar el WebSocket */
+    @Nullable
+    private final LiveQueryManager liveQueryManager;
+
+    /** LiveData que contiene la lista de mensajes de la sesión activa */
     private final MutableLiveData<List<Mensaje>> mensajesLiveData;
 
     /** Usuario con el que se está chateando actualmente */
     private ParseUser currentChatUser;
 
-    /** Suscripción actual de LiveQuery */
-    private SubscriptionHandling<Mensaje> currentSubscription;
+    /**
+     * Clave de la conversación actual; identifica su sesión, su historial local y las operaciones
+     * del motor. Se escribe en el hilo principal y se lee también desde el hilo de LiveQuery.
+     */
+    private volatile String claveConversacion;
+
+    /** Sesiones en memoria por clave, de la menos a la más recientemente usada; solo en el hilo principal */
+    private final Map<String, Sesion> sesiones = new LinkedHashMap<>(MAX_SESIONES + 1, 0.75f, true);
 
-    /** Consulta actual de LiveQuery */
-    private ParseQuery<Mensaje> currentQuery;
+    /** Sesión de la conversación que se está mostrando; se escribe en el hilo principal */
+    private volatile Sesion sesionActiva;
+
+    /** Suscripción única de la aplicación, que reparte los eventos a las conversaciones en memoria */
+    private final MensajeRouter mensajeRouter;
+
+    /** Historial de mensajes guardado en el dispositivo */
+    private final MensajeCache mensajeCache = new MensajeCache();
+
+    /** Marcas de lectura de la aplicación; agrupa las escrituras de todas las conversaciones */
+    private final MarcadorLectura marcadorLectura;
+
+    /** Cola de salida de la aplicación; los mensajes se muestran antes de llegar al servidor */
+    private final MensajeOutbox outbox;
+
+    /** Métricas de latencia de la aplicación; se miden las llegadas por LiveQuery y por polling */
+    private final LatenciaChat latencia = MyApplication.getLatenciaChat();
+
+    /**
+     * Reemplaza en la lista los mensajes propios cuando se confirman o fallan. El mensaje pendiente y el
+     * guardado comparten clientId, así que el motor los trata como el mismo. Las confirmaciones no mueven
+     * el cursor de sincronización: el polling lo sigue tomando de lo último recibido del servidor.
+     */
+    private final MensajeOutbox.Listener outboxListener = new MensajeOutbox.Listener() {
+        @Override
+        public void onEnviado(Mensaje guardado) {
+            String clave = guardado.getConversacionId();
+            Sesion sesion = clave != null ? sesiones.get(clave) : null;
+            if (sesion != null) {
+                sesion.chatEngine.confirmar(clave, guardado,
+                        () -> mensajeCache.guardar(clave, Collections.singletonList(guardado)));
+            }
+        }
+
+        @Override
+        public void onFallido(Mensaje mensaje) {
+            String clave = mensaje.getConversacionId();
+            Sesion sesion = clave != null ? sesiones.get(clave) : null;
+            if (sesion != null) {
+                sesion.chatEngine.confirmar(clave, mensaje, null);
+            }
+        }
+    };
 
     // Variables para el polling
     /** Handler para programar el polling en el hilo principal */
@@ -66,37 +149,188 @@ public class ChatProvider {
     /** Flag atómico para controlar si el polling está activo */
     private final AtomicBoolean isPolling = new AtomicBoolean(false);
 
-    /** Timestamp del último mensaje recibido */
-    private Date lastMessageTimestamp = null;
+    /** Indica si la interfaz pausó la sincronización (fragmento en segundo plano) */
+    private boolean syncPausada = false;
+
+    /** Indica si la suscripción LiveQuery está confirmada y sana; solo se modifica desde el hilo principal */
+    private boolean liveQueryActivo = false;
 
-    /** Set para mantener registro de los IDs de mensajes procesados y evitar duplicados */
-    private final Set<String> processedMessageIds = new HashSet<>();
+    /** Intervalo actual del polling, que crece exponencialmente mientras LiveQuery está caído */
+    private long pollingIntervalActual = POLLING_INTERVAL;
 
     /**
-     * Runnable que realiza el polling periódico de nuevos mensajes
+     * Runnable que realiza el polling de respaldo mientras LiveQuery está desconectado.
+     * Cada ejecución duplica el intervalo hasta {@link #MAX_POLLING_INTERVAL}.
      */
     private final Runnable pollingRunnable = new Runnable() {
         @Override
         public void run() {
-            if (isPolling.get() && currentChatUser != null) {
+            if (isPolling.get() && currentChatUser != null && !liveQueryActivo) {
                 pollForNewMessages();
-                // Programar la próxima ejecución
-                pollingHandler.postDelayed(this, POLLING_INTERVAL);
+                // Programar la próxima ejecución con backoff exponencial
+                pollingIntervalActual = Math.min(pollingIntervalActual * 2, MAX_POLLING_INTERVAL);
+                pollingHandler.postDelayed(this, pollingIntervalActual);
+            } else {
+                isPolling.set(false);
             }
         }
     };
 
+    /**
+     * Observa el estado de la conexión del gestor: cualquier estado distinto de conectado
+     * activa el polling de respaldo y deja desactualizadas las sesiones inactivas.
+     */
+    private final Observer<LiveQueryManager.EstadoConexion> estadoObserver = estado -> {
+        if (estado != LiveQueryManager.EstadoConexion.CONECTADO) {
+            for (Sesion sesion : sesiones.values()) {
+                sesion.desactualizada = true;
+            }
+            onLiveQueryDesconectado();
+        }
+    };
+
+    /**
+     * Estado en memoria de una conversación: su motor, sus cursores del historial y su oyente en el router.
+     * Los campos sin otra indicación se usan solo en el hilo principal.
+     */
+    private final class Sesion {
+        final String clave;
+        final ParseUser otroUsuario;
+
+        /**
+         * Mensajes ordenados, índice por ID y cursor de sincronización, confinados a un único hilo.
+         * LiveQuery, el polling y las cargas solo le encolan operaciones.
+         */
+        final ChatEngine<Mensaje> chatEngine;
+
+        /** Última instantánea publicada por el motor; se muestra al instante al volver a la sesión */
+        volatile List<Mensaje> ultima = Collections.emptyList();
+
+        /** createdAt del mensaje más antiguo cargado; cursor para pedir la página anterior */
+        Date cursorAntiguo = null;
+
+        /** Indica si el servidor puede tener mensajes anteriores a {@link #cursorAntiguo} */
+        boolean hayMensajesAnteriores = false;
+
+        /** Evita pedir la misma página anterior dos veces mientras la primera está en curso */
+        final AtomicBoolean cargandoAnteriores = new AtomicBoolean(false);
+
+        /** Indica si pudo perder eventos mientras estaba inactiva (LiveQuery se cortó) */
+        boolean desactualizada = false;
+
+        /** Momento y contadores del último registro del ritmo de eventos; solo en el hilo del motor */
+        long ritmoDesdeMs = System.currentTimeMillis();
+        long ritmoEventos = 0;
+        long ritmoPublicaciones = 0;
+
+        /**
+         * Oyente de la sesión en el {@link MensajeRouter}.
+         * Los eventos llegan en el hilo del socket; la confirmación de la suscripción (inicial o tras una
+         * reconexión) apaga el polling y dispara la recuperación de mensajes perdidos si la sesión está
+         * activa, o la marca para ponerse al día cuando se vuelva a ella.
+         */
+        final LiveQueryManager.Listener<Mensaje> oyente = new LiveQueryManager.Listener<Mensaje>() {
+            @Override
+            public void onEvento(SubscriptionHandling.Event event, Mensaje mensaje) {
+                switch (event) {
+                    case CREATE:
+                    case ENTER:
+                        procesarMensajeCreado(Sesion.this, mensaje);
+                        break;
+                    case UPDATE:
+                        procesarMensajeActualizado(Sesion.this, mensaje);
+                        break;
+                    case DELETE:
+                    case LEAVE:
+                        procesarMensajeEliminado(Sesion.this, mensaje);
+                        break;
+                }
+            }
+
+            @Override
+            public void onSuscrito() {
+                pollingHandler.post(() -> {
+                    if (sesionActiva == Sesion.this) {
+                        onLiveQueryConectado();
+                    }
+                });
+            }
+        };
+
+        Sesion(String clave, ParseUser otroUsuario) {
+            this.clave = clave;
+            this.otroUsuario = otroUsuario;
+            chatEngine = new ChatEngine<>(new MensajeStore.Claves<Mensaje>() {
+                @Override
+                public String getId(Mensaje mensaje) {
+                    // Estable desde que el mensaje se crea en el dispositivo hasta que llega al servidor
+                    return mensaje.getIdLocal();
+                }
+
+                @Override
+                public Date getFecha(Mensaje mensaje) {
+                    return mensaje.getCreatedAt();
+                }
+            }, Executors.newSingleThreadExecutor(), mensajes -> publicarMensajes(this, mensajes));
+            chatEngine.setAlRecortar((c, masAntiguo) -> pollingHandler.post(() -> {
+                if (masAntiguo != null) {
+                    // Lo recortado de la memoria se vuelve a pedir como página anterior
+                    cursorAntiguo = masAntiguo.getCreatedAt();
+                    hayMensajesAnteriores = true;
+                }
+            }));
+        }
+    }
+
     /**
      * Constructor de ChatProvider.
-     * Inicializa el cliente LiveQuery y la lista de mensajes vacía.
+     * Obtiene el gestor LiveQuery de la aplicación y inicializa la lista de mensajes vacía.
      */
     public ChatProvider() {
-        liveQueryClient = ParseLiveQueryClient.Factory.getClient();
+        liveQueryManager = MyApplication.getLiveQueryManager();
+        mensajeRouter = MyApplication.getMensajeRouter();
+        if (liveQueryManager != null) {
+            liveQueryManager.getEstado().observeForever(estadoObserver);
+        }
         mensajesLiveData = new MutableLiveData<>(new ArrayList<>());
+        outbox = MyApplication.getMensajeOutbox();
+        outbox.addListener(outboxListener);
+        marcadorLectura = MyApplication.getMarcadorLectura();
+    }
+
+    /**
+     * Guarda la instantánea de una sesión, que ya agrupa todos los eventos de un cuadro, y la muestra si
+     * la sesión está activa. Registra cada tanto cuántos eventos por segundo recibió el chat y en cuántas
+     * publicaciones se convirtieron. Se ejecuta en el hilo del motor de la sesión.
+     */
+    private void publicarMensajes(Sesion sesion, List<Mensaje> mensajes) {
+        sesion.ultima = mensajes;
+        // Se vuelve a comprobar en el hilo principal: pudo cambiar la sesión activa mientras tanto
+        pollingHandler.post(() -> {
+            if (sesionActiva == sesion && sesion.ultima == mensajes) {
+                mensajesLiveData.setValue(mensajes);
+            }
+        });
+
+        long ahora = System.currentTimeMillis();
+        long transcurrido = ahora - sesion.ritmoDesdeMs;
+        if (transcurrido < INTERVALO_RITMO_MS) {
+            return;
+        }
+        long eventos = sesion.chatEngine.getEventos() - sesion.ritmoEventos;
+        long publicaciones = sesion.chatEngine.getPublicaciones() - sesion.ritmoPublicaciones;
+        if (eventos > 0) {
+            Log.d(TAG, String.format(Locale.US, "Ritmo del chat: %.1f eventos/s, %d eventos en %d publicaciones",
+                    eventos * 1000.0 / transcurrido, eventos, publicaciones));
+        }
+        sesion.ritmoDesdeMs = ahora;
+        sesion.ritmoEventos += eventos;
+        sesion.ritmoPublicaciones += publicaciones;
     }
 
     /**
-     * Envía un nuevo mensaje al destinatario.
+     * Envía un nuevo mensaje al destinatario. El mensaje aparece al instante como pendiente y la cola
+     * de salida lo guarda en segundo plano, con reintentos; no hace falta volver a consultar el chat.
      *
      * @param texto Contenido del mensaje a enviar
      * @param remitente Usuario que envía el mensaje
@@ -112,217 +346,386 @@ public class ChatProvider {
         mensaje.setTexto(texto);
         mensaje.setRemitente(remitente);
         mensaje.setDestinatario(destinatario);
+        mensaje.setConversacionId(Conversacion.calcularClave(remitente.getObjectId(), destinatario.getObjectId()));
 
-        // Guardar el mensaje en el servidor
-        mensaje.saveInBackground(e -> {
-            if (e == null) {
-                Log.d(TAG, "Mensaje enviado correctamente");
-                // Actualizar la marca de tiempo del último mensaje
-                lastMessageTimestamp = new Date();
-                // Forzar una actualización inmediata
-                pollForNewMessages();
-            } else {
-                Log.e(TAG, "Error al enviar mensaje: " + e.getMessage());
-            }
-        });
+        // Encolar (asigna el clientId) y mostrarlo sin esperar al servidor
+        outbox.encolar(mensaje);
+        Sesion sesion = sesiones.get(mensaje.getConversacionId());
+        if (sesion != null) {
+            sesion.chatEngine.agregarLocales(sesion.clave, Collections.singletonList(mensaje));
+        }
     }
 
     /**
-     * Carga los mensajes de chat con otro usuario y configura las suscripciones
-     * para recibir actualizaciones en tiempo real.
+     * Muestra la conversación con otro usuario. Si su sesión sigue en memoria se muestra al instante y
+     * solo se piden los mensajes que pudo perder; si no, se crea una sesión nueva que carga el historial
+     * y se registra en el router para recibir actualizaciones en tiempo real.
      *
      * @param otroUsuario Usuario con el que se está chateando
      * @return LiveData con la lista de mensajes que se actualizará automáticamente
      */
     public LiveData<List<Mensaje>> cargarMensajes(@NonNull ParseUser otroUsuario) {
-        // Cancelar cualquier suscripción anterior
-        unsubscribeFromLiveQuery();
-
-        // Detener el polling anterior si existe
-        stopPolling();
+        String clave = Conversacion.calcularClave(ParseUser.getCurrentUser().getObjectId(), otroUsuario.getObjectId());
+
+        // Detener el polling de la sesión anterior; deja de estar a la vista pero sigue en memoria
+        detenerPollingProgramado();
+        Sesion anterior = sesionActiva;
+        if (anterior != null && !anterior.clave.equals(clave)) {
+            // Inactiva: se vuelve a recortar a la ventana reciente
+            anterior.chatEngine.setSiguiendoUltimos(true);
+        }
 
-        // Limpiar el conjunto de IDs de mensajes procesados
-        processedMessageIds.clear();
+        Sesion sesion = sesiones.get(clave);
+        boolean nueva = sesion == null;
+        if (nueva) {
+            sesion = new Sesion(clave, otroUsuario);
+            sesiones.put(clave, sesion);
+            descartarSesionesAntiguas();
+        }
 
-        // Almacenar el usuario actual del chat para referencia
+        // Activar la sesión y mostrar lo que ya tenía
+        this.sesionActiva = sesion;
         this.currentChatUser = otroUsuario;
+        this.claveConversacion = clave;
+        mensajesLiveData.setValue(sesion.ultima);
+        mensajeRouter.setVisible(clave);
 
-        // Cargar mensajes iniciales
-        cargarMensajesIniciales(otroUsuario);
+        if (nueva) {
+            // Abrir la conversación en el motor con los mensajes propios que sigan pendientes
+            sesion.chatEngine.abrir(clave);
+            sesion.chatEngine.agregarLocales(clave, outbox.getPendientes(clave));
 
-        // Intentar configurar LiveQuery
-        try {
-            setupLiveQuery(otroUsuario);
-        } catch (Exception e) {
-            Log.e(TAG, "Error al configurar LiveQuery: " + e.getMessage(), e);
-            // Si falla LiveQuery, asegurarse de que el polling esté activo
-            startPolling();
+            // Cargar mensajes iniciales
+            cargarMensajesIniciales(sesion);
+
+            // El estado se confirma cuando LiveQuery acepta la suscripción; hasta entonces el polling queda como respaldo
+            liveQueryActivo = false;
+
+            // Intentar configurar LiveQuery
+            try {
+                setupLiveQuery(sesion);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al configurar LiveQuery: " + e.getMessage(), e);
+            }
+        } else {
+            Log.d(TAG, "Reanudando la sesión en memoria de " + clave);
+            liveQueryActivo = mensajeRouter.isSuscrito();
+            if (sesion.desactualizada || !liveQueryActivo) {
+                // Mientras estuvo inactiva solo recibió eventos del router: pedir lo que pudo perderse
+                sesion.desactualizada = false;
+                pollForNewMessages();
+            }
         }
 
-        // Iniciar polling como respaldo
-        startPolling();
+        // Programar el polling de respaldo (se cancela en cuanto LiveQuery confirme la conexión)
+        if (!syncPausada && !liveQueryActivo) {
+            programarPolling();
+        }
 
         return mensajesLiveData;
     }
 
     /**
-     * Carga los mensajes históricos entre el usuario actual y otro usuario.
-     *
-     * @param otroUsuario Usuario con el que se está chateando
+     * Descarta las sesiones menos usadas recientemente hasta dejar {@link #MAX_SESIONES}.
      */
-    private void cargarMensajesIniciales(@NonNull ParseUser otroUsuario) {
-        // Crear consultas para mensajes enviados y recibidos
-        ParseQuery<Mensaje> query = ParseQuery.getQuery(CLASS_NAME);
-        query.whereEqualTo("remitente", ParseUser.getCurrentUser());
-        query.whereEqualTo("destinatario", otroUsuario);
+    private void descartarSesionesAntiguas() {
+        Iterator<Sesion> iterador = sesiones.values().iterator();
+        while (sesiones.size() > MAX_SESIONES && iterador.hasNext()) {
+            Sesion sesion = iterador.next();
+            if (sesion == sesionActiva) {
+                continue;
+            }
+            Log.d(TAG, "Descartando la sesión de " + sesion.clave);
+            iterador.remove();
+            cerrarSesion(sesion);
+        }
+    }
 
-        ParseQuery<Mensaje> queryReceived = ParseQuery.getQuery(CLASS_NAME);
-        queryReceived.whereEqualTo("remitente", otroUsuario);
-        queryReceived.whereEqualTo("destinatario", ParseUser.getCurrentUser());
+    /**
+     * Quita una sesión del router y detiene su motor.
+     */
+    private void cerrarSesion(Sesion sesion) {
+        mensajeRouter.cerrar(sesion.clave, sesion.oyente);
+        sesion.chatEngine.apagar();
+    }
 
-        List<ParseQuery<Mensaje>> queries = new ArrayList<>();
-        queries.add(query);
-        queries.add(queryReceived);
+    /**
+     * Carga la página más reciente de mensajes de una sesión nueva.
+     * Primero muestra lo guardado en el dispositivo y después pide al servidor solo lo posterior al último
+     * mensaje guardado del otro usuario: los propios se guardan al confirmarse, aunque el otro usuario
+     * haya escrito antes algo que todavía no llegó.
+     * El resto del historial se pide bajo demanda con {@link #cargarMensajesAnteriores()}.
+     * Si el usuario cambia de chat mientras tanto, la carga sigue: la sesión queda en memoria.
+     *
+     * @param sesion Sesión de la conversación
+     */
+    private void cargarMensajesIniciales(Sesion sesion) {
+        String clave = sesion.clave;
+        mensajeCache.cargar(clave, null, TAMANO_PAGINA, (locales, e) -> {
+            // La página local llega en orden descendente: el primero es el más reciente
+            Date cursorLocal = null;
+            if (e == null && !locales.isEmpty()) {
+                Log.d(TAG, "Mostrando " + locales.size() + " mensajes guardados localmente");
+                sesion.chatEngine.agregarLocales(clave, locales);
+                registrarPaginaAnterior(sesion, locales);
+                cursorLocal = ultimoRecibido(locales);
+            } else if (e != null) {
+                Log.e(TAG, "Error al leer el historial local: " + e.getMessage(), e);
+            }
+            cargarMensajesDelServidor(sesion, cursorLocal);
+            mensajeCache.compactar(clave);
+        });
+    }
 
-        ParseQuery<Mensaje> mainQuery = ParseQuery.or(queries);
-        mainQuery.addAscendingOrder("createdAt");
-        mainQuery.include("remitente");
-        mainQuery.include("destinatario");
+    /**
+     * Obtiene el createdAt del mensaje más reciente del otro usuario en una página local.
+     *
+     * @param locales Página local, del más reciente al más antiguo
+     * @return La fecha, o null si la página solo tiene mensajes propios
+     */
+    @Nullable
+    private Date ultimoRecibido(List<Mensaje> locales) {
+        String currentUserId = ParseUser.getCurrentUser().getObjectId();
+        for (Mensaje mensaje : locales) {
+            ParseUser remitente = mensaje.getRemitente();
+            if (remitente != null && !currentUserId.equals(remitente.getObjectId())) {
+                return mensaje.getCreatedAt();
+            }
+        }
+        return null;
+    }
 
-        // Establecer un límite alto para asegurar que obtenemos todos los mensajes
-        mainQuery.setLimit(1000);
+    /**
+     * Pide al servidor la página más reciente, o solo los mensajes posteriores al cursor si ya se mostró
+     * el historial local. Si entre lo local y lo nuevo hay más de una página, se descarta lo local de la
+     * vista para no dejar un hueco en la conversación, salvo los mensajes propios que siguen en el outbox.
+     *
+     * @param sesion      Sesión de la conversación que se está cargando
+     * @param cursorLocal createdAt del mensaje local más reciente del otro usuario, o null si no hay ninguno
+     */
+    private void cargarMensajesDelServidor(Sesion sesion, @Nullable Date cursorLocal) {
+        String clave = sesion.clave;
+        ParseQuery<Mensaje> mainQuery = crearQueryConversacion(sesion.otroUsuario);
+        if (cursorLocal != null) {
+            // Se incluye el mismo milisegundo, como en el polling; el motor descarta el repetido
+            mainQuery.whereGreaterThanOrEqualTo("createdAt", cursorLocal);
+        }
+
+        // Pedir la página más reciente en orden descendente; el almacén la reordena
+        mainQuery.addDescendingOrder("createdAt");
+        mainQuery.setLimit(TAMANO_PAGINA);
 
-        // Cargar mensajes existentes
         mainQuery.findInBackground((mensajes, e) -> {
             if (e == null) {
-                // Ordenar los mensajes por createdAt en memoria
-                mensajes.sort(Comparator.comparing(ParseObject::getCreatedAt));
-
-                // Almacenar los IDs para evitar duplicados posteriormente
-                for (Mensaje mensaje : mensajes) {
-                    processedMessageIds.add(mensaje.getObjectId());
+                boolean hueco = cursorLocal != null && mensajes.size() >= TAMANO_PAGINA;
+                if (hueco) {
+                    Log.d(TAG, "Historial local desactualizado: se muestra solo la página del servidor");
+                    sesion.cursorAntiguo = null;
+                    sesion.chatEngine.reemplazar(clave, mensajes);
+                    // Los envíos propios pendientes no están en el servidor: se vuelven a mostrar
+                    sesion.chatEngine.agregarLocales(clave, outbox.getPendientes(clave));
+                } else {
+                    // El motor ordena e indexa los mensajes; los que ya llegaron por LiveQuery no se duplican
+                    sesion.chatEngine.agregar(clave, mensajes, null);
+                    if (cursorLocal != null) {
+                        // El servidor no tiene nada más entre lo guardado y lo que acaba de devolver
+                        sesion.chatEngine.sincronizadoHasta(clave, cursorLocal);
+                    }
                 }
-
-                mensajesLiveData.postValue(mensajes);
-
-                // Actualizar la marca de tiempo del último mensaje
-                if (!mensajes.isEmpty()) {
-                    lastMessageTimestamp = mensajes.get(mensajes.size() - 1).getCreatedAt();
-                    Log.d(TAG, "Último mensaje recibido: " + lastMessageTimestamp);
+                if (cursorLocal == null || hueco) {
+                    registrarPaginaAnterior(sesion, mensajes);
                 }
+                mensajeCache.guardar(clave, mensajes);
             } else {
                 Log.e(TAG, "Error al cargar mensajes iniciales: ", e);
-                mensajesLiveData.postValue(new ArrayList<>());
+                sesion.chatEngine.publicar(clave);
             }
         });
     }
 
     /**
-     * Realiza una consulta para buscar nuevos mensajes desde la última actualización.
-     * Este método se ejecuta periódicamente cuando el polling está activo.
+     * Carga la página de mensajes anterior al mensaje más antiguo mostrado.
+     * No hace nada si ya hay una carga en curso o si no quedan mensajes anteriores.
      */
-    void pollForNewMessages() {
-        if (currentChatUser == null) {
-            Log.d(TAG, "No hay usuario de chat activo para realizar polling");
+    public void cargarMensajesAnteriores() {
+        Sesion sesion = sesionActiva;
+        if (sesion == null || sesion.cursorAntiguo == null || !sesion.hayMensajesAnteriores) {
+            return;
+        }
+        if (!sesion.cargandoAnteriores.compareAndSet(false, true)) {
             return;
         }
 
-        Log.d(TAG, "Ejecutando polling para nuevos mensajes");
-
-        // Crear consultas para mensajes enviados y recibidos
-        ParseQuery<Mensaje> query = ParseQuery.getQuery(CLASS_NAME);
-        query.whereEqualTo("remitente", ParseUser.getCurrentUser());
-        query.whereEqualTo("destinatario", currentChatUser);
-
-        ParseQuery<Mensaje> queryReceived = ParseQuery.getQuery(CLASS_NAME);
-        queryReceived.whereEqualTo("remitente", currentChatUser);
-        queryReceived.whereEqualTo("destinatario", ParseUser.getCurrentUser());
+        String clave = sesion.clave;
+        Date antesDe = sesion.cursorAntiguo;
+        ParseQuery<Mensaje> query = crearQueryConversacion(sesion.otroUsuario);
+        query.whereLessThan("createdAt", antesDe);
+        query.addDescendingOrder("createdAt");
+        query.setLimit(TAMANO_PAGINA);
 
-        List<ParseQuery<Mensaje>> queries = new ArrayList<>();
-        queries.add(query);
-        queries.add(queryReceived);
+        Log.d(TAG, "Cargando mensajes anteriores a " + antesDe);
+        query.findInBackground((mensajes, e) -> {
+            sesion.cargandoAnteriores.set(false);
+            if (e == null) {
+                mensajeCache.guardar(clave, mensajes);
+                agregarPaginaAnterior(sesion, mensajes);
+            } else {
+                // Sin conexión: seguir leyendo lo que haya guardado en el dispositivo
+                Log.e(TAG, "Error al cargar mensajes anteriores: " + e.getMessage(), e);
+                mensajeCache.cargar(clave, antesDe, TAMANO_PAGINA, (locales, error) -> {
+                    if (error == null) {
+                        agregarPaginaAnterior(sesion, locales);
+                    }
+                });
+            }
+        });
+    }
 
-        ParseQuery<Mensaje> mainQuery = ParseQuery.or(queries);
+    /**
+     * Agrega una página de mensajes anteriores; el motor publica la lista si hubo cambios.
+     *
+     * @param sesion Sesión para la que se pidió la página
+     * @param pagina Mensajes de la página, del más reciente al más antiguo
+     */
+    private void agregarPaginaAnterior(Sesion sesion, List<Mensaje> pagina) {
+        registrarPaginaAnterior(sesion, pagina);
+        sesion.chatEngine.agregarAnteriores(sesion.clave, pagina);
+    }
 
-        // Si tenemos una marca de tiempo, solo buscar mensajes más recientes
-        if (lastMessageTimestamp != null) {
-            mainQuery.whereGreaterThan("createdAt", lastMessageTimestamp);
+    /**
+     * Actualiza el cursor de páginas anteriores con una página recibida en orden descendente.
+     *
+     * @param sesion Sesión de la página
+     * @param pagina Mensajes de la página, del más reciente al más antiguo
+     */
+    private void registrarPaginaAnterior(Sesion sesion, List<Mensaje> pagina) {
+        sesion.hayMensajesAnteriores = pagina.size() >= TAMANO_PAGINA;
+        if (!pagina.isEmpty()) {
+            Date masAntiguo = pagina.get(pagina.size() - 1).getCreatedAt();
+            if (sesion.cursorAntiguo == null || masAntiguo.before(sesion.cursorAntiguo)) {
+                sesion.cursorAntiguo = masAntiguo;
+            }
         }
+    }
 
-        mainQuery.addAscendingOrder("createdAt");
-        mainQuery.include("remitente");
-        mainQuery.include("destinatario");
-
-        // Buscar nuevos mensajes
-        mainQuery.findInBackground((nuevosMensajes, e) -> {
-            if (e == null && !nuevosMensajes.isEmpty()) {
-                Log.d(TAG, "Polling encontró " + nuevosMensajes.size() + " nuevos mensajes");
-
-                // Obtener la lista actual
-                List<Mensaje> currentList = mensajesLiveData.getValue() != null ?
-                        new ArrayList<>(mensajesLiveData.getValue()) : new ArrayList<>();
-
-                // Agregar solo mensajes que no existan ya
-                boolean hayNuevosMensajes = false;
-                for (Mensaje nuevoMensaje : nuevosMensajes) {
-                    String messageId = nuevoMensaje.getObjectId();
-
-                    // Verificar si ya hemos procesado este mensaje
-                    if (!processedMessageIds.contains(messageId)) {
-                        currentList.add(nuevoMensaje);
-                        processedMessageIds.add(messageId);
-                        hayNuevosMensajes = true;
-                        Log.d(TAG, "Nuevo mensaje agregado por polling: " + messageId);
-                    }
-                }
+    /**
+     * Busca mensajes de la conversación actual en su índice local, sin consultar al servidor.
+     *
+     * @param consulta  Texto buscado; la última palabra puede estar incompleta.
+     * @param resultado Recibe en el hilo principal los mensajes encontrados, del más reciente al más antiguo.
+     */
+    public void buscarMensajes(@NonNull String consulta, @NonNull Consumer<List<IndiceConversacion.Documento>> resultado) {
+        String clave = claveConversacion;
+        if (clave == null) {
+            resultado.accept(Collections.emptyList());
+            return;
+        }
+        MyApplication.getMensajeIndice().buscar(clave, consulta, resultado);
+    }
 
-                // Actualizar la lista solo si hay cambios
-                if (hayNuevosMensajes) {
-                    // Ordenar por fecha
-                    currentList.sort(Comparator.comparing(ParseObject::getCreatedAt));
-                    mensajesLiveData.postValue(currentList);
+    /**
+     * Carga el historial hasta un resultado de búsqueda, si todavía no está cargado, y la página anterior
+     * a él para mostrarlo con contexto. Los mensajes se agregan como páginas anteriores, así que la
+     * conversación sigue siendo continua hasta los últimos mensajes y se deja de recortar la ventana.
+     *
+     * @param resultado Mensaje encontrado en {@link #buscarMensajes(String, Consumer)}.
+     */
+    public void irAMensaje(@NonNull IndiceConversacion.Documento resultado) {
+        Sesion sesion = sesionActiva;
+        if (sesion == null) {
+            return;
+        }
+        sesion.chatEngine.setSiguiendoUltimos(false);
+        Date fecha = new Date(resultado.getFecha());
+        if (sesion.cursorAntiguo == null || !fecha.before(sesion.cursorAntiguo)) {
+            // Ya está en la lista
+            return;
+        }
+        if (sesion.cargandoAnteriores.compareAndSet(false, true)) {
+            cargarHasta(sesion, fecha);
+        }
+    }
 
-                    // Actualizar la marca de tiempo del último mensaje
-                    lastMessageTimestamp = currentList.get(currentList.size() - 1).getCreatedAt();
-                    Log.d(TAG, "Timestamp actualizado a: " + lastMessageTimestamp);
-                }
-            } else if (e != null) {
-                Log.e(TAG, "Error en polling: " + e.getMessage(), e);
+    /**
+     * Pide en orden descendente los mensajes entre el más antiguo cargado y la fecha buscada, de a
+     * {@link #TAMANO_SALTO}, y al llegar pide una página más para el contexto.
+     */
+    private void cargarHasta(Sesion sesion, Date fecha) {
+        String clave = sesion.clave;
+        ParseQuery<Mensaje> query = crearQueryConversacion(sesion.otroUsuario);
+        query.whereLessThan("createdAt", sesion.cursorAntiguo);
+        query.whereGreaterThanOrEqualTo("createdAt", fecha);
+        query.addDescendingOrder("createdAt");
+        query.setLimit(TAMANO_SALTO);
+
+        Log.d(TAG, "Cargando el historial hasta " + fecha);
+        query.findInBackground((mensajes, e) -> {
+            if (e != null) {
+                sesion.cargandoAnteriores.set(false);
+                Log.e(TAG, "Error al cargar el historial hasta el resultado: " + e.getMessage(), e);
+                return;
+            }
+            mensajeCache.guardar(clave, mensajes);
+            if (!mensajes.isEmpty()) {
+                sesion.cursorAntiguo = mensajes.get(mensajes.size() - 1).getCreatedAt();
+            }
+            sesion.hayMensajesAnteriores = true;
+            sesion.chatEngine.agregarAnteriores(clave, mensajes);
+            if (mensajes.size() >= TAMANO_SALTO) {
+                cargarHasta(sesion, fecha);
+                return;
+            }
+            sesion.cargandoAnteriores.set(false);
+            if (sesion == sesionActiva) {
+                cargarMensajesAnteriores();
             }
         });
     }
 
     /**
-     * Inicia el mecanismo de polling para buscar nuevos mensajes periódicamente.
-     * Utiliza un flag atómico para evitar iniciar múltiples hilos de polling.
+     * Indica si la interfaz muestra los últimos mensajes. Mientras sea así, el motor conserva en
+     * memoria solo una ventana acotada de la conversación.
+     *
+     * @param siguiendo true si se ven los últimos mensajes
      */
-    public void startPolling() {
-        if (isPolling.compareAndSet(false, true)) {
-            Log.d(TAG, "Iniciando polling de mensajes");
-            pollingHandler.post(pollingRunnable);
-        } else {
-            Log.d(TAG, "El polling ya está activo");
+    public void setSiguiendoUltimos(boolean siguiendo) {
+        Sesion sesion = sesionActiva;
+        if (sesion != null) {
+            sesion.chatEngine.setSiguiendoUltimos(siguiendo);
         }
     }
 
     /**
-     * Detiene el mecanismo de polling.
+     * Indica si quedan mensajes anteriores por cargar.
+     *
+     * @return true si el servidor puede tener mensajes más antiguos que los mostrados
      */
-    public void stopPolling() {
-        if (isPolling.compareAndSet(true, false)) {
-            Log.d(TAG, "Deteniendo polling de mensajes");
-            pollingHandler.removeCallbacks(pollingRunnable);
-        }
+    public boolean hayMensajesAnteriores() {
+        Sesion sesion = sesionActiva;
+        return sesion != null && sesion.hayMensajesAnteriores;
     }
 
     /**
-     * Configura las suscripciones LiveQuery para recibir actualizaciones en tiempo real.
+     * Crea la consulta de los mensajes de la conversación entre el usuario actual y otro usuario.
+     * Usa una única igualdad sobre {@link Mensaje#KEY_CONVERSACION_ID}, que combinada con el rango
+     * de createdAt de cada llamada se resuelve con un solo índice; hasta que termine la migración
+     * de mensajes antiguos se usa la consulta por remitente y destinatario.
+     * <p>
+     * No se incluyen los usuarios: el remitente y el destinatario llegan como punteros y, si hace falta
+     * su perfil, se resuelve con {@link com.example.moviltpi.core.utils.UsuarioCache}, que se llena una
+     * vez por conversación desde la bandeja. Así cada polling descarga solo los campos del mensaje.
      *
      * @param otroUsuario Usuario con el que se está chateando
-     * @throws RuntimeException Si hay un problema al configurar la suscripción
+     * @return Consulta de la conversación
      */
-    private void setupLiveQuery(@NonNull ParseUser otroUsuario) {
-        // Crear consultas para mensajes enviados y recibidos
+    private ParseQuery<Mensaje> crearQueryConversacion(@NonNull ParseUser otroUsuario) {
+        if (MensajeMigracion.isCompletada()) {
+            ParseQuery<Mensaje> query = ParseQuery.getQuery(CLASS_NAME);
+            query.whereEqualTo(Mensaje.KEY_CONVERSACION_ID,
+                    Conversacion.calcularClave(ParseUser.getCurrentUser().getObjectId(), otroUsuario.getObjectId()));
+            return query;
+        }
+
         ParseQuery<Mensaje> querySent = ParseQuery.getQuery(CLASS_NAME);
         querySent.whereEqualTo("remitente", ParseUser.getCurrentUser());
         querySent.whereEqualTo("destinatario", otroUsuario);
@@ -335,143 +738,349 @@ public class ChatProvider {
         queries.add(querySent);
         queries.add(queryReceived);
 
-        ParseQuery<Mensaje> mainQuery = ParseQuery.or(queries);
-
-        // Guardar la consulta actual para poder cancelar la suscripción más tarde
-        currentQuery = mainQuery;
+        return ParseQuery.or(queries);
+    }
 
-        // Incluir los objetos de usuario para evitar tener que cargarlos después
-        mainQuery.include("remitente");
-        mainQuery.include("destinatario");
+    /**
+     * Realiza una consulta para buscar nuevos mensajes de la sesión activa desde la última actualización.
+     * Este método se ejecuta periódicamente cuando el polling está activo y una vez al reconectar LiveQuery.
+     */
+    void pollForNewMessages() {
+        Sesion sesion = sesionActiva;
+        if (sesion == null) {
+            Log.d(TAG, "No hay usuario de chat activo para realizar polling");
+            return;
+        }
 
-        // Suscribirse a la consulta para actualizaciones en tiempo real
-        currentSubscription = liveQueryClient.subscribe(mainQuery);
+        Log.d(TAG, "Ejecutando polling para nuevos mensajes");
 
-        if (currentSubscription == null) {
-            throw new RuntimeException("No se pudo crear la suscripción LiveQuery");
+        Date cursor = sesion.chatEngine.getCursor();
+        if (cursor != null) {
+            buscarMensajesDesde(sesion, cursor);
+            return;
         }
 
-        // Configurar el manejador para nuevos mensajes
-        currentSubscription.handleEvent(SubscriptionHandling.Event.CREATE, (query, mensaje) -> {
-            Log.d(TAG, "LiveQuery: Nuevo mensaje recibido: " + mensaje.getTexto());
-
-            // Actualizar la marca de tiempo del último mensaje si es más reciente
-            if (mensaje.getCreatedAt() != null &&
-                    (lastMessageTimestamp == null || mensaje.getCreatedAt().after(lastMessageTimestamp))) {
-                lastMessageTimestamp = mensaje.getCreatedAt();
-                Log.d(TAG, "Timestamp actualizado por LiveQuery a: " + lastMessageTimestamp);
+        // Todavía no se sincronizó nada (por ejemplo, falló la carga inicial): pedir la página más
+        // reciente, no la más antigua; el motor la reordena
+        ParseQuery<Mensaje> mainQuery = crearQueryConversacion(sesion.otroUsuario);
+        mainQuery.addDescendingOrder("createdAt");
+        mainQuery.setLimit(TAMANO_PAGINA);
+        mainQuery.findInBackground((nuevosMensajes, e) -> {
+            if (e == null && !nuevosMensajes.isEmpty()) {
+                Log.d(TAG, "Polling recibió " + nuevosMensajes.size() + " mensajes");
+                medirLlegada(nuevosMensajes, LatenciaChat.Ruta.POLLING);
+                agregarMensajes(sesion, nuevosMensajes, "polling");
+            } else if (e != null) {
+                Log.e(TAG, "Error en polling: " + e.getMessage(), e);
             }
+        });
+    }
 
-            // Verificar si ya hemos procesado este mensaje
-            String messageId = mensaje.getObjectId();
-            if (!processedMessageIds.contains(messageId)) {
-                // Obtener la lista actual de mensajes
-                List<Mensaje> currentList = mensajesLiveData.getValue() != null ?
-                        new ArrayList<>(mensajesLiveData.getValue()) : new ArrayList<>();
+    /**
+     * Busca los mensajes de una sesión desde un cursor, en páginas de {@link #TAMANO_PAGINA_POLLING}.
+     * Mientras una página vuelve llena se pide la siguiente desde su último mensaje: tras un corte largo
+     * pueden faltar más mensajes de los que entran en una sola consulta.
+     *
+     * @param sesion Sesión cuyos mensajes se buscan
+     * @param cursor createdAt desde el que se busca, incluido
+     */
+    private void buscarMensajesDesde(Sesion sesion, Date cursor) {
+        ParseQuery<Mensaje> mainQuery = crearQueryConversacion(sesion.otroUsuario);
 
-                // Agregar el nuevo mensaje
-                currentList.add(mensaje);
-                processedMessageIds.add(messageId);
+        // Se incluye el mismo milisegundo: otro mensaje con el mismo createdAt que el cursor pudo
+        // perderse, y el motor descarta el repetido
+        mainQuery.whereGreaterThanOrEqualTo("createdAt", cursor);
+        mainQuery.addAscendingOrder("createdAt");
+        mainQuery.setLimit(TAMANO_PAGINA_POLLING);
 
-                // Ordenar y actualizar
-                currentList.sort(Comparator.comparing(ParseObject::getCreatedAt));
-                mensajesLiveData.postValue(currentList);
+        mainQuery.findInBackground((nuevosMensajes, e) -> {
+            if (e == null && !nuevosMensajes.isEmpty()) {
+                Log.d(TAG, "Polling recibió " + nuevosMensajes.size() + " mensajes");
+                medirLlegada(nuevosMensajes, LatenciaChat.Ruta.POLLING);
+                agregarMensajes(sesion, nuevosMensajes, "polling");
 
-                Log.d(TAG, "Mensaje agregado por LiveQuery: " + messageId);
-            } else {
-                Log.d(TAG, "Mensaje ya procesado, ignorando: " + messageId);
+                Date ultimo = nuevosMensajes.get(nuevosMensajes.size() - 1).getCreatedAt();
+                if (nuevosMensajes.size() >= TAMANO_PAGINA_POLLING && ultimo != null && ultimo.after(cursor)) {
+                    buscarMensajesDesde(sesion, ultimo);
+                }
+            } else if (e != null) {
+                Log.e(TAG, "Error en polling: " + e.getMessage(), e);
             }
         });
+    }
 
-        // Manejar eventos de actualización de mensajes
-        currentSubscription.handleEvent(SubscriptionHandling.Event.UPDATE, (query, mensaje) -> {
-            Log.d(TAG, "LiveQuery: Mensaje actualizado: " + mensaje.getTexto());
-
-            List<Mensaje> currentList = mensajesLiveData.getValue() != null ?
-                    new ArrayList<>(mensajesLiveData.getValue()) : new ArrayList<>();
-
-            // Buscar y reemplazar el mensaje actualizado
-            boolean encontrado = false;
-            for (int i = 0; i < currentList.size(); i++) {
-                if (currentList.get(i).getObjectId().equals(mensaje.getObjectId())) {
-                    currentList.set(i, mensaje);
-                    encontrado = true;
-                    Log.d(TAG, "Mensaje actualizado en la posición " + i);
-                    break;
-                }
-            }
+    /**
+     * Encola en el motor de una sesión los mensajes recibidos; el motor descarta los repetidos y avanza
+     * el cursor de sincronización. El cursor solo se mueve con el createdAt asignado por el servidor a lo
+     * que devolvieron LiveQuery o el polling, nunca con el reloj del dispositivo ni con envíos propios.
+     * Los mensajes que resultan nuevos se guardan en el historial local, también los que llegan tarde y
+     * quedan antes de la ventana en memoria, que aparecen al pedir las páginas anteriores.
+     *
+     * @param sesion         Sesión a la que pertenecen los mensajes
+     * @param nuevosMensajes Mensajes recibidos desde el servidor
+     * @param origen         Descripción del origen para los logs
+     */
+    private void agregarMensajes(Sesion sesion, List<Mensaje> nuevosMensajes, String origen) {
+        String clave = sesion.clave;
+        sesion.chatEngine.agregar(clave, nuevosMensajes, agregados -> {
+            Log.d(TAG, agregados.size() + " mensajes nuevos recibidos por " + origen);
+            mensajeCache.guardar(clave, agregados);
+        });
+    }
 
-            // Si no se encontró, podría ser un mensaje nuevo
-            if (!encontrado && !processedMessageIds.contains(mensaje.getObjectId())) {
-                currentList.add(mensaje);
-                processedMessageIds.add(mensaje.getObjectId());
-                currentList.sort(Comparator.comparing(ParseObject::getCreatedAt));
-                Log.d(TAG, "Mensaje no encontrado para actualizar, agregado como nuevo");
+    /**
+     * Registra en las métricas de latencia la llegada de mensajes; solo cuenta la primera llegada de cada uno.
+     *
+     * @param mensajes Mensajes recibidos
+     * @param ruta     Ruta por la que llegaron
+     */
+    private void medirLlegada(List<Mensaje> mensajes, LatenciaChat.Ruta ruta) {
+        for (Mensaje mensaje : mensajes) {
+            String idLocal = mensaje.getIdLocal();
+            if (idLocal != null) {
+                Date enviadoEn = mensaje.getEnviadoEn();
+                latencia.recibido(idLocal, enviadoEn != null ? enviadoEn.getTime() : null, ruta);
             }
+        }
+    }
 
-            // Actualizar la lista si hubo cambios
-            if (encontrado || !processedMessageIds.contains(mensaje.getObjectId())) {
-                mensajesLiveData.postValue(currentList);
+    /**
+     * Reanuda la sincronización cuando la interfaz vuelve a primer plano.
+     * Si LiveQuery está conectado no se inicia ningún polling; si no, se hace una consulta
+     * inmediata y se reanuda el polling de respaldo.
+     */
+    public void startPolling() {
+        syncPausada = false;
+        if (claveConversacion != null) {
+            mensajeRouter.setVisible(claveConversacion);
+        }
+        // Los mensajes recibidos mientras el chat estaba en segundo plano ya están a la vista
+        List<Mensaje> mostrados = mensajesLiveData.getValue();
+        if (mostrados != null) {
+            registrarLectura(mostrados);
+        }
+        if (!liveQueryActivo && currentChatUser != null) {
+            pollingIntervalActual = POLLING_INTERVAL;
+            if (isPolling.compareAndSet(false, true)) {
+                Log.d(TAG, "Iniciando polling de respaldo");
+                pollingHandler.post(pollingRunnable);
             }
-        });
+        }
+    }
 
-        // Manejar eventos de eliminación de mensajes
-        currentSubscription.handleEvent(SubscriptionHandling.Event.DELETE, (query, mensaje) -> {
-            Log.d(TAG, "LiveQuery: Mensaje eliminado: " + mensaje.getObjectId());
+    /**
+     * Pausa la sincronización por polling (por ejemplo, cuando el fragmento pasa a segundo plano).
+     */
+    public void stopPolling() {
+        syncPausada = true;
+        detenerPollingProgramado();
+        // Fuera de la pantalla, los mensajes de esta conversación vuelven a contar como no leídos
+        mensajeRouter.setVisible(null);
+        // Al salir del chat no se espera al intervalo de escritura de las marcas de lectura
+        marcadorLectura.escribirAhora();
+        for (Map.Entry<String, HistogramaLatencia.Resumen> metrica : latencia.getResumenes().entrySet()) {
+            Log.d(TAG, "Latencia " + metrica.getKey() + ": " + metrica.getValue());
+        }
+    }
 
-            // Verificar que tengamos un ID válido
-            String messageId = mensaje.getObjectId();
-            if (messageId == null || messageId.isEmpty()) {
-                Log.w(TAG, "ID de mensaje inválido para eliminación");
-                return;
+    /**
+     * Registra como leídos los mensajes del otro usuario mostrados en pantalla que todavía no se habían
+     * registrado. La marca se escribe más tarde, agrupada con las demás; mientras la interfaz está pausada
+     * no se registra.
+     *
+     * @param mensajes Lista mostrada, ordenada por fecha
+     */
+    public void registrarLectura(@NonNull List<Mensaje> mensajes) {
+        String clave = claveConversacion;
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (syncPausada || clave == null || currentUser == null) {
+            return;
+        }
+        Date registradoHasta = marcadorLectura.getRegistradoHasta(clave);
+        List<Mensaje> recibidos = new ArrayList<>();
+        for (int i = mensajes.size() - 1; i >= 0; i--) {
+            Mensaje mensaje = mensajes.get(i);
+            Date fecha = mensaje.getCreatedAt();
+            if (fecha == null) {
+                continue;
+            }
+            if (registradoHasta != null && fecha.before(registradoHasta)) {
+                break;
             }
+            ParseUser remitente = mensaje.getRemitente();
+            if (remitente != null && !currentUser.getObjectId().equals(remitente.getObjectId())) {
+                recibidos.add(mensaje);
+            }
+        }
+        if (!recibidos.isEmpty()) {
+            marcadorLectura.registrar(clave, recibidos);
+        }
+    }
 
-            List<Mensaje> currentList = mensajesLiveData.getValue() != null ?
-                    new ArrayList<>(mensajesLiveData.getValue()) : new ArrayList<>();
+    /**
+     * Programa el polling de respaldo con el intervalo inicial, sin consultar de inmediato.
+     */
+    private void programarPolling() {
+        pollingIntervalActual = POLLING_INTERVAL;
+        if (isPolling.compareAndSet(false, true)) {
+            Log.d(TAG, "Programando polling de respaldo");
+            pollingHandler.postDelayed(pollingRunnable, pollingIntervalActual);
+        }
+    }
 
-            // Eliminar el mensaje de la lista
-            boolean removido = currentList.removeIf(m -> m.getObjectId().equals(messageId));
+    /**
+     * Cancela cualquier ejecución pendiente del polling.
+     */
+    private void detenerPollingProgramado() {
+        if (isPolling.compareAndSet(true, false)) {
+            Log.d(TAG, "Deteniendo polling de mensajes");
+            pollingHandler.removeCallbacks(pollingRunnable);
+        }
+    }
 
-            // Actualizar solo si se eliminó algún mensaje
-            if (removido) {
-                processedMessageIds.remove(messageId);
-                mensajesLiveData.postValue(currentList);
-                Log.d(TAG, "Mensaje eliminado correctamente: " + messageId);
-            }
-        });
+    /**
+     * Transición al estado conectado: apaga el polling y recupera de inmediato los mensajes
+     * que pudieron perderse mientras LiveQuery estuvo caído.
+     * Debe ejecutarse en el hilo principal.
+     */
+    private void onLiveQueryConectado() {
+        boolean estabaDesconectado = !liveQueryActivo;
+        liveQueryActivo = true;
+        detenerPollingProgramado();
+        Sesion sesion = sesionActiva;
+        if (estabaDesconectado && sesion != null) {
+            Log.d(TAG, "LiveQuery conectado: recuperando mensajes perdidos");
+            sesion.desactualizada = false;
+            pollForNewMessages();
+        }
+    }
 
-        Log.d(TAG, "LiveQuery configurado correctamente para el usuario: " + otroUsuario.getUsername());
+    /**
+     * Transición al estado desconectado: activa el polling de respaldo con backoff exponencial.
+     * Debe ejecutarse en el hilo principal.
+     */
+    private void onLiveQueryDesconectado() {
+        if (!liveQueryActivo && isPolling.get()) {
+            return;
+        }
+        liveQueryActivo = false;
+        Log.d(TAG, "LiveQuery desconectado: activando polling de respaldo");
+        if (!syncPausada && currentChatUser != null) {
+            programarPolling();
+        }
+    }
+
+    /**
+     * Registra la sesión en el router de mensajes para recibir actualizaciones en tiempo real.
+     * El registro se mantiene mientras la sesión esté en memoria, aunque quede inactiva.
+     *
+     * @param sesion Sesión nueva
+     * @throws RuntimeException Si hay un problema al configurar la suscripción
+     */
+    private void setupLiveQuery(Sesion sesion) {
+        if (liveQueryManager == null) {
+            throw new IllegalStateException("LiveQuery no está configurado");
+        }
+
+        // No se abre una suscripción por chat: el router de la aplicación ya recibe todos los mensajes
+        // del usuario y reenvía a este oyente los de la conversación
+        mensajeRouter.iniciar();
+        mensajeRouter.abrir(sesion.clave, sesion.oyente);
+
+        Log.d(TAG, "LiveQuery configurado correctamente para el usuario: " + sesion.otroUsuario.getObjectId());
+    }
+
+    /**
+     * Procesa un mensaje nuevo recibido por LiveQuery.
+     *
+     * @param sesion  Sesión a la que el router entregó el mensaje
+     * @param mensaje Mensaje creado
+     */
+    private void procesarMensajeCreado(Sesion sesion, Mensaje mensaje) {
+        Log.d(TAG, "LiveQuery: Nuevo mensaje recibido: " + mensaje.getTexto());
+        medirLlegada(Collections.singletonList(mensaje), LatenciaChat.Ruta.LIVEQUERY);
+
+        if (mensaje.getClientId() != null) {
+            // Puede ser el eco de un mensaje propio pendiente: actualizar reemplaza el pendiente por la
+            // versión del servidor, o lo agrega si es un mensaje nuevo
+            String clave = sesion.clave;
+            sesion.chatEngine.actualizar(clave, mensaje,
+                    () -> mensajeCache.guardar(clave, Collections.singletonList(mensaje)));
+            return;
+        }
+
+        // Agregar el mensaje si no fue procesado y avanzar el cursor con su createdAt
+        agregarMensajes(sesion, Collections.singletonList(mensaje), "LiveQuery");
+    }
+
+    /**
+     * Procesa un mensaje actualizado recibido por LiveQuery.
+     *
+     * @param sesion  Sesión a la que el router entregó el mensaje
+     * @param mensaje Mensaje actualizado
+     */
+    private void procesarMensajeActualizado(Sesion sesion, Mensaje mensaje) {
+        Log.d(TAG, "LiveQuery: Mensaje actualizado: " + mensaje.getTexto());
+
+        // Reemplaza el mensaje si existe o lo agrega si todavía no había llegado
+        String clave = sesion.clave;
+        sesion.chatEngine.actualizar(clave, mensaje,
+                () -> mensajeCache.guardar(clave, Collections.singletonList(mensaje)));
     }
 
     /**
-     * Cancela la suscripción actual a LiveQuery si existe.
-     * Este método debe llamarse al cambiar de chat o al cerrar la aplicación.
+     * Procesa un mensaje eliminado recibido por LiveQuery.
+     *
+     * @param sesion  Sesión a la que el router entregó el mensaje
+     * @param mensaje Mensaje eliminado
+     */
+    private void procesarMensajeEliminado(Sesion sesion, Mensaje mensaje) {
+        Log.d(TAG, "LiveQuery: Mensaje eliminado: " + mensaje.getObjectId());
+
+        // Verificar que tengamos un ID válido
+        String messageId = mensaje.getObjectId();
+        if (messageId == null || messageId.isEmpty()) {
+            Log.w(TAG, "ID de mensaje inválido para eliminación");
+            return;
+        }
+
+        // Quitarlo del historial local y de la lista; el motor publica solo si estaba cargado
+        mensajeCache.eliminar(sesion.clave, mensaje);
+        sesion.chatEngine.eliminar(sesion.clave, mensaje.getIdLocal());
+    }
+
+    /**
+     * Cierra todas las sesiones en memoria: dejan de recibir eventos y se detienen sus motores.
+     * Este método debe llamarse al cerrar la aplicación o la sesión del usuario.
      */
     public void unsubscribeFromLiveQuery() {
-        if (currentSubscription != null && currentQuery != null) {
-            try {
-                // La forma correcta de cancelar una suscripción en Parse LiveQuery
-                liveQueryClient.unsubscribe(currentQuery);
-                currentSubscription = null;
-                currentQuery = null;
-                Log.d(TAG, "Suscripción a LiveQuery cancelada");
-            } catch (Exception e) {
-                Log.e(TAG, "Error al cancelar suscripción a LiveQuery: " + e.getMessage(), e);
-            }
+        for (Sesion sesion : sesiones.values()) {
+            cerrarSesion(sesion);
         }
+        if (!sesiones.isEmpty()) {
+            // La suscripción de la aplicación sigue abierta; solo se dejan de recibir estas conversaciones
+            Log.d(TAG, sesiones.size() + " conversaciones quitadas del router de mensajes");
+        }
+        sesiones.clear();
+        sesionActiva = null;
+        liveQueryActivo = false;
+        mensajeRouter.setVisible(null);
     }
 
     /**
-     * Limpia todos los recursos utilizados por este proveedor.
-     * Debe llamarse en el método onDestroy de la actividad o fragmento.
+     * Limpia todos los recursos utilizados por este proveedor y detiene los hilos de los motores.
+     * Debe llamarse una sola vez, cuando se destruye el ViewModel dueño; después no se puede reutilizar.
      */
     public void cleanup() {
         Log.d(TAG, "Limpiando recursos de ChatProvider");
         unsubscribeFromLiveQuery();
-        stopPolling();
+        detenerPollingProgramado();
+        if (liveQueryManager != null) {
+            liveQueryManager.getEstado().removeObserver(estadoObserver);
+        }
+        outbox.removeListener(outboxListener);
         currentChatUser = null;
-        lastMessageTimestamp = null;
-        processedMessageIds.clear();
+        claveConversacion = null;
     }
 
     /**
@@ -485,11 +1094,12 @@ public class ChatProvider {
     }
 
     /**
-     * Verifica si el polling está activo.
+     * Verifica si el polling de respaldo está activo.
+     * Con LiveQuery conectado el polling permanece apagado.
      *
      * @return true si el polling está ejecutándose, false en caso contrario
      */
     public boolean isPollingActive() {
         return isPolling.get();
     }
-}
\ No newline at end of file
+}
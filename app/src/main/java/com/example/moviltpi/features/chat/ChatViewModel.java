@@ -1,29 +1,95 @@
 package com.example.moviltpi.features.chat;
 
+import android.app.Application;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 
+import com.example.moviltpi.R;
 import com.example.moviltpi.core.models.Mensaje;
 import com.parse.ParseUser;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * ViewModel para el chat. Maneja la lógica de la interfaz de chat, incluyendo la carga y envío de mensajes.
+ * Convierte cada lista de mensajes en filas listas para mostrar en un hilo propio, fuera del hilo principal.
  */
-public class ChatViewModel extends ViewModel {
+public class ChatViewModel extends AndroidViewModel {
     private final ChatProvider chatProvider = new ChatProvider();
 
+    /** Hilo único donde se construyen las filas; el mapper no es seguro entre hilos */
+    private final ExecutorService filasExecutor = Executors.newSingleThreadExecutor();
+    private final MensajeFilaMapper filaMapper;
+    private final MediatorLiveData<List<MensajeFila>> filas = new MediatorLiveData<>();
+
+    /** Lista de mensajes de la que se obtuvieron las últimas filas publicadas */
+    private volatile List<Mensaje> mensajesMostrados = Collections.emptyList();
+
+    /** LiveData de mensajes del que se derivan las filas */
+    private LiveData<List<Mensaje>> fuenteMensajes;
+
+    /** objectId del usuario cuya conversación se está mostrando */
+    private String usuarioMostrado;
+
+    public ChatViewModel(@NonNull Application application) {
+        super(application);
+        filaMapper = new MensajeFilaMapper(new MensajeFilaMapper.Textos(
+                application.getString(R.string.mensaje_enviando),
+                application.getString(R.string.mensaje_no_enviado),
+                application.getString(R.string.chat_hoy),
+                application.getString(R.string.chat_ayer)));
+    }
+
+    /**
+     * Obtiene las filas de la conversación abierta con {@link #abrirConversacion(ParseUser)}. Es siempre el
+     * mismo LiveData, así que la vista lo observa una sola vez aunque cambie la conversación.
+     *
+     * @return Un LiveData con las filas a mostrar, ordenadas por fecha.
+     */
+    public LiveData<List<MensajeFila>> getFilas() {
+        return filas;
+    }
+
     /**
-     * Obtiene los mensajes entre el usuario actual y otro usuario específico.
+     * Abre la conversación entre el usuario actual y otro usuario. Los mensajes se cargan una sola vez por
+     * conversación: volver a abrir la que ya se muestra, por ejemplo al recrear la vista, no hace nada.
      *
      * @param otroUsuario El ParseUser con el que se está chateando.
-     * @return Un LiveData que contiene la lista de mensajes.
      */
-    public LiveData<List<Mensaje>> getMensajes(ParseUser otroUsuario) {
-        return chatProvider.cargarMensajes(otroUsuario);
+    public void abrirConversacion(@NonNull ParseUser otroUsuario) {
+        if (otroUsuario.getObjectId().equals(usuarioMostrado)) {
+            return;
+        }
+        usuarioMostrado = otroUsuario.getObjectId();
+        LiveData<List<Mensaje>> mensajes = chatProvider.cargarMensajes(otroUsuario);
+        if (mensajes != fuenteMensajes) {
+            if (fuenteMensajes != null) {
+                filas.removeSource(fuenteMensajes);
+            }
+            fuenteMensajes = mensajes;
+            filas.addSource(mensajes, this::construirFilas);
+        }
+    }
+
+    /**
+     * Construye las filas en segundo plano y las publica; si llegan varias listas seguidas se muestra la última.
+     */
+    private void construirFilas(List<Mensaje> mensajes) {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        String currentUserId = currentUser != null ? currentUser.getObjectId() : null;
+        filasExecutor.execute(() -> {
+            List<MensajeFila> nuevas = filaMapper.construir(mensajes, currentUserId);
+            mensajesMostrados = mensajes;
+            filas.postValue(nuevas);
+        });
     }
 
     /**
@@ -43,6 +109,50 @@ public class ChatViewModel extends ViewModel {
         chatProvider.enviarMensaje(texto, remitente, destinatario);
     }
 
+    /**
+     * Carga la página de mensajes anterior a la más antigua mostrada.
+     */
+    public void cargarMensajesAnteriores() {
+        chatProvider.cargarMensajesAnteriores();
+    }
+
+    /**
+     * Busca mensajes en la conversación actual.
+     *
+     * @param consulta Texto buscado.
+     * @return Un LiveData con los mensajes encontrados, del más reciente al más antiguo.
+     */
+    public LiveData<List<IndiceConversacion.Documento>> buscarMensajes(String consulta) {
+        MutableLiveData<List<IndiceConversacion.Documento>> resultado = new MutableLiveData<>();
+        chatProvider.buscarMensajes(consulta, resultado::setValue);
+        return resultado;
+    }
+
+    /**
+     * Carga el historial hasta un resultado de búsqueda para poder mostrarlo.
+     *
+     * @param resultado Mensaje encontrado.
+     */
+    public void irAMensaje(IndiceConversacion.Documento resultado) {
+        chatProvider.irAMensaje(resultado);
+    }
+
+    /**
+     * Informa si la lista muestra los últimos mensajes, para acotar los que se guardan en memoria.
+     *
+     * @param siguiendo true si el último mensaje está a la vista
+     */
+    public void setSiguiendoUltimos(boolean siguiendo) {
+        chatProvider.setSiguiendoUltimos(siguiendo);
+    }
+
+    /**
+     * Registra como leídos los mensajes que se están mostrando.
+     */
+    public void registrarLectura() {
+        chatProvider.registrarLectura(mensajesMostrados);
+    }
+
     /**
      * Fuerza una actualización manual de los mensajes.
      */
@@ -71,5 +181,6 @@ public class ChatViewModel extends ViewModel {
     protected void onCleared() {
         super.onCleared();
         chatProvider.cleanup();
+        filasExecutor.shutdown();
     }
 }
\ No newline at end of file
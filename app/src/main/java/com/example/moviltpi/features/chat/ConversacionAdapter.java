@@ -0,0 +1,146 @@
+package com.example.moviltpi.features.chat;
+
+import android.annotation.SuppressLint;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.moviltpi.R;
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.utils.AvatarCache;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Adaptador de la bandeja de entrada: muestra cada conversación con el otro participante,
+ * el último mensaje, su hora y la cantidad de mensajes no leídos.
+ */
+public class ConversacionAdapter extends RecyclerView.Adapter<ConversacionAdapter.ViewHolder> {
+
+    /**
+     * Interfaz para manejar clics en una conversación.
+     */
+    public interface OnConversacionClickListener {
+        /**
+         * @param otroUsuario El otro participante de la conversación elegida.
+         */
+        void onConversacionClick(ParseUser otroUsuario);
+    }
+
+    private final List<Conversacion> conversaciones = new ArrayList<>();
+    private final String currentUserId;
+    private final OnConversacionClickListener listener;
+
+    /**
+     * @param currentUserId ID del usuario actual.
+     * @param listener      Listener para los clics en conversaciones.
+     */
+    public ConversacionAdapter(String currentUserId, OnConversacionClickListener listener) {
+        this.currentUserId = currentUserId;
+        this.listener = listener;
+    }
+
+    /**
+     * Reemplaza las conversaciones mostradas. Si la lista nueva solo agrega una página al final,
+     * se notifican únicamente las filas insertadas.
+     *
+     * @param nuevas Conversaciones ordenadas por último mensaje descendente.
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    public void setConversaciones(List<Conversacion> nuevas) {
+        int anteriores = conversaciones.size();
+        boolean esPaginaNueva = nuevas.size() > anteriores
+                && anteriores > 0
+                && nuevas.subList(0, anteriores).equals(conversaciones);
+        conversaciones.clear();
+        conversaciones.addAll(nuevas);
+        if (esPaginaNueva) {
+            notifyItemRangeInserted(anteriores, nuevas.size() - anteriores);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_conversacion, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.bind(conversaciones.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return conversaciones.size();
+    }
+
+    /**
+     * ViewHolder de una conversación.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder {
+        private final ImageView ivAvatar;
+        private final TextView tvUsername;
+        private final TextView tvUltimoMensaje;
+        private final TextView tvFecha;
+        private final TextView tvNoLeidos;
+
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            ivAvatar = itemView.findViewById(R.id.ivAvatar);
+            tvUsername = itemView.findViewById(R.id.tvUsername);
+            tvUltimoMensaje = itemView.findViewById(R.id.tvUltimoMensaje);
+            tvFecha = itemView.findViewById(R.id.tvFecha);
+            tvNoLeidos = itemView.findViewById(R.id.tvNoLeidos);
+        }
+
+        void bind(Conversacion conversacion) {
+            ParseUser otroUsuario = conversacion.getOtroParticipante(currentUserId);
+            String username = otroUsuario != null ? otroUsuario.getUsername() : null;
+            tvUsername.setText(username != null ? username : "Usuario sin nombre");
+
+            // Prefijo "Tú:" cuando el último mensaje lo envió el usuario actual
+            String ultimo = conversacion.getUltimoMensaje();
+            boolean propio = currentUserId.equals(conversacion.getUltimoRemitenteId());
+            tvUltimoMensaje.setText(ultimo == null ? "" : propio ? "Tú: " + ultimo : ultimo);
+
+            Date fecha = conversacion.getUltimoMensajeAt();
+            tvFecha.setText(fecha != null
+                    ? DateUtils.getRelativeTimeSpanString(fecha.getTime(), System.currentTimeMillis(),
+                    DateUtils.MINUTE_IN_MILLIS, DateUtils.FORMAT_ABBREV_RELATIVE)
+                    : "");
+
+            int noLeidos = conversacion.getNoLeidos(currentUserId);
+            if (noLeidos > 0) {
+                tvNoLeidos.setText(noLeidos > 99 ? "99+" : String.valueOf(noLeidos));
+                tvNoLeidos.setVisibility(View.VISIBLE);
+            } else {
+                tvNoLeidos.setVisibility(View.GONE);
+            }
+
+            if (otroUsuario != null) {
+                AvatarCache avatarCache = AvatarCache.getInstance();
+                avatarCache.registrar(otroUsuario);
+                avatarCache.cargar(ivAvatar, otroUsuario.getObjectId(), AvatarCache.Tamano.CHICO);
+            }
+
+            itemView.setOnClickListener(v -> {
+                if (listener != null && otroUsuario != null) {
+                    listener.onConversacionClick(otroUsuario);
+                }
+            });
+        }
+    }
+}
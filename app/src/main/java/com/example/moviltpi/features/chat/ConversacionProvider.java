@@ -0,0 +1,258 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.GetCallback;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Proveedor de la bandeja de entrada de chats.
+ * Mantiene un objeto {@link Conversacion} por pareja de usuarios, actualizado en cada envío,
+ * y carga la lista de conversaciones del usuario actual por páginas, ordenada por el último mensaje.
+ * <p>
+ * Las actualizaciones de una misma conversación se hacen de a una: los envíos que se confirman mientras
+ * otra está en curso esperan y se aplican juntos en la siguiente. Así dos envíos seguidos en un chat nuevo
+ * no crean dos conversaciones ni se pisan el último mensaje. Que la clave sea única entre dispositivos lo
+ * garantiza el Cloud Code del servidor (ver README), que rechaza la segunda con DUPLICATE_VALUE.
+ */
+public class ConversacionProvider {
+
+    private static final String TAG = "ConversacionProvider";
+
+    /** Cantidad de conversaciones por página de la bandeja */
+    static final int TAMANO_PAGINA = 20;
+
+    /**
+     * Espera antes de recargar la bandeja tras un mensaje recibido. Agrupa ráfagas de mensajes en una
+     * sola consulta y da tiempo a que el remitente actualice la conversación en el servidor.
+     */
+    private static final long ESPERA_RECARGA_MS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable recargarRunnable = this::recargar;
+
+    /** Conversaciones cargadas hasta ahora, de la más reciente a la más antigua */
+    private final MutableLiveData<List<Conversacion>> conversacionesLiveData = new MutableLiveData<>();
+
+    /** Fecha del último mensaje de la conversación más antigua cargada; cursor de la página siguiente */
+    private Date cursor = null;
+
+    /** Indica si puede haber más conversaciones en el servidor */
+    private boolean hayMas = true;
+
+    /** Evita pedir dos veces la misma página */
+    private final AtomicBoolean cargando = new AtomicBoolean(false);
+
+    /**
+     * Mensajes que esperan para actualizar cada conversación, por clave. Que haya una entrada indica que
+     * la conversación tiene una actualización en curso. Solo en el hilo principal.
+     */
+    private final Map<String, List<Mensaje>> enCurso = new HashMap<>();
+
+    /**
+     * Obtiene las conversaciones cargadas.
+     *
+     * @return LiveData con las conversaciones, ordenadas por último mensaje descendente
+     */
+    public LiveData<List<Conversacion>> getConversaciones() {
+        return conversacionesLiveData;
+    }
+
+    /**
+     * Vuelve a cargar la bandeja desde la primera página.
+     */
+    public void recargar() {
+        cursor = null;
+        hayMas = true;
+        cargando.set(false);
+        cargarPagina(true);
+    }
+
+    /**
+     * Programa una recarga de la primera página; las llamadas seguidas se agrupan en una sola.
+     */
+    public void recargarPronto() {
+        handler.removeCallbacks(recargarRunnable);
+        handler.postDelayed(recargarRunnable, ESPERA_RECARGA_MS);
+    }
+
+    /**
+     * Cancela una recarga programada con {@link #recargarPronto()}.
+     */
+    public void cancelarRecarga() {
+        handler.removeCallbacks(recargarRunnable);
+    }
+
+    /**
+     * Carga la página siguiente de la bandeja, si quedan conversaciones.
+     */
+    public void cargarMas() {
+        if (hayMas && cursor != null) {
+            cargarPagina(false);
+        }
+    }
+
+    /**
+     * Consulta una página de conversaciones del usuario actual.
+     *
+     * @param primera true para la primera página (reemplaza la lista), false para agregar al final
+     */
+    private void cargarPagina(boolean primera) {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (currentUser == null || !cargando.compareAndSet(false, true)) {
+            return;
+        }
+
+        ParseQuery<Conversacion> query = ParseQuery.getQuery(Conversacion.class);
+        query.whereEqualTo(Conversacion.KEY_PARTICIPANTES_IDS, currentUser.getObjectId());
+        if (!primera) {
+            query.whereLessThan(Conversacion.KEY_ULTIMO_MENSAJE_AT, cursor);
+        }
+        query.include(Conversacion.KEY_PARTICIPANTES);
+        query.addDescendingOrder(Conversacion.KEY_ULTIMO_MENSAJE_AT);
+        query.setLimit(TAMANO_PAGINA);
+
+        query.findInBackground((conversaciones, e) -> {
+            cargando.set(false);
+            if (e != null) {
+                Log.e(TAG, "Error al cargar conversaciones: " + e.getMessage(), e);
+                if (primera) {
+                    conversacionesLiveData.setValue(null);
+                }
+                return;
+            }
+
+            hayMas = conversaciones.size() >= TAMANO_PAGINA;
+            if (!conversaciones.isEmpty()) {
+                cursor = conversaciones.get(conversaciones.size() - 1).getUltimoMensajeAt();
+            }
+
+            // Los participantes vienen incluidos: al abrir un chat desde la bandeja no hace falta pedirlos
+            for (Conversacion conversacion : conversaciones) {
+                List<ParseUser> participantes = conversacion.getParticipantes();
+                if (participantes != null) {
+                    MyApplication.getUsuarioCache().registrarTodos(participantes);
+                }
+            }
+
+            List<Conversacion> lista = new ArrayList<>();
+            if (!primera && conversacionesLiveData.getValue() != null) {
+                lista.addAll(conversacionesLiveData.getValue());
+            }
+            // Una fila por pareja aunque en el servidor hayan quedado conversaciones duplicadas
+            Set<String> claves = new HashSet<>();
+            for (Conversacion conversacion : lista) {
+                claves.add(conversacion.getClave());
+            }
+            for (Conversacion conversacion : conversaciones) {
+                if (claves.add(conversacion.getClave())) {
+                    lista.add(conversacion);
+                }
+            }
+            Log.d(TAG, "Conversaciones cargadas: " + lista.size());
+            conversacionesLiveData.setValue(lista);
+        });
+    }
+
+    /**
+     * Actualiza (o crea) la conversación de un mensaje recién guardado: último mensaje,
+     * fecha y contador de no leídos del destinatario. Debe llamarse desde el hilo principal.
+     *
+     * @param mensaje Mensaje ya guardado en el servidor
+     */
+    public void registrarMensaje(@NonNull Mensaje mensaje) {
+        ParseUser remitente = mensaje.getRemitente();
+        ParseUser destinatario = mensaje.getDestinatario();
+        String clave = Conversacion.calcularClave(remitente.getObjectId(), destinatario.getObjectId());
+
+        List<Mensaje> enEspera = enCurso.get(clave);
+        if (enEspera != null) {
+            // Se aplica cuando termine la actualización en curso
+            enEspera.add(mensaje);
+            return;
+        }
+        enCurso.put(clave, new ArrayList<>());
+        actualizarConversacion(clave, remitente, destinatario, Collections.singletonList(mensaje), true);
+    }
+
+    /**
+     * Lee la conversación, le aplica los mensajes y la guarda. Si al crearla el servidor avisa que el otro
+     * participante la creó al mismo tiempo, se vuelve a leer y se actualiza la existente.
+     *
+     * @param reintentar true si todavía se puede reintentar ante DUPLICATE_VALUE
+     */
+    private void actualizarConversacion(String clave, ParseUser remitente, ParseUser destinatario,
+                                        List<Mensaje> mensajes, boolean reintentar) {
+        buscarPorClave(clave, (encontrada, e) -> {
+            if (e != null && e.getCode() != ParseException.OBJECT_NOT_FOUND) {
+                Log.e(TAG, "Error al buscar la conversación " + clave + ": " + e.getMessage(), e);
+                terminarActualizacion(clave, remitente, destinatario);
+                return;
+            }
+            Conversacion conversacion = encontrada;
+            if (conversacion == null) {
+                conversacion = new Conversacion();
+                conversacion.setParticipantes(remitente, destinatario);
+            }
+            boolean nueva = conversacion.getObjectId() == null;
+            conversacion.registrarMensajes(mensajes);
+            conversacion.saveInBackground(error -> {
+                if (error != null && nueva && reintentar && error.getCode() == ParseException.DUPLICATE_VALUE) {
+                    Log.d(TAG, "La conversación " + clave + " ya fue creada: se actualiza la existente");
+                    actualizarConversacion(clave, remitente, destinatario, mensajes, false);
+                    return;
+                }
+                if (error != null) {
+                    Log.e(TAG, "Error al actualizar la conversación " + clave + ": " + error.getMessage(), error);
+                }
+                terminarActualizacion(clave, remitente, destinatario);
+            });
+        });
+    }
+
+    /**
+     * Termina la actualización en curso de una conversación y, si llegaron mensajes mientras tanto,
+     * los aplica todos juntos en una nueva.
+     */
+    private void terminarActualizacion(String clave, ParseUser remitente, ParseUser destinatario) {
+        List<Mensaje> enEspera = enCurso.get(clave);
+        if (enEspera == null || enEspera.isEmpty()) {
+            enCurso.remove(clave);
+            return;
+        }
+        enCurso.put(clave, new ArrayList<>());
+        actualizarConversacion(clave, remitente, destinatario, enEspera, true);
+    }
+
+    /**
+     * Busca la conversación con la clave dada; el callback recibe null si todavía no existe.
+     * Si quedaron duplicadas de antes de que la clave fuera única, siempre se usa la más antigua.
+     */
+    private void buscarPorClave(String clave, GetCallback<Conversacion> callback) {
+        ParseQuery<Conversacion> query = ParseQuery.getQuery(Conversacion.class);
+        query.whereEqualTo(Conversacion.KEY_CLAVE, clave);
+        query.addAscendingOrder("createdAt");
+        query.getFirstInBackground(callback);
+    }
+}
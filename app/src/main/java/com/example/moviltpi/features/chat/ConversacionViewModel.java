@@ -0,0 +1,55 @@
+package com.example.moviltpi.features.chat;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.models.Mensaje;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ViewModel de la bandeja de entrada de chats.
+ */
+public class ConversacionViewModel extends ViewModel {
+    private final ConversacionProvider conversacionProvider = new ConversacionProvider();
+
+    /** Cada mensaje nuevo del usuario, venga de la conversación que venga, reordena la bandeja */
+    private final Consumer<Mensaje> oyenteBandeja = mensaje -> conversacionProvider.recargarPronto();
+
+    public ConversacionViewModel() {
+        MyApplication.getMensajeRouter().addOyenteBandeja(oyenteBandeja);
+    }
+
+    /**
+     * Obtiene las conversaciones del usuario actual.
+     *
+     * @return LiveData con las conversaciones cargadas, o null si hubo un error.
+     */
+    public LiveData<List<Conversacion>> getConversaciones() {
+        return conversacionProvider.getConversaciones();
+    }
+
+    /**
+     * Recarga la bandeja desde la primera página.
+     */
+    public void recargar() {
+        conversacionProvider.recargar();
+    }
+
+    /**
+     * Carga la página siguiente de conversaciones.
+     */
+    public void cargarMas() {
+        conversacionProvider.cargarMas();
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        MyApplication.getMensajeRouter().removeOyenteBandeja(oyenteBandeja);
+        conversacionProvider.cancelarRecarga();
+    }
+}
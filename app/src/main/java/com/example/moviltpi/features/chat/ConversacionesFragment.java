@@ -0,0 +1,131 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.moviltpi.R;
+import com.example.moviltpi.databinding.FragmentConversacionesBinding;
+import com.example.moviltpi.features.users.UserFragment;
+import com.parse.ParseUser;
+
+/**
+ * Fragmento de la bandeja de entrada: lista las conversaciones del usuario actual,
+ * de la más reciente a la más antigua, con el último mensaje y los no leídos.
+ * Las conversaciones se cargan por páginas al desplazarse; el botón flotante abre la
+ * lista de usuarios para iniciar un chat nuevo.
+ */
+public class ConversacionesFragment extends Fragment {
+
+    private static final String TAG = "ConversacionesFragment";
+
+    /** Cantidad de filas antes del final a partir de la cual se pide la página siguiente */
+    private static final int UMBRAL_CARGA = 5;
+
+    private FragmentConversacionesBinding binding;
+    private ConversacionViewModel viewModel;
+    private ConversacionAdapter adapter;
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        binding = FragmentConversacionesBinding.inflate(inflater, container, false);
+        ((AppCompatActivity) requireActivity()).setSupportActionBar(binding.toolbar);
+
+        viewModel = new ViewModelProvider(this).get(ConversacionViewModel.class);
+
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (currentUser == null) {
+            Log.e(TAG, "No hay usuario autenticado");
+            mostrarEstado("Error: No hay usuario autenticado");
+            return binding.getRoot();
+        }
+
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        binding.recyclerConversaciones.setLayoutManager(layoutManager);
+        adapter = new ConversacionAdapter(currentUser.getObjectId(), this::abrirChat);
+        binding.recyclerConversaciones.setAdapter(adapter);
+
+        // Pedir la página siguiente al acercarse al final de la lista
+        binding.recyclerConversaciones.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - UMBRAL_CARGA) {
+                    viewModel.cargarMas();
+                }
+            }
+        });
+
+        binding.fabNuevoChat.setOnClickListener(v -> getParentFragmentManager().beginTransaction()
+                .replace(R.id.container, new UserFragment(), "USERS_FRAGMENT")
+                .addToBackStack(null)
+                .commit());
+
+        viewModel.getConversaciones().observe(getViewLifecycleOwner(), conversaciones -> {
+            binding.progressBar.setVisibility(View.GONE);
+            if (conversaciones == null) {
+                mostrarEstado("Error al cargar los chats");
+            } else if (conversaciones.isEmpty()) {
+                mostrarEstado("Todavía no tienes chats. Toca + para empezar uno.");
+            } else {
+                adapter.setConversaciones(conversaciones);
+                binding.recyclerConversaciones.setVisibility(View.VISIBLE);
+                binding.tvSinConversaciones.setVisibility(View.GONE);
+            }
+        });
+
+        return binding.getRoot();
+    }
+
+    /**
+     * Recarga la bandeja al volver, para reflejar mensajes nuevos y contadores de no leídos.
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (adapter != null) {
+            viewModel.recargar();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        binding = null;
+    }
+
+    /**
+     * Abre el chat con el otro participante de una conversación.
+     *
+     * @param otroUsuario Usuario con el que se abrirá el chat
+     */
+    private void abrirChat(ParseUser otroUsuario) {
+        ChatFragment chatFragment = new ChatFragment();
+        Bundle bundle = new Bundle();
+        bundle.putString("otroUsuarioId", otroUsuario.getObjectId());
+        chatFragment.setArguments(bundle);
+
+        getParentFragmentManager().beginTransaction()
+                .replace(R.id.container, chatFragment, "CHATS_FRAGMENT")
+                .addToBackStack(null)
+                .commit();
+    }
+
+    /**
+     * Oculta la lista y muestra un texto de estado.
+     */
+    private void mostrarEstado(String texto) {
+        binding.recyclerConversaciones.setVisibility(View.GONE);
+        binding.tvSinConversaciones.setText(texto);
+        binding.tvSinConversaciones.setVisibility(View.VISIBLE);
+        binding.progressBar.setVisibility(View.GONE);
+    }
+}
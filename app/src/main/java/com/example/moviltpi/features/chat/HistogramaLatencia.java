@@ -0,0 +1,96 @@
+package com.example.moviltpi.features.chat;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Histograma móvil de latencias: guarda las últimas {@link #MUESTRAS} mediciones en un búfer circular y
+ * calcula los percentiles al consultarlo, así que refleja el comportamiento reciente y no el de toda la
+ * sesión. Es seguro entre hilos.
+ */
+public class HistogramaLatencia {
+
+    /** Cantidad de mediciones recientes que se conservan */
+    static final int MUESTRAS = 512;
+
+    private final long[] muestras = new long[MUESTRAS];
+    private int siguiente = 0;
+    private long total = 0;
+
+    /**
+     * Percentiles de las mediciones recientes, en milisegundos.
+     */
+    public static final class Resumen {
+        private final long cantidad;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+
+        Resumen(long cantidad, long p50, long p95, long p99) {
+            this.cantidad = cantidad;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        /** Mediciones registradas desde el inicio, incluidas las que ya salieron del búfer */
+        public long getCantidad() {
+            return cantidad;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d p50=%dms p95=%dms p99=%dms", cantidad, p50, p95, p99);
+        }
+    }
+
+    /**
+     * Registra una medición.
+     *
+     * @param ms Latencia en milisegundos; las negativas (relojes desfasados) se cuentan como 0.
+     */
+    public synchronized void registrar(long ms) {
+        muestras[siguiente] = Math.max(0, ms);
+        siguiente = (siguiente + 1) % MUESTRAS;
+        total++;
+    }
+
+    /**
+     * Calcula los percentiles de las mediciones recientes.
+     *
+     * @return El resumen, con percentiles en 0 si todavía no hay mediciones.
+     */
+    public Resumen getResumen() {
+        long[] copia;
+        long cantidad;
+        synchronized (this) {
+            cantidad = total;
+            copia = Arrays.copyOf(muestras, (int) Math.min(total, MUESTRAS));
+        }
+        if (copia.length == 0) {
+            return new Resumen(0, 0, 0, 0);
+        }
+        Arrays.sort(copia);
+        return new Resumen(cantidad, percentil(copia, 50), percentil(copia, 95), percentil(copia, 99));
+    }
+
+    /**
+     * Percentil por el método del rango más cercano sobre mediciones ordenadas.
+     */
+    private static long percentil(long[] ordenadas, int p) {
+        int rango = (int) Math.ceil(p / 100.0 * ordenadas.length);
+        return ordenadas[Math.max(0, rango - 1)];
+    }
+}
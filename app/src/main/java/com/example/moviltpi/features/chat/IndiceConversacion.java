@@ -0,0 +1,359 @@
+package com.example.moviltpi.features.chat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de los mensajes de una conversación: cada palabra apunta a los mensajes que la contienen,
+ * ordenados del más reciente al más antiguo. Se construye de a un mensaje a medida que llegan, así que una
+ * búsqueda no recorre los textos: recorre en orden de recencia los mensajes del término más chico, se queda
+ * con los que tienen también los demás términos y termina en cuanto junta el límite de resultados.
+ * <p>
+ * Las palabras se comparan sin mayúsculas ni acentos, y la última palabra de la consulta se busca como
+ * prefijo, para encontrar resultados mientras se escribe. No es seguro entre hilos: lo usa
+ * {@link MensajeIndice} desde un único hilo.
+ */
+class IndiceConversacion {
+
+    /** Versión del formato guardado en disco; un formato distinto se descarta y se vuelve a construir */
+    private static final int VERSION_FORMATO = 1;
+
+    /** Largo máximo del texto que se indexa y se guarda de cada mensaje */
+    static final int MAX_TEXTO = 4000;
+
+    /**
+     * Cantidad máxima de palabras de un prefijo que se recorren juntas; un prefijo más amplio (por ejemplo,
+     * una sola letra) se comprueba en las palabras de cada mensaje candidato
+     */
+    private static final int MAX_PALABRAS_MEZCLA = 64;
+
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Mensaje indexado: lo necesario para mostrarlo en los resultados y para ir a buscarlo al historial.
+     */
+    static final class Documento {
+        private final String id;
+        private final long fecha;
+        private final String texto;
+        /** Palabras del texto, para desindexarlo y para comprobar el prefijo sin volver a separarlo */
+        private final String[] palabras;
+
+        Documento(String id, long fecha, String texto, String[] palabras) {
+            this.id = id;
+            this.fecha = fecha;
+            this.texto = texto;
+            this.palabras = palabras;
+        }
+
+        /**
+         * Indica si alguna de las palabras del mensaje empieza con el prefijo.
+         */
+        boolean tienePrefijo(String prefijo) {
+            for (String palabra : palabras) {
+                if (palabra.startsWith(prefijo)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        long getFecha() {
+            return fecha;
+        }
+
+        String getTexto() {
+            return texto;
+        }
+    }
+
+    /** Orden de los resultados: del más reciente al más antiguo */
+    private static final Comparator<Documento> RECIENTES = (a, b) -> {
+        int orden = Long.compare(b.fecha, a.fecha);
+        return orden != 0 ? orden : a.id.compareTo(b.id);
+    };
+
+    /** Mensajes indexados por objectId */
+    private final Map<String, Documento> documentos = new HashMap<>();
+
+    /** Todos los mensajes indexados, del más reciente al más antiguo */
+    private final TreeSet<Documento> recientes = new TreeSet<>(RECIENTES);
+
+    /** Palabra → mensajes que la contienen, del más reciente al más antiguo; ordenado para buscar por prefijo */
+    private final TreeMap<String, TreeSet<Documento>> palabras = new TreeMap<>();
+
+    /**
+     * Agrega un mensaje o actualiza su texto. No hace nada si ya estaba indexado con el mismo texto.
+     *
+     * @param id    objectId del mensaje.
+     * @param fecha createdAt del mensaje, en milisegundos.
+     * @param texto Texto del mensaje.
+     * @return true si el índice cambió.
+     */
+    boolean agregar(String id, long fecha, String texto) {
+        String recortado = texto.length() > MAX_TEXTO ? texto.substring(0, MAX_TEXTO) : texto;
+        Documento actual = documentos.get(id);
+        if (actual != null && actual.fecha == fecha && actual.texto.equals(recortado)) {
+            return false;
+        }
+        if (actual != null) {
+            desindexar(actual);
+        }
+        Set<String> tokens = tokenizar(recortado);
+        Documento documento = new Documento(id, fecha, recortado, tokens.toArray(new String[0]));
+        documentos.put(id, documento);
+        recientes.add(documento);
+        for (String palabra : documento.palabras) {
+            TreeSet<Documento> conjunto = palabras.get(palabra);
+            if (conjunto == null) {
+                conjunto = new TreeSet<>(RECIENTES);
+                palabras.put(palabra, conjunto);
+            }
+            conjunto.add(documento);
+        }
+        return true;
+    }
+
+    /**
+     * Quita un mensaje del índice.
+     *
+     * @param id objectId del mensaje.
+     * @return true si estaba indexado.
+     */
+    boolean quitar(String id) {
+        Documento documento = documentos.remove(id);
+        if (documento == null) {
+            return false;
+        }
+        desindexar(documento);
+        return true;
+    }
+
+    /**
+     * Busca los mensajes que contienen todas las palabras de la consulta; la última puede estar incompleta.
+     *
+     * @param consulta Texto buscado.
+     * @param limite   Cantidad máxima de resultados.
+     * @return Mensajes encontrados, del más reciente al más antiguo.
+     */
+    List<Documento> buscar(String consulta, int limite) {
+        List<String> terminos = new ArrayList<>(tokenizar(consulta));
+        if (terminos.isEmpty() || limite <= 0) {
+            return Collections.emptyList();
+        }
+        String prefijo = terminos.remove(terminos.size() - 1);
+        NavigableMap<String, TreeSet<Documento>> conPrefijo =
+                palabras.subMap(prefijo, true, prefijo + Character.MAX_VALUE, false);
+        if (conPrefijo.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Los términos completos, del que tiene menos mensajes al que tiene más
+        List<TreeSet<Documento>> conjuntos = new ArrayList<>();
+        for (String termino : terminos) {
+            TreeSet<Documento> conjunto = palabras.get(termino);
+            if (conjunto == null) {
+                return Collections.emptyList();
+            }
+            conjuntos.add(conjunto);
+        }
+        Collections.sort(conjuntos, (a, b) -> Integer.compare(a.size(), b.size()));
+
+        // Las palabras del prefijo se recorren juntas si son pocas y suman menos mensajes que el término más raro
+        int palabrasPrefijo = 0;
+        int mensajesPrefijo = 0;
+        for (TreeSet<Documento> conjunto : conPrefijo.values()) {
+            mensajesPrefijo += conjunto.size();
+            if (++palabrasPrefijo > MAX_PALABRAS_MEZCLA) {
+                break;
+            }
+        }
+        Iterator<Documento> candidatos;
+        boolean filtrarPrefijo;
+        if (palabrasPrefijo <= MAX_PALABRAS_MEZCLA
+                && (conjuntos.isEmpty() || mensajesPrefijo < conjuntos.get(0).size())) {
+            candidatos = new Mezcla(conPrefijo.values());
+            filtrarPrefijo = false;
+        } else {
+            // Si no, se recorre el término más raro, o todos los mensajes, y el prefijo se busca en cada uno
+            candidatos = conjuntos.isEmpty() ? recientes.iterator() : conjuntos.remove(0).iterator();
+            filtrarPrefijo = true;
+        }
+
+        // Los candidatos salen del más reciente al más antiguo: los primeros que cumplen son los resultados
+        List<Documento> resultado = new ArrayList<>();
+        while (candidatos.hasNext() && resultado.size() < limite) {
+            Documento documento = candidatos.next();
+            boolean enTodos = !filtrarPrefijo || documento.tienePrefijo(prefijo);
+            for (int i = 0; i < conjuntos.size() && enTodos; i++) {
+                enTodos = conjuntos.get(i).contains(documento);
+            }
+            if (enTodos) {
+                resultado.add(documento);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Obtiene la cantidad de mensajes indexados.
+     */
+    int getTamano() {
+        return documentos.size();
+    }
+
+    /**
+     * Escribe los mensajes indexados; las palabras se vuelven a calcular al leerlos.
+     *
+     * @param salida Flujo de destino.
+     * @throws IOException Si falla la escritura.
+     */
+    void escribir(DataOutputStream salida) throws IOException {
+        salida.writeInt(VERSION_FORMATO);
+        salida.writeInt(documentos.size());
+        for (Documento documento : documentos.values()) {
+            salida.writeUTF(documento.id);
+            salida.writeLong(documento.fecha);
+            salida.writeUTF(documento.texto);
+        }
+    }
+
+    /**
+     * Lee un índice escrito con {@link #escribir(DataOutputStream)}.
+     *
+     * @param entrada Flujo de origen.
+     * @return El índice reconstruido.
+     * @throws IOException Si el contenido está dañado o tiene otro formato.
+     */
+    static IndiceConversacion leer(DataInputStream entrada) throws IOException {
+        int version = entrada.readInt();
+        if (version != VERSION_FORMATO) {
+            throw new IOException("Formato de índice desconocido: " + version);
+        }
+        IndiceConversacion indice = new IndiceConversacion();
+        int cantidad = entrada.readInt();
+        for (int i = 0; i < cantidad; i++) {
+            String id = entrada.readUTF();
+            long fecha = entrada.readLong();
+            String texto = entrada.readUTF();
+            indice.agregar(id, fecha, texto);
+        }
+        return indice;
+    }
+
+    /**
+     * Separa un texto en palabras en minúsculas y sin acentos, sin repetir.
+     *
+     * @param texto Texto a separar.
+     * @return Palabras en el orden en que aparecen.
+     */
+    static Set<String> tokenizar(String texto) {
+        Set<String> resultado = new LinkedHashSet<>();
+        if (texto == null) {
+            return resultado;
+        }
+        String normalizado = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        for (String palabra : SEPARADORES.split(normalizado)) {
+            if (!palabra.isEmpty()) {
+                resultado.add(palabra);
+            }
+        }
+        return resultado;
+    }
+
+    private void desindexar(Documento documento) {
+        recientes.remove(documento);
+        for (String palabra : documento.palabras) {
+            TreeSet<Documento> conjunto = palabras.get(palabra);
+            if (conjunto != null) {
+                conjunto.remove(documento);
+                if (conjunto.isEmpty()) {
+                    palabras.remove(palabra);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre juntos, del más reciente al más antiguo y sin repetir, los mensajes de varias palabras.
+     * Solo avanza lo que se consume, así que cortar después de unos pocos resultados no recorre todo.
+     */
+    private static final class Mezcla implements Iterator<Documento> {
+        private final PriorityQueue<Cabeza> cabezas =
+                new PriorityQueue<>((a, b) -> RECIENTES.compare(a.actual, b.actual));
+        private Documento anterior;
+
+        Mezcla(Collection<TreeSet<Documento>> conjuntos) {
+            for (TreeSet<Documento> conjunto : conjuntos) {
+                Iterator<Documento> iterador = conjunto.iterator();
+                if (iterador.hasNext()) {
+                    cabezas.add(new Cabeza(iterador));
+                }
+            }
+            avanzar();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cabezas.isEmpty();
+        }
+
+        @Override
+        public Documento next() {
+            if (cabezas.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            anterior = cabezas.peek().actual;
+            avanzar();
+            return anterior;
+        }
+
+        /**
+         * Descarta de las cabezas el mensaje ya devuelto, que puede estar en varias palabras.
+         */
+        private void avanzar() {
+            while (!cabezas.isEmpty() && cabezas.peek().actual == anterior) {
+                Cabeza cabeza = cabezas.poll();
+                if (cabeza.iterador.hasNext()) {
+                    cabeza.actual = cabeza.iterador.next();
+                    cabezas.add(cabeza);
+                }
+            }
+        }
+
+        private static final class Cabeza {
+            final Iterator<Documento> iterador;
+            Documento actual;
+
+            Cabeza(Iterator<Documento> iterador) {
+                this.iterador = iterador;
+                this.actual = iterador.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.moviltpi.features.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de latencia de punta a punta del chat, creadas por {@link com.example.moviltpi.core.MyApplication}.
+ * <p>
+ * Sigue cada mensaje por las etapas envío → guardado en el servidor → llegada por LiveQuery o por polling
+ * → primera vez que se muestra en la lista, y registra cada tramo en un {@link HistogramaLatencia} por
+ * métrica:
+ * <ul>
+ *   <li>{@link #ENVIO_GUARDADO}, {@code envio.eco.<ruta>} y {@link #ENVIO_RENDER}: mensajes propios enviados
+ *   desde este dispositivo, medidos con su reloj monótono desde que se encolan.</li>
+ *   <li>{@code recepcion.<ruta>} y {@code recepcion.render.<ruta>}: mensajes que llegan sin haber salido de
+ *   este dispositivo, medidos desde {@link com.example.moviltpi.core.models.Mensaje#KEY_ENVIADO_EN}. Usan el
+ *   reloj de dos dispositivos, así que incluyen su desfase.</li>
+ * </ul>
+ * Un mensaje se mide solo la primera vez que llega, aunque después vuelva a llegar por la otra ruta.
+ * Los mensajes en seguimiento se acotan a {@link #MAX_SEGUIMIENTOS}. Es seguro entre hilos.
+ */
+public class LatenciaChat {
+
+    /** Ruta por la que llegó un mensaje al dispositivo */
+    public enum Ruta {
+        LIVEQUERY("livequery"),
+        POLLING("polling");
+
+        private final String nombre;
+
+        Ruta(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    /** Desde que se encola un mensaje propio hasta que el servidor confirma el guardado */
+    public static final String ENVIO_GUARDADO = "envio.guardado";
+
+    /** Desde que se encola un mensaje propio hasta que se muestra por primera vez (como pendiente) */
+    public static final String ENVIO_RENDER = "envio.render";
+
+    /** Cantidad máxima de mensajes en seguimiento; los más antiguos se olvidan */
+    static final int MAX_SEGUIMIENTOS = 1000;
+
+    /**
+     * Etapas ya vistas de un mensaje. Los tiempos propios usan el reloj monótono; los recibidos, el reloj
+     * de pared del remitente.
+     */
+    private static final class Seguimiento {
+        final boolean propio;
+        final long inicio;
+        boolean guardado;
+        Ruta llegada;
+        boolean mostrado;
+
+        Seguimiento(boolean propio, long inicio) {
+            this.propio = propio;
+            this.inicio = inicio;
+        }
+    }
+
+    /** Relojes de la instancia; se reemplazan en las pruebas */
+    interface Reloj {
+        long monotonoNanos();
+
+        long paredMs();
+    }
+
+    private static final Reloj RELOJ_SISTEMA = new Reloj() {
+        @Override
+        public long monotonoNanos() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long paredMs() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Reloj reloj;
+    private final Map<String, HistogramaLatencia> histogramas = new ConcurrentHashMap<>();
+
+    /** Mensajes en seguimiento por ID local, del más antiguo al más reciente */
+    private final Map<String, Seguimiento> seguimientos = new LinkedHashMap<String, Seguimiento>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Seguimiento> eldest) {
+            return size() > MAX_SEGUIMIENTOS;
+        }
+    };
+
+    public LatenciaChat() {
+        this(RELOJ_SISTEMA);
+    }
+
+    LatenciaChat(Reloj reloj) {
+        this.reloj = reloj;
+    }
+
+    /**
+     * Empieza a seguir un mensaje propio al encolarlo.
+     *
+     * @param clientId clientId asignado por la cola de salida.
+     */
+    public void enviado(@NonNull String clientId) {
+        synchronized (seguimientos) {
+            seguimientos.put(clientId, new Seguimiento(true, reloj.monotonoNanos()));
+        }
+    }
+
+    /**
+     * Registra que el servidor confirmó el guardado de un mensaje propio.
+     *
+     * @param clientId clientId del mensaje.
+     */
+    public void guardado(@NonNull String clientId) {
+        long ahora = reloj.monotonoNanos();
+        synchronized (seguimientos) {
+            Seguimiento seguimiento = seguimientos.get(clientId);
+            if (seguimiento == null || !seguimiento.propio || seguimiento.guardado) {
+                return;
+            }
+            seguimiento.guardado = true;
+            registrar(ENVIO_GUARDADO, TimeUnit.NANOSECONDS.toMillis(ahora - seguimiento.inicio));
+        }
+    }
+
+    /**
+     * Registra la llegada de un mensaje por LiveQuery o por polling. Si es un mensaje propio en
+     * seguimiento, mide su eco; si no, mide desde su hora de envío, si la tiene.
+     *
+     * @param idLocal    ID local del mensaje (clientId u objectId).
+     * @param enviadoEn  Hora de envío según el remitente, o null si el mensaje no la tiene.
+     * @param ruta       Ruta por la que llegó.
+     */
+    public void recibido(@NonNull String idLocal, @Nullable Long enviadoEn, @NonNull Ruta ruta) {
+        synchronized (seguimientos) {
+            Seguimiento seguimiento = seguimientos.get(idLocal);
+            if (seguimiento != null) {
+                if (seguimiento.llegada == null && seguimiento.propio) {
+                    seguimiento.llegada = ruta;
+                    registrar("envio.eco." + ruta.nombre,
+                            TimeUnit.NANOSECONDS.toMillis(reloj.monotonoNanos() - seguimiento.inicio));
+                }
+                return;
+            }
+            if (enviadoEn == null) {
+                return;
+            }
+            Seguimiento nuevo = new Seguimiento(false, enviadoEn);
+            nuevo.llegada = ruta;
+            seguimientos.put(idLocal, nuevo);
+            registrar("recepcion." + ruta.nombre, reloj.paredMs() - enviadoEn);
+        }
+    }
+
+    /**
+     * Registra que un mensaje se mostró en la lista. Solo cuenta la primera vez de cada mensaje seguido.
+     *
+     * @param idLocal ID local del mensaje.
+     */
+    public void mostrado(@Nullable String idLocal) {
+        if (idLocal == null) {
+            return;
+        }
+        synchronized (seguimientos) {
+            Seguimiento seguimiento = seguimientos.get(idLocal);
+            if (seguimiento == null || seguimiento.mostrado) {
+                return;
+            }
+            seguimiento.mostrado = true;
+            if (seguimiento.propio) {
+                registrar(ENVIO_RENDER, TimeUnit.NANOSECONDS.toMillis(reloj.monotonoNanos() - seguimiento.inicio));
+            } else {
+                registrar("recepcion.render." + seguimiento.llegada.nombre, reloj.paredMs() - seguimiento.inicio);
+            }
+        }
+    }
+
+    /**
+     * Obtiene los percentiles recientes de una métrica.
+     *
+     * @param metrica Nombre de la métrica, por ejemplo {@link #ENVIO_GUARDADO} o {@code "recepcion.polling"}.
+     * @return El resumen, o null si la métrica todavía no tiene mediciones.
+     */
+    @Nullable
+    public HistogramaLatencia.Resumen getResumen(@NonNull String metrica) {
+        HistogramaLatencia histograma = histogramas.get(metrica);
+        return histograma != null ? histograma.getResumen() : null;
+    }
+
+    /**
+     * Obtiene los percentiles recientes de todas las métricas con mediciones.
+     *
+     * @return Resúmenes por nombre de métrica, en orden alfabético.
+     */
+    @NonNull
+    public Map<String, HistogramaLatencia.Resumen> getResumenes() {
+        Map<String, HistogramaLatencia.Resumen> resumenes = new TreeMap<>();
+        for (Map.Entry<String, HistogramaLatencia> entrada : histogramas.entrySet()) {
+            resumenes.put(entrada.getKey(), entrada.getValue().getResumen());
+        }
+        return Collections.unmodifiableMap(resumenes);
+    }
+
+    private void registrar(String metrica, long ms) {
+        HistogramaLatencia histograma = histogramas.get(metrica);
+        if (histograma == null) {
+            histograma = histogramas.computeIfAbsent(metrica, m -> new HistogramaLatencia());
+        }
+        histograma.registrar(ms);
+    }
+}
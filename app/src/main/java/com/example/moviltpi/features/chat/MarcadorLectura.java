@@ -0,0 +1,170 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marcas de lectura del usuario actual, compartidas por toda la aplicación.
+ * <p>
+ * En lugar de guardar la conversación cada vez que llega o se muestra un mensaje, se recuerdan por
+ * conversación los mensajes recibidos que el usuario vio y se escriben todas las marcas pendientes juntas,
+ * como mucho una vez cada {@link #INTERVALO_ESCRITURA_MS}, en un único guardado. Al salir del chat se
+ * escribe de inmediato con {@link #escribirAhora()}.
+ * <p>
+ * Los no leídos no se ponen en cero: se descuentan los mensajes vistos que quedan después de la marca
+ * guardada en el servidor, con un incremento negativo. Así un mensaje que llega mientras tanto sigue
+ * contando como no leído, y la escritura no necesita ninguna consulta aparte de leer las conversaciones.
+ * <p>
+ * Todos los métodos deben llamarse desde el hilo principal.
+ */
+public class MarcadorLectura {
+
+    private static final String TAG = "MarcadorLectura";
+
+    /** Tiempo máximo que una marca espera antes de escribirse */
+    private static final long INTERVALO_ESCRITURA_MS = 5000;
+
+    /** Mensajes recibidos vistos y pendientes de escribir (objectId y createdAt), por clave de conversación */
+    private final Map<String, Map<String, Date>> pendientes = new HashMap<>();
+
+    /** createdAt del último mensaje registrado como visto, por clave; no se borra al escribir */
+    private final Map<String, Date> registradoHasta = new HashMap<>();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable escribirRunnable = this::escribirAhora;
+
+    /** Indica si hay una escritura programada */
+    private boolean programada = false;
+
+    /**
+     * Obtiene hasta dónde se registraron como vistos los mensajes de una conversación, para no volver
+     * a registrar los mismos cada vez que cambia la lista.
+     *
+     * @param clave Clave de la conversación
+     * @return createdAt del último mensaje registrado, o null si no se registró ninguno
+     */
+    public Date getRegistradoHasta(@NonNull String clave) {
+        return registradoHasta.get(clave);
+    }
+
+    /**
+     * Registra que el usuario vio mensajes recibidos en una conversación. La marca pendiente pasa a ser
+     * el más reciente de ellos; la escritura se programa si no había una.
+     *
+     * @param clave     Clave de la conversación
+     * @param recibidos Mensajes del otro usuario que se vieron, ya guardados en el servidor
+     */
+    public void registrar(@NonNull String clave, @NonNull List<Mensaje> recibidos) {
+        Map<String, Date> vistos = pendientes.get(clave);
+        Date hasta = registradoHasta.get(clave);
+        for (Mensaje mensaje : recibidos) {
+            Date fecha = mensaje.getCreatedAt();
+            if (mensaje.getObjectId() == null || fecha == null) {
+                continue;
+            }
+            if (vistos == null) {
+                vistos = new HashMap<>();
+                pendientes.put(clave, vistos);
+            }
+            vistos.put(mensaje.getObjectId(), fecha);
+            if (hasta == null || fecha.after(hasta)) {
+                hasta = fecha;
+            }
+        }
+        if (vistos == null) {
+            return;
+        }
+        registradoHasta.put(clave, hasta);
+        if (!programada) {
+            programada = true;
+            handler.postDelayed(escribirRunnable, INTERVALO_ESCRITURA_MS);
+        }
+    }
+
+    /**
+     * Escribe ya las marcas pendientes, por ejemplo al salir del chat.
+     */
+    public void escribirAhora() {
+        handler.removeCallbacks(escribirRunnable);
+        programada = false;
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (pendientes.isEmpty() || currentUser == null) {
+            return;
+        }
+        Map<String, Map<String, Date>> vistos = new HashMap<>(pendientes);
+        pendientes.clear();
+        escribir(currentUser.getObjectId(), vistos);
+    }
+
+    /**
+     * Busca las conversaciones de una vez y guarda juntas las que avanzan su marca, descontando de sus no
+     * leídos los mensajes vistos posteriores a la marca que tenían.
+     */
+    private void escribir(String userId, Map<String, Map<String, Date>> vistos) {
+        ParseQuery<Conversacion> query = ParseQuery.getQuery(Conversacion.class);
+        query.whereContainedIn(Conversacion.KEY_CLAVE, vistos.keySet());
+        query.setLimit(vistos.size());
+        query.findInBackground((conversaciones, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error al buscar las conversaciones para marcar como leídas: " + e.getMessage(), e);
+                return;
+            }
+            List<ParseObject> cambiadas = new ArrayList<>();
+            for (Conversacion conversacion : conversaciones) {
+                Map<String, Date> fechas = vistos.get(conversacion.getClave());
+                if (fechas == null) {
+                    continue;
+                }
+                // Solo cuentan los vistos después de la marca guardada; los anteriores ya se descontaron
+                Date anterior = conversacion.getLeidoHasta(userId);
+                Date marca = anterior;
+                int leidos = 0;
+                for (Date fecha : fechas.values()) {
+                    if (anterior == null || fecha.after(anterior)) {
+                        leidos++;
+                        if (marca == null || fecha.after(marca)) {
+                            marca = fecha;
+                        }
+                    }
+                }
+                if (leidos > 0) {
+                    conversacion.marcarLeidaHasta(userId, marca,
+                            Math.min(leidos, conversacion.getNoLeidos(userId)));
+                    cambiadas.add(conversacion);
+                }
+            }
+            guardar(cambiadas);
+        });
+    }
+
+    /**
+     * Guarda juntas las conversaciones marcadas.
+     */
+    private void guardar(List<ParseObject> cambiadas) {
+        if (cambiadas.isEmpty()) {
+            return;
+        }
+        ParseObject.saveAllInBackground(cambiadas, error -> {
+            if (error != null) {
+                Log.e(TAG, "Error al guardar las marcas de lectura: " + error.getMessage(), error);
+            } else {
+                Log.d(TAG, cambiadas.size() + " conversaciones marcadas como leídas");
+            }
+        });
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.moviltpi.features.chat;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Color;
@@ -10,35 +9,36 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.constraintlayout.widget.ConstraintLayout;
-import androidx.recyclerview.widget.DiffUtil;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.moviltpi.R;
-import com.example.moviltpi.core.models.Mensaje;
-import com.parse.ParseUser;
+import com.example.moviltpi.core.MyApplication;
 
-import java.text.SimpleDateFormat;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Adaptador para RecyclerView que muestra mensajes de chat.
- * Diferencia entre mensajes enviados y recibidos, y aplica DiffUtil para actualizaciones eficientes.
+ * Recibe filas ya preparadas ({@link MensajeFila}), así que al vincular solo asigna textos y visibilidad.
+ * Las diferencias entre listas se calculan en un hilo en segundo plano y, cuando solo cambia una parte de
+ * una fila, se actualiza solo esa parte.
  */
-public class MensajeAdapter extends RecyclerView.Adapter<MensajeAdapter.ViewHolder> {
-    private final List<Mensaje> mensajes;
-    private final ParseUser currentUser;
+public class MensajeAdapter extends ListAdapter<MensajeFila, MensajeAdapter.ViewHolder> {
 
-    /**
-     * Constructor para MensajeAdapter.
-     *
-     * @param mensajes    Lista inicial de mensajes.
-     * @param currentUser El ParseUser actual.
-     */
-    public MensajeAdapter(List<Mensaje> mensajes, ParseUser currentUser) {
-        this.mensajes = mensajes;
-        this.currentUser = currentUser;
+    /** Hilo donde se calculan las diferencias de todas las listas de mensajes */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Métricas de latencia; la primera vinculación de cada mensaje cierra su medición */
+    private final LatenciaChat latencia = MyApplication.getLatenciaChat();
+
+    public MensajeAdapter() {
+        super(new AsyncDifferConfig.Builder<>(new MensajeDiffCallback())
+                .setBackgroundThreadExecutor(DIFF_EXECUTOR)
+                .build());
     }
 
     @NonNull
@@ -49,97 +49,137 @@ public class MensajeAdapter extends RecyclerView.Adapter<MensajeAdapter.ViewHold
         return new ViewHolder(view);
     }
 
-    @Override
-    public int getItemCount() {
-        return mensajes.size();
+    /**
+     * Obtiene la fila mostrada en una posición.
+     *
+     * @param position Posición en el adaptador.
+     * @return La fila en esa posición.
+     */
+    public MensajeFila getFila(int position) {
+        return getItem(position);
     }
 
     /**
-     * Actualiza la lista de mensajes utilizando DiffUtil para una actualización eficiente.
+     * Actualiza la lista de filas. Las diferencias se calculan en segundo plano; si llega otra lista antes
+     * de terminar, la anterior se descarta.
      *
-     * @param newMensajes La nueva lista de mensajes.
+     * @param nuevasFilas La nueva lista de filas.
+     * @param alAplicar   Se ejecuta en el hilo principal cuando la lista ya está aplicada, o null.
      */
-    @SuppressLint("NotifyDataSetChanged")
-    public void setMensajes(List<Mensaje> newMensajes) {
-        MensajeDiffCallback diffCallback = new MensajeDiffCallback(this.mensajes, newMensajes);
-        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(diffCallback);
-
-        this.mensajes.clear();
-        this.mensajes.addAll(newMensajes);
-        diffResult.dispatchUpdatesTo(this);
+    public void setFilas(List<MensajeFila> nuevasFilas, @Nullable Runnable alAplicar) {
+        submitList(nuevasFilas, alAplicar);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Mensaje mensaje = mensajes.get(position);
-        boolean esRemitente = mensaje.getRemitente().getObjectId().equals(currentUser.getObjectId());
-        holder.bind(mensaje, esRemitente);
+        MensajeFila fila = getItem(position);
+        holder.bind(fila);
+        latencia.mostrado(fila.getIdLocal());
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int cambios = 0;
+        for (Object payload : payloads) {
+            cambios |= (Integer) payload;
+        }
+        holder.actualizar(getItem(position), cambios);
     }
 
     /**
      * ViewHolder para los elementos del RecyclerView de mensajes.
      */
     static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView tvDia;
         private final TextView tvMensajeEnviado;
         private final TextView tvMensajeRecibido;
         private final TextView tvFechaEnviado;
         private final TextView tvFechaRecibido;
-        private final Context context;
+
+        /** Separación vertical al borde de un grupo y entre mensajes del mismo grupo, en píxeles */
+        private final int espacioGrupo;
+        private final int espacioDentroGrupo;
 
         /**
-         * Constructor para ViewHolder.
+         * Constructor para ViewHolder. Resuelve una sola vez los recursos que no cambian entre filas.
          *
          * @param itemView La vista del elemento del RecyclerView.
          */
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
+            tvDia = itemView.findViewById(R.id.tvDia);
             tvMensajeEnviado = itemView.findViewById(R.id.tvMensajeEnviado);
             tvMensajeRecibido = itemView.findViewById(R.id.tvMensajeRecibido);
             tvFechaEnviado = itemView.findViewById(R.id.tvFechaEnviado);
             tvFechaRecibido = itemView.findViewById(R.id.tvFechaRecibido);
-            ConstraintLayout layoutMensaje = itemView.findViewById(R.id.mensajeContainer);
-            context = itemView.getContext();
+
+            Context context = itemView.getContext();
+            float densidad = context.getResources().getDisplayMetrics().density;
+            espacioGrupo = Math.round(4 * densidad);
+            espacioDentroGrupo = Math.round(1 * densidad);
+
+            // Elegir color de texto para fechas según el modo oscuro
+            boolean isDarkMode = (context.getResources().getConfiguration().uiMode &
+                    Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
+            int textColor = isDarkMode ? Color.LTGRAY : Color.BLACK;
+            tvFechaEnviado.setTextColor(textColor);
+            tvFechaRecibido.setTextColor(textColor);
         }
 
         /**
-         * Vincula los datos del mensaje a la vista del elemento.
+         * Vincula los datos de la fila a la vista del elemento.
          *
-         * @param mensaje     El mensaje a mostrar.
-         * @param esRemitente Indica si el mensaje fue enviado por el usuario actual.
+         * @param fila La fila a mostrar.
          */
-        public void bind(Mensaje mensaje, boolean esRemitente) {
-            // Ocultar todos los elementos primero
-            tvMensajeEnviado.setVisibility(View.GONE);
-            tvMensajeRecibido.setVisibility(View.GONE);
-            tvFechaEnviado.setVisibility(View.GONE);
-            tvFechaRecibido.setVisibility(View.GONE);
-
-            // Formatear la fecha y hora
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm dd/MM/yyyy", Locale.getDefault());
-            String fechaHora = sdf.format(mensaje.getFecha());
-
-            // Determinar si estamos en modo oscuro
-            boolean isDarkMode = (context.getResources().getConfiguration().uiMode &
-                    Configuration.UI_MODE_NIGHT_MASK) == Configuration.UI_MODE_NIGHT_YES;
-
-            // Elegir color de texto para fechas según el modo
-            int textColor = isDarkMode ? Color.LTGRAY : Color.BLACK;
+        public void bind(MensajeFila fila) {
+            TextView tvMensajeOculto = fila.esMio() ? tvMensajeRecibido : tvMensajeEnviado;
+            TextView tvFechaOculta = fila.esMio() ? tvFechaRecibido : tvFechaEnviado;
+            tvMensajeOculto.setVisibility(View.GONE);
+            tvFechaOculta.setVisibility(View.GONE);
+            mensaje(fila).setVisibility(View.VISIBLE);
+
+            actualizar(fila, MensajeDiffCallback.CAMBIO_TEXTO | MensajeDiffCallback.CAMBIO_HORA
+                    | MensajeDiffCallback.CAMBIO_GRUPO | MensajeDiffCallback.CAMBIO_DIA);
+        }
 
-            if (esRemitente) {
-                // Mensaje enviado por el usuario actual
-                tvMensajeEnviado.setVisibility(View.VISIBLE);
-                tvFechaEnviado.setVisibility(View.VISIBLE);
-                tvMensajeEnviado.setText(mensaje.getTexto());
-                tvFechaEnviado.setText(fechaHora);
-                tvFechaEnviado.setTextColor(textColor);
-            } else {
-                // Mensaje recibido de otro usuario
-                tvMensajeRecibido.setVisibility(View.VISIBLE);
-                tvFechaRecibido.setVisibility(View.VISIBLE);
-                tvMensajeRecibido.setText(mensaje.getTexto());
-                tvFechaRecibido.setText(fechaHora);
-                tvFechaRecibido.setTextColor(textColor);
+        /**
+         * Actualiza solo las partes de la fila que cambiaron, sin cambiar de lado el mensaje.
+         *
+         * @param fila    La fila a mostrar.
+         * @param cambios Combinación de las constantes CAMBIO_* de {@link MensajeDiffCallback}.
+         */
+        void actualizar(MensajeFila fila, int cambios) {
+            if ((cambios & MensajeDiffCallback.CAMBIO_DIA) != 0) {
+                // Encabezado del día, solo en la primera fila de cada día
+                String dia = fila.getEncabezadoDia();
+                tvDia.setVisibility(dia != null ? View.VISIBLE : View.GONE);
+                tvDia.setText(dia);
+            }
+            if ((cambios & MensajeDiffCallback.CAMBIO_TEXTO) != 0) {
+                mensaje(fila).setText(fila.getTexto());
+            }
+            if ((cambios & MensajeDiffCallback.CAMBIO_GRUPO) != 0) {
+                // Los mensajes seguidos del mismo remitente van juntos y solo el último muestra la hora
+                MensajeFila.PosicionGrupo posicion = fila.getPosicionGrupo();
+                itemView.setPadding(0, posicion.esInicio() ? espacioGrupo : espacioDentroGrupo,
+                        0, posicion.esFin() ? espacioGrupo : espacioDentroGrupo);
+                fecha(fila).setVisibility(posicion.esFin() ? View.VISIBLE : View.GONE);
+            }
+            if ((cambios & MensajeDiffCallback.CAMBIO_HORA) != 0) {
+                fecha(fila).setText(fila.getHora());
             }
         }
+
+        private TextView mensaje(MensajeFila fila) {
+            return fila.esMio() ? tvMensajeEnviado : tvMensajeRecibido;
+        }
+
+        private TextView fecha(MensajeFila fila) {
+            return fila.esMio() ? tvFechaEnviado : tvFechaRecibido;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package com.example.moviltpi.features.chat;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.FindCallback;
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historial local de mensajes por conversación, guardado en el almacenamiento local de Parse.
+ * Cada conversación usa su propia etiqueta de pin, de modo que se puede leer, compactar y borrar
+ * de forma independiente. Permite mostrar el chat al instante y leerlo sin conexión.
+ * <p>
+ * La compactación mantiene como máximo {@link #MAX_MENSAJES_LOCALES} mensajes por conversación
+ * (los más recientes); los más antiguos se vuelven a pedir al servidor al paginar hacia atrás.
+ * <p>
+ * Cada mensaje guardado se agrega también al índice de búsqueda de la conversación ({@link MensajeIndice}),
+ * que no se compacta: se puede buscar en toda la conversación vista, no solo en lo guardado.
+ */
+public class MensajeCache {
+
+    private static final String TAG = "MensajeCache";
+
+    /** Prefijo de las etiquetas de pin de las conversaciones */
+    private static final String PREFIJO_ETIQUETA = "historial_";
+
+    /** Cantidad máxima de mensajes guardados por conversación */
+    static final int MAX_MENSAJES_LOCALES = 500;
+
+    /** Cada cuántos mensajes guardados se revisa el tamaño de una conversación */
+    private static final int ESCRITURAS_ENTRE_COMPACTACIONES = 100;
+
+    /** Mensajes guardados desde la última compactación, por conversación */
+    private final Map<String, Integer> escriturasPendientes = new HashMap<>();
+
+    /** Índices de búsqueda de la aplicación */
+    private final MensajeIndice indice = MyApplication.getMensajeIndice();
+
+    /**
+     * Lee una página de una conversación desde el disco.
+     *
+     * @param clave    Clave de la conversación.
+     * @param antesDe  Si no es null, solo mensajes creados antes de esta fecha; si es null, los más recientes.
+     * @param limite   Cantidad máxima de mensajes.
+     * @param callback Recibe los mensajes del más reciente al más antiguo.
+     */
+    public void cargar(@NonNull String clave, @Nullable Date antesDe, int limite, @NonNull FindCallback<Mensaje> callback) {
+        ParseQuery<Mensaje> query = ParseQuery.getQuery(Mensaje.class);
+        query.fromPin(etiqueta(clave));
+        if (antesDe != null) {
+            query.whereLessThan("createdAt", antesDe);
+        }
+        query.addDescendingOrder("createdAt");
+        query.setLimit(limite);
+        query.findInBackground((mensajes, e) -> {
+            if (e == null) {
+                // Un historial guardado antes de que existiera el índice se indexa al leerlo
+                indice.agregar(clave, mensajes);
+            }
+            callback.done(mensajes, e);
+        });
+    }
+
+    /**
+     * Guarda mensajes recibidos del servidor en el historial y en el índice de búsqueda de la conversación.
+     * Guardar de nuevo un mensaje ya existente lo actualiza.
+     *
+     * @param clave    Clave de la conversación.
+     * @param mensajes Mensajes a guardar.
+     */
+    public void guardar(@NonNull String clave, @NonNull List<Mensaje> mensajes) {
+        if (mensajes.isEmpty()) {
+            return;
+        }
+        String etiqueta = etiqueta(clave);
+        ParseObject.pinAllInBackground(etiqueta, mensajes, e -> {
+            if (e != null) {
+                Log.e(TAG, "Error al guardar mensajes localmente: " + e.getMessage(), e);
+            }
+        });
+        indice.agregar(clave, mensajes);
+
+        // Los mensajes llegan desde el hilo de LiveQuery y desde el principal
+        boolean compactarAhora;
+        synchronized (escriturasPendientes) {
+            Integer pendientes = escriturasPendientes.get(clave);
+            int total = (pendientes != null ? pendientes : 0) + mensajes.size();
+            compactarAhora = total >= ESCRITURAS_ENTRE_COMPACTACIONES;
+            if (compactarAhora) {
+                escriturasPendientes.remove(clave);
+            } else {
+                escriturasPendientes.put(clave, total);
+            }
+        }
+        if (compactarAhora) {
+            compactar(clave);
+        }
+    }
+
+    /**
+     * Quita un mensaje eliminado del historial local y del índice de búsqueda.
+     *
+     * @param clave   Clave de la conversación.
+     * @param mensaje Mensaje eliminado.
+     */
+    public void eliminar(@NonNull String clave, @NonNull Mensaje mensaje) {
+        mensaje.unpinInBackground(etiqueta(clave), e -> {
+            if (e != null) {
+                Log.e(TAG, "Error al eliminar mensaje local: " + e.getMessage(), e);
+            }
+        });
+        if (mensaje.getObjectId() != null) {
+            indice.quitar(clave, mensaje.getObjectId());
+        }
+    }
+
+    /**
+     * Aplica el límite de tamaño a una conversación, quitando los mensajes más antiguos que sobren.
+     *
+     * @param clave Clave de la conversación.
+     */
+    public void compactar(@NonNull String clave) {
+        String etiqueta = etiqueta(clave);
+        ParseQuery<Mensaje> conteo = ParseQuery.getQuery(Mensaje.class);
+        conteo.fromPin(etiqueta);
+        conteo.countInBackground((cantidad, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error al contar mensajes locales: " + e.getMessage(), e);
+                return;
+            }
+            int sobrantes = cantidad - MAX_MENSAJES_LOCALES;
+            if (sobrantes <= 0) {
+                return;
+            }
+
+            ParseQuery<Mensaje> antiguos = ParseQuery.getQuery(Mensaje.class);
+            antiguos.fromPin(etiqueta);
+            antiguos.addAscendingOrder("createdAt");
+            antiguos.setLimit(sobrantes);
+            antiguos.findInBackground((mensajes, error) -> {
+                if (error != null) {
+                    Log.e(TAG, "Error al compactar historial local: " + error.getMessage(), error);
+                    return;
+                }
+                ParseObject.unpinAllInBackground(etiqueta, mensajes);
+                Log.d(TAG, "Historial " + clave + " compactado: " + mensajes.size() + " mensajes antiguos eliminados");
+            });
+        });
+    }
+
+    /**
+     * Borra todo el historial local de una conversación y su índice de búsqueda.
+     *
+     * @param clave Clave de la conversación.
+     */
+    public void borrar(@NonNull String clave) {
+        synchronized (escriturasPendientes) {
+            escriturasPendientes.remove(clave);
+        }
+        ParseObject.unpinAllInBackground(etiqueta(clave));
+        indice.borrar(clave);
+    }
+
+    private static String etiqueta(String clave) {
+        return PREFIJO_ETIQUETA + clave;
+    }
+}
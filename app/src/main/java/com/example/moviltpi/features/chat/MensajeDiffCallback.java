@@ -1,49 +1,60 @@
 package com.example.moviltpi.features.chat;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.DiffUtil;
 
-import com.example.moviltpi.core.models.Mensaje;
-
-import java.util.List;
+import java.util.Objects;
 
 /**
- * Clase de utilidad para DiffUtil que compara dos listas de objetos Mensaje para determinar las diferencias.
- * Se utiliza para actualizar eficientemente el RecyclerView de mensajes en la interfaz de chat.
+ * Compara filas de mensajes para DiffUtil. Se ejecuta en segundo plano desde {@link MensajeAdapter}.
+ * <p>
+ * Dos filas son el mismo elemento si tienen el mismo ID local; su contenido es igual si muestran la
+ * misma versión del mensaje (objectId, updatedAt y texto) con la misma presentación. Cuando solo cambia
+ * una parte, se devuelve qué partes cambiaron para que el ViewHolder actualice solo esas vistas.
  */
-public class MensajeDiffCallback extends DiffUtil.Callback {
-    private final List<Mensaje> oldList;
-    private final List<Mensaje> newList;
-
-    /**
-     * Constructor para MensajeDiffCallback.
-     *
-     * @param oldList La lista antigua de mensajes.
-     * @param newList La nueva lista de mensajes.
-     */
-    public MensajeDiffCallback(List<Mensaje> oldList, List<Mensaje> newList) {
-        this.oldList = oldList;
-        this.newList = newList;
-    }
+public class MensajeDiffCallback extends DiffUtil.ItemCallback<MensajeFila> {
 
-    @Override
-    public int getOldListSize() {
-        return oldList.size();
-    }
+    /** Cambió el texto del mensaje */
+    static final int CAMBIO_TEXTO = 1;
+    /** Cambió la hora o el estado de envío */
+    static final int CAMBIO_HORA = 1 << 1;
+    /** Cambió la posición en el grupo de mensajes seguidos */
+    static final int CAMBIO_GRUPO = 1 << 2;
+    /** Cambió el encabezado del día */
+    static final int CAMBIO_DIA = 1 << 3;
 
     @Override
-    public int getNewListSize() {
-        return newList.size();
+    public boolean areItemsTheSame(@NonNull MensajeFila oldItem, @NonNull MensajeFila newItem) {
+        // Mismo ID local, que no cambia al confirmarse el envío
+        return Objects.equals(oldItem.getIdLocal(), newItem.getIdLocal());
     }
 
     @Override
-    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-        // Compara si los objetos son el mismo elemento (tienen el mismo ID).
-        return oldList.get(oldItemPosition).getObjectId().equals(newList.get(newItemPosition).getObjectId());
+    public boolean areContentsTheSame(@NonNull MensajeFila oldItem, @NonNull MensajeFila newItem) {
+        return oldItem.equals(newItem);
     }
 
+    @Nullable
     @Override
-    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-        // Compara si los contenidos de los objetos son los mismos (todos los campos son iguales).
-        return oldList.get(oldItemPosition).equals(newList.get(newItemPosition));
+    public Object getChangePayload(@NonNull MensajeFila oldItem, @NonNull MensajeFila newItem) {
+        if (oldItem.esMio() != newItem.esMio()) {
+            // Cambia de lado: se vuelve a vincular entera
+            return null;
+        }
+        int cambios = 0;
+        if (!Objects.equals(oldItem.getTexto(), newItem.getTexto())) {
+            cambios |= CAMBIO_TEXTO;
+        }
+        if (!oldItem.getHora().equals(newItem.getHora())) {
+            cambios |= CAMBIO_HORA;
+        }
+        if (oldItem.getPosicionGrupo() != newItem.getPosicionGrupo()) {
+            cambios |= CAMBIO_GRUPO;
+        }
+        if (!Objects.equals(oldItem.getEncabezadoDia(), newItem.getEncabezadoDia())) {
+            cambios |= CAMBIO_DIA;
+        }
+        return cambios;
     }
-}
\ No newline at end of file
+}
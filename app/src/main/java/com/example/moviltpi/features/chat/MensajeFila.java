@@ -0,0 +1,128 @@
+package com.example.moviltpi.features.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Fila inmutable de la lista de mensajes, ya preparada para mostrar.
+ * <p>
+ * La construye {@link MensajeFilaMapper} fuera del hilo principal: la hora ya está formateada, se sabe si
+ * el mensaje es propio, qué lugar ocupa en su grupo de mensajes seguidos del mismo remitente y si abre un
+ * día nuevo. Así {@link MensajeAdapter} solo asigna campos al vincular.
+ */
+public final class MensajeFila {
+
+    /**
+     * Lugar de la fila dentro de un grupo de mensajes seguidos del mismo remitente.
+     */
+    public enum PosicionGrupo {
+        UNICA, PRIMERA, INTERMEDIA, ULTIMA;
+
+        /** Indica si la fila abre su grupo */
+        public boolean esInicio() {
+            return this == UNICA || this == PRIMERA;
+        }
+
+        /** Indica si la fila cierra su grupo; solo esas muestran la hora */
+        public boolean esFin() {
+            return this == UNICA || this == ULTIMA;
+        }
+    }
+
+    private final String idLocal;
+    @Nullable
+    private final String objectId;
+    private final long actualizado;
+    private final String texto;
+    private final String hora;
+    private final boolean esMio;
+    private final PosicionGrupo posicionGrupo;
+    @Nullable
+    private final String encabezadoDia;
+
+    /**
+     * @param idLocal       ID local del mensaje (clientId u objectId)
+     * @param objectId      ID del servidor, o null si el mensaje todavía no se guardó
+     * @param actualizado   updatedAt del mensaje, o null si todavía no se guardó
+     * @param texto         Texto del mensaje
+     * @param hora          Hora formateada, o el estado de envío si el mensaje no está confirmado
+     * @param esMio         true si lo envió el usuario actual
+     * @param posicionGrupo Lugar en su grupo de mensajes seguidos
+     * @param encabezadoDia Día a mostrar sobre la fila si es la primera de ese día, o null
+     */
+    public MensajeFila(String idLocal, @Nullable String objectId, @Nullable Date actualizado, String texto,
+                       @NonNull String hora, boolean esMio, @NonNull PosicionGrupo posicionGrupo,
+                       @Nullable String encabezadoDia) {
+        this.idLocal = idLocal;
+        this.objectId = objectId;
+        this.actualizado = actualizado != null ? actualizado.getTime() : 0;
+        this.texto = texto;
+        this.hora = hora;
+        this.esMio = esMio;
+        this.posicionGrupo = posicionGrupo;
+        this.encabezadoDia = encabezadoDia;
+    }
+
+    public String getIdLocal() {
+        return idLocal;
+    }
+
+    @Nullable
+    public String getObjectId() {
+        return objectId;
+    }
+
+    /**
+     * Indica si la fila muestra la misma versión del mensaje: mismo objectId, updatedAt y texto.
+     * Detecta las ediciones aunque el mensaje sea otra instancia, y la confirmación de un envío.
+     */
+    public boolean mismaVersion(@NonNull MensajeFila otra) {
+        return actualizado == otra.actualizado
+                && Objects.equals(objectId, otra.objectId)
+                && Objects.equals(texto, otra.texto);
+    }
+
+    public String getTexto() {
+        return texto;
+    }
+
+    @NonNull
+    public String getHora() {
+        return hora;
+    }
+
+    public boolean esMio() {
+        return esMio;
+    }
+
+    @NonNull
+    public PosicionGrupo getPosicionGrupo() {
+        return posicionGrupo;
+    }
+
+    @Nullable
+    public String getEncabezadoDia() {
+        return encabezadoDia;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MensajeFila)) return false;
+        MensajeFila otra = (MensajeFila) o;
+        return esMio == otra.esMio
+                && Objects.equals(idLocal, otra.idLocal)
+                && mismaVersion(otra)
+                && hora.equals(otra.hora)
+                && posicionGrupo == otra.posicionGrupo
+                && Objects.equals(encabezadoDia, otra.encabezadoDia);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(idLocal, objectId, actualizado, texto, hora, esMio, posicionGrupo, encabezadoDia);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.moviltpi.features.chat;
+
+import androidx.annotation.NonNull;
+
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.ParseUser;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Convierte la lista de mensajes en filas inmutables para {@link MensajeAdapter}.
+ * <p>
+ * Los formateadores de fecha se crean una sola vez y no son seguros entre hilos: cada instancia debe
+ * usarse siempre desde el mismo hilo (en {@link ChatViewModel}, su ejecutor en segundo plano).
+ */
+public class MensajeFilaMapper {
+
+    /** Separación máxima entre dos mensajes seguidos del mismo remitente para agruparlos */
+    private static final long AGRUPAR_MS = 5 * 60 * 1000;
+
+    /**
+     * Textos que dependen de los recursos de la aplicación.
+     */
+    public static final class Textos {
+        final String enviando;
+        final String noEnviado;
+        final String hoy;
+        final String ayer;
+
+        public Textos(String enviando, String noEnviado, String hoy, String ayer) {
+            this.enviando = enviando;
+            this.noEnviado = noEnviado;
+            this.hoy = hoy;
+            this.ayer = ayer;
+        }
+    }
+
+    private final Textos textos;
+    private final SimpleDateFormat formatoHora = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    private final SimpleDateFormat formatoDia = new SimpleDateFormat("EEEE d 'de' MMMM 'de' yyyy", Locale.getDefault());
+    private final Calendar calendario = Calendar.getInstance();
+
+    public MensajeFilaMapper(@NonNull Textos textos) {
+        this.textos = textos;
+    }
+
+    /**
+     * Construye las filas de una lista de mensajes ordenada por fecha.
+     *
+     * @param mensajes      Mensajes a mostrar
+     * @param currentUserId ID del usuario actual, para distinguir los mensajes propios
+     * @return Una fila por mensaje, en el mismo orden
+     */
+    public List<MensajeFila> construir(@NonNull List<Mensaje> mensajes, String currentUserId) {
+        int cantidad = mensajes.size();
+        long ahora = System.currentTimeMillis();
+        long diaHoy = dia(ahora);
+
+        // Primera pasada: remitente, fecha (los pendientes cuentan como ahora) y día de cada mensaje
+        String[] remitentes = new String[cantidad];
+        long[] fechas = new long[cantidad];
+        long[] dias = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            Mensaje mensaje = mensajes.get(i);
+            ParseUser remitente = mensaje.getRemitente();
+            remitentes[i] = remitente != null ? remitente.getObjectId() : null;
+            Date fecha = mensaje.getCreatedAt();
+            fechas[i] = fecha != null ? fecha.getTime() : ahora;
+            dias[i] = dia(fechas[i]);
+        }
+
+        List<MensajeFila> filas = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            Mensaje mensaje = mensajes.get(i);
+            boolean nuevoDia = i == 0 || dias[i] != dias[i - 1];
+            boolean continuaAnterior = !nuevoDia && mismoGrupo(remitentes, fechas, i - 1, i);
+            boolean continuaSiguiente = i + 1 < cantidad && dias[i + 1] == dias[i]
+                    && mismoGrupo(remitentes, fechas, i, i + 1);
+
+            MensajeFila.PosicionGrupo posicion;
+            if (continuaAnterior) {
+                posicion = continuaSiguiente ? MensajeFila.PosicionGrupo.INTERMEDIA : MensajeFila.PosicionGrupo.ULTIMA;
+            } else {
+                posicion = continuaSiguiente ? MensajeFila.PosicionGrupo.PRIMERA : MensajeFila.PosicionGrupo.UNICA;
+            }
+
+            filas.add(new MensajeFila(
+                    mensaje.getIdLocal(),
+                    mensaje.getObjectId(),
+                    mensaje.getUpdatedAt(),
+                    mensaje.getTexto(),
+                    hora(mensaje, fechas[i]),
+                    currentUserId != null && currentUserId.equals(remitentes[i]),
+                    posicion,
+                    nuevoDia ? encabezado(dias[i], diaHoy, fechas[i]) : null));
+        }
+        return filas;
+    }
+
+    private static boolean mismoGrupo(String[] remitentes, long[] fechas, int anterior, int siguiente) {
+        return remitentes[anterior] != null && remitentes[anterior].equals(remitentes[siguiente])
+                && fechas[siguiente] - fechas[anterior] <= AGRUPAR_MS;
+    }
+
+    private String hora(Mensaje mensaje, long fecha) {
+        switch (mensaje.getEstadoEnvio()) {
+            case ENVIANDO:
+                return textos.enviando;
+            case FALLIDO:
+                return textos.noEnviado;
+            default:
+                return formatoHora.format(new Date(fecha));
+        }
+    }
+
+    private String encabezado(long dia, long diaHoy, long fecha) {
+        if (dia == diaHoy) {
+            return textos.hoy;
+        }
+        calendario.setTimeInMillis(fecha);
+        calendario.add(Calendar.DAY_OF_YEAR, 1);
+        if (dia(calendario.getTimeInMillis()) == diaHoy) {
+            return textos.ayer;
+        }
+        return formatoDia.format(new Date(fecha));
+    }
+
+    /**
+     * Identifica el día local de un instante (año y día del año).
+     */
+    private long dia(long instante) {
+        calendario.setTimeInMillis(instante);
+        return calendario.get(Calendar.YEAR) * 1000L + calendario.get(Calendar.DAY_OF_YEAR);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.moviltpi.core.models.Mensaje;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Índices de búsqueda de los chats, creados por {@link com.example.moviltpi.core.MyApplication}.
+ * <p>
+ * Cada conversación tiene su {@link IndiceConversacion}, que se actualiza junto con el historial local
+ * ({@link MensajeCache}) con cada mensaje que recibe el chat, y se guarda en un archivo propio. Así una
+ * búsqueda se responde en memoria, sin consultas al servidor; incluye también los mensajes que la
+ * compactación ya quitó del historial local.
+ * <p>
+ * Todo el trabajo se hace en un único hilo; los resultados se entregan en el hilo principal. En memoria se
+ * mantienen solo los índices de las {@link #MAX_INDICES_MEMORIA} conversaciones usadas más recientemente.
+ */
+public class MensajeIndice {
+
+    private static final String TAG = "MensajeIndice";
+
+    /** Cantidad de índices de conversación que se mantienen en memoria */
+    private static final int MAX_INDICES_MEMORIA = 5;
+
+    /** Espera desde el primer cambio hasta guardar un índice, para agrupar las escrituras de una ráfaga */
+    private static final long INTERVALO_GUARDADO_MS = 3000;
+
+    /** Cantidad máxima de resultados por búsqueda */
+    static final int MAX_RESULTADOS = 50;
+
+    private final File directorio;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /** Índices cargados, del menos al más recientemente usado; solo en el hilo del índice */
+    private final Map<String, IndiceConversacion> indices = new LinkedHashMap<>(MAX_INDICES_MEMORIA + 1, 0.75f, true);
+
+    /** Conversaciones con cambios sin guardar; solo en el hilo del índice */
+    private final Set<String> sinGuardar = new HashSet<>();
+
+    /**
+     * Crea los índices.
+     *
+     * @param directorio Directorio privado de la aplicación donde se guarda un archivo por conversación.
+     */
+    public MensajeIndice(@NonNull File directorio) {
+        this.directorio = directorio;
+    }
+
+    /**
+     * Indexa mensajes guardados en el servidor; los que no tienen objectId o texto se ignoran.
+     *
+     * @param clave    Clave de la conversación.
+     * @param mensajes Mensajes nuevos o editados.
+     */
+    public void agregar(@NonNull String clave, @NonNull List<Mensaje> mensajes) {
+        List<IndiceConversacion.Documento> documentos = new ArrayList<>(mensajes.size());
+        for (Mensaje mensaje : mensajes) {
+            if (mensaje.getObjectId() != null && mensaje.getCreatedAt() != null && mensaje.getTexto() != null) {
+                documentos.add(new IndiceConversacion.Documento(
+                        mensaje.getObjectId(), mensaje.getCreatedAt().getTime(), mensaje.getTexto()));
+            }
+        }
+        if (documentos.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            IndiceConversacion indice = obtener(clave);
+            boolean cambio = false;
+            for (IndiceConversacion.Documento documento : documentos) {
+                cambio |= indice.agregar(documento.getId(), documento.getFecha(), documento.getTexto());
+            }
+            if (cambio) {
+                programarGuardado(clave);
+            }
+        });
+    }
+
+    /**
+     * Quita un mensaje eliminado del índice.
+     *
+     * @param clave Clave de la conversación.
+     * @param id    objectId del mensaje.
+     */
+    public void quitar(@NonNull String clave, @NonNull String id) {
+        executor.execute(() -> {
+            if (obtener(clave).quitar(id)) {
+                programarGuardado(clave);
+            }
+        });
+    }
+
+    /**
+     * Busca mensajes de una conversación.
+     *
+     * @param clave     Clave de la conversación.
+     * @param consulta  Texto buscado.
+     * @param resultado Recibe en el hilo principal los mensajes encontrados, del más reciente al más antiguo.
+     */
+    public void buscar(@NonNull String clave, @NonNull String consulta,
+                       @NonNull Consumer<List<IndiceConversacion.Documento>> resultado) {
+        executor.execute(() -> {
+            long inicio = System.nanoTime();
+            IndiceConversacion indice = obtener(clave);
+            List<IndiceConversacion.Documento> encontrados = indice.buscar(consulta, MAX_RESULTADOS);
+            Log.d(TAG, encontrados.size() + " resultados entre " + indice.getTamano() + " mensajes en "
+                    + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicio) + " µs");
+            handler.post(() -> resultado.accept(encontrados));
+        });
+    }
+
+    /**
+     * Borra el índice de una conversación, en memoria y en disco.
+     *
+     * @param clave Clave de la conversación.
+     */
+    public void borrar(@NonNull String clave) {
+        executor.execute(() -> {
+            indices.remove(clave);
+            sinGuardar.remove(clave);
+            if (archivo(clave).exists() && !archivo(clave).delete()) {
+                Log.w(TAG, "No se pudo borrar el índice de " + clave);
+            }
+        });
+    }
+
+    /**
+     * Obtiene el índice de una conversación, leyéndolo del disco si no está en memoria.
+     * Al superar el límite de memoria se descarta el menos usado, guardándolo antes si tenía cambios.
+     */
+    private IndiceConversacion obtener(String clave) {
+        IndiceConversacion indice = indices.get(clave);
+        if (indice != null) {
+            return indice;
+        }
+        indice = leer(clave);
+        indices.put(clave, indice);
+
+        Iterator<Map.Entry<String, IndiceConversacion>> iterador = indices.entrySet().iterator();
+        while (indices.size() > MAX_INDICES_MEMORIA && iterador.hasNext()) {
+            Map.Entry<String, IndiceConversacion> entrada = iterador.next();
+            if (sinGuardar.remove(entrada.getKey())) {
+                escribir(entrada.getKey(), entrada.getValue());
+            }
+            iterador.remove();
+        }
+        return indice;
+    }
+
+    private void programarGuardado(String clave) {
+        if (sinGuardar.add(clave)) {
+            executor.schedule(() -> {
+                IndiceConversacion indice = indices.get(clave);
+                if (sinGuardar.remove(clave) && indice != null) {
+                    escribir(clave, indice);
+                }
+            }, INTERVALO_GUARDADO_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private IndiceConversacion leer(String clave) {
+        File archivo = archivo(clave);
+        if (!archivo.exists()) {
+            return new IndiceConversacion();
+        }
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(archivo)))) {
+            return IndiceConversacion.leer(entrada);
+        } catch (IOException e) {
+            // Se vuelve a construir con los mensajes que lleguen a partir de ahora
+            Log.e(TAG, "Índice de " + clave + " ilegible, se descarta: " + e.getMessage(), e);
+            return new IndiceConversacion();
+        }
+    }
+
+    /**
+     * Escribe el índice en un archivo temporal y lo renombra, para no dejar un archivo a medio escribir.
+     */
+    private void escribir(String clave, IndiceConversacion indice) {
+        if (!directorio.exists() && !directorio.mkdirs()) {
+            Log.e(TAG, "No se pudo crear el directorio de índices");
+            return;
+        }
+        File archivo = archivo(clave);
+        File temporal = new File(directorio, archivo.getName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal)))) {
+            indice.escribir(salida);
+        } catch (IOException e) {
+            Log.e(TAG, "Error al guardar el índice de " + clave + ": " + e.getMessage(), e);
+            return;
+        }
+        if (!temporal.renameTo(archivo)) {
+            Log.e(TAG, "No se pudo reemplazar el índice de " + clave);
+        }
+    }
+
+    private File archivo(String clave) {
+        return new File(directorio, clave + ".idx");
+    }
+}
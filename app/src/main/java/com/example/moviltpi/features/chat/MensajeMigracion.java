@@ -0,0 +1,141 @@
+package com.example.moviltpi.features.chat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.ParseObject;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Migración que completa {@link Mensaje#KEY_CONVERSACION_ID} en los mensajes creados antes de que
+ * existiera el campo. Se ejecuta una vez por usuario, en lotes, sobre los mensajes que envió o recibió.
+ * <p>
+ * Mientras no termine, {@link ChatProvider} sigue usando la consulta por remitente y destinatario,
+ * para no ocultar mensajes antiguos que todavía no tienen el campo.
+ */
+public final class MensajeMigracion {
+
+    private static final String TAG = "MensajeMigracion";
+    private static final String PREFS = "chat_migraciones";
+    private static final String PREFIJO_CLAVE = "conversacionId_";
+
+    /** Mensajes actualizados por lote */
+    private static final int TAMANO_LOTE = 200;
+
+    /** Indica si la migración del usuario actual ya terminó */
+    private static volatile boolean completada = false;
+
+    /** Evita lanzar la migración dos veces en paralelo */
+    private static boolean enCurso = false;
+
+    private MensajeMigracion() {
+    }
+
+    /**
+     * Indica si ya se puede consultar por {@link Mensaje#KEY_CONVERSACION_ID}.
+     *
+     * @return true si la migración del usuario actual terminó.
+     */
+    public static boolean isCompletada() {
+        return completada;
+    }
+
+    /**
+     * Lanza la migración si el usuario actual todavía no la completó. Debe llamarse desde el hilo principal.
+     *
+     * @param context Contexto para leer y guardar la marca de migración.
+     */
+    public static void ejecutarSiHaceFalta(@NonNull Context context) {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (currentUser == null || enCurso) {
+            return;
+        }
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String clave = PREFIJO_CLAVE + currentUser.getObjectId();
+        if (prefs.getBoolean(clave, false)) {
+            completada = true;
+            return;
+        }
+
+        completada = false;
+        enCurso = true;
+        Log.d(TAG, "Iniciando migración de conversacionId");
+        migrarLote(currentUser, prefs, clave, 0);
+    }
+
+    /**
+     * Busca un lote de mensajes sin conversacionId y los actualiza; se repite hasta que no quedan.
+     */
+    private static void migrarLote(ParseUser usuario, SharedPreferences prefs, String clave, int total) {
+        ParseQuery<Mensaje> enviados = ParseQuery.getQuery(Mensaje.class);
+        enviados.whereEqualTo(Mensaje.KEY_REMITENTE, usuario);
+
+        ParseQuery<Mensaje> recibidos = ParseQuery.getQuery(Mensaje.class);
+        recibidos.whereEqualTo(Mensaje.KEY_DESTINATARIO, usuario);
+
+        List<ParseQuery<Mensaje>> queries = new ArrayList<>();
+        queries.add(enviados);
+        queries.add(recibidos);
+
+        ParseQuery<Mensaje> query = ParseQuery.or(queries);
+        query.whereDoesNotExist(Mensaje.KEY_CONVERSACION_ID);
+        query.selectKeys(Arrays.asList(Mensaje.KEY_REMITENTE, Mensaje.KEY_DESTINATARIO));
+        query.setLimit(TAMANO_LOTE);
+
+        query.findInBackground((mensajes, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error al buscar mensajes a migrar: " + e.getMessage(), e);
+                enCurso = false;
+                return;
+            }
+            if (mensajes.isEmpty()) {
+                terminar(prefs, clave, total);
+                return;
+            }
+
+            List<Mensaje> lote = new ArrayList<>();
+            for (Mensaje mensaje : mensajes) {
+                ParseUser remitente = mensaje.getRemitente();
+                ParseUser destinatario = mensaje.getDestinatario();
+                if (remitente == null || destinatario == null) {
+                    continue;
+                }
+                mensaje.setConversacionId(Conversacion.calcularClave(remitente.getObjectId(), destinatario.getObjectId()));
+                lote.add(mensaje);
+            }
+
+            ParseObject.saveAllInBackground(lote, error -> {
+                if (error != null) {
+                    Log.e(TAG, "Error al guardar el lote migrado: " + error.getMessage(), error);
+                    enCurso = false;
+                    return;
+                }
+                int migrados = total + lote.size();
+                Log.d(TAG, "Mensajes migrados: " + migrados);
+                if (mensajes.size() < TAMANO_LOTE || lote.isEmpty()) {
+                    // Último lote, o solo quedan mensajes sin participantes que no se pueden migrar
+                    terminar(prefs, clave, migrados);
+                } else {
+                    migrarLote(usuario, prefs, clave, migrados);
+                }
+            });
+        });
+    }
+
+    private static void terminar(SharedPreferences prefs, String clave, int total) {
+        prefs.edit().putBoolean(clave, true).apply();
+        completada = true;
+        enCurso = false;
+        Log.d(TAG, "Migración de conversacionId completada: " + total + " mensajes");
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.moviltpi.core.LiveQueryManager;
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.ParseException;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cola de salida de mensajes del chat, compartida por toda la aplicación.
+ * <p>
+ * Un mensaje encolado recibe un {@link Mensaje#KEY_CLIENT_ID} generado en el dispositivo, se muestra
+ * al instante como "enviando" y se guarda en segundo plano. Si el guardado falla se reintenta con
+ * backoff exponencial y jitter; al agotar los intentos queda como fallido hasta que LiveQuery
+ * vuelve a conectarse o la aplicación se reinicia. Los pendientes se guardan en el almacenamiento
+ * local de Parse, así que sobreviven a que el sistema mate el proceso.
+ * <p>
+ * Antes de reintentar se busca el clientId en el servidor: si el guardado anterior llegó pero se perdió
+ * la respuesta, se toma ese mensaje en lugar de crear un duplicado.
+ * <p>
+ * Todos los métodos deben llamarse desde el hilo principal.
+ */
+public class MensajeOutbox {
+
+    private static final String TAG = "MensajeOutbox";
+
+    /** Etiqueta de pin de los mensajes pendientes */
+    private static final String ETIQUETA = "chat_outbox";
+
+    /** Intentos de guardado antes de marcar el mensaje como fallido */
+    private static final int MAX_INTENTOS = 5;
+
+    /** Espera base y máxima entre reintentos */
+    private static final long REINTENTO_BASE_MS = 2000;
+    private static final long REINTENTO_MAX_MS = 60000;
+
+    /**
+     * Recibe los cambios de estado de los mensajes encolados, en el hilo principal.
+     */
+    public interface Listener {
+        /**
+         * El mensaje quedó guardado en el servidor.
+         *
+         * @param guardado Mensaje con objectId y createdAt; puede ser otra instancia con el mismo clientId.
+         */
+        void onEnviado(Mensaje guardado);
+
+        /**
+         * Se agotaron los reintentos del mensaje; sigue pendiente.
+         */
+        void onFallido(Mensaje mensaje);
+    }
+
+    /** Mensajes pendientes por clientId, en orden de envío */
+    private final Map<String, Mensaje> pendientes = new LinkedHashMap<>();
+
+    /** clientIds con un guardado o una verificación en curso */
+    private final Set<String> enVuelo = new HashSet<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConversacionProvider conversacionProvider = new ConversacionProvider();
+    private final LatenciaChat latencia = MyApplication.getLatenciaChat();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+
+    /** Indica si ya se leyeron los pendientes guardados en el dispositivo */
+    private boolean restaurado = false;
+
+    /**
+     * Crea la cola. Si hay gestor de LiveQuery, cada reconexión reintenta los mensajes fallidos.
+     *
+     * @param liveQueryManager Gestor de LiveQuery de la aplicación, o null.
+     */
+    public MensajeOutbox(@Nullable LiveQueryManager liveQueryManager) {
+        if (liveQueryManager != null) {
+            liveQueryManager.getEstado().observeForever(estado -> {
+                if (estado == LiveQueryManager.EstadoConexion.CONECTADO) {
+                    reanudar();
+                }
+            });
+        }
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Encola un mensaje nuevo: le asigna un clientId y la hora de envío, lo guarda en el dispositivo y
+     * empieza a enviarlo.
+     *
+     * @param mensaje Mensaje sin guardar, con texto, participantes y conversacionId.
+     */
+    public void encolar(@NonNull Mensaje mensaje) {
+        String clientId = UUID.randomUUID().toString();
+        mensaje.setClientId(clientId);
+        mensaje.setEnviadoEn(new Date());
+        latencia.enviado(clientId);
+        pendientes.put(clientId, mensaje);
+        mensaje.pinInBackground(ETIQUETA, e -> {
+            if (e != null) {
+                Log.e(TAG, "Error al guardar el mensaje pendiente en el dispositivo: " + e.getMessage(), e);
+            }
+        });
+        enviar(mensaje, 0);
+    }
+
+    /**
+     * Obtiene los mensajes pendientes de una conversación, para mostrarlos al abrirla.
+     *
+     * @param clave Clave de la conversación.
+     * @return Mensajes sin confirmar, en orden de envío.
+     */
+    public List<Mensaje> getPendientes(@NonNull String clave) {
+        List<Mensaje> resultado = new ArrayList<>();
+        for (Mensaje mensaje : pendientes.values()) {
+            if (clave.equals(mensaje.getConversacionId())) {
+                resultado.add(mensaje);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Recupera los pendientes guardados en el dispositivo (la primera vez) y reintenta los fallidos.
+     */
+    public void reanudar() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (currentUser == null) {
+            return;
+        }
+        if (!restaurado) {
+            restaurado = true;
+            restaurar(currentUser);
+        }
+        for (Mensaje mensaje : new ArrayList<>(pendientes.values())) {
+            if (mensaje.getEstadoEnvio() == Mensaje.EstadoEnvio.FALLIDO) {
+                mensaje.setEnvioFallido(false);
+                enviar(mensaje, 1);
+            }
+        }
+    }
+
+    /**
+     * Lee los mensajes que quedaron pendientes de una sesión anterior y los vuelve a enviar.
+     */
+    private void restaurar(ParseUser currentUser) {
+        ParseQuery<Mensaje> query = ParseQuery.getQuery(Mensaje.class);
+        query.fromPin(ETIQUETA);
+        query.findInBackground((guardados, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Error al leer los mensajes pendientes: " + e.getMessage(), e);
+                return;
+            }
+            for (Mensaje mensaje : guardados) {
+                String clientId = mensaje.getClientId();
+                ParseUser remitente = mensaje.getRemitente();
+                if (clientId == null || pendientes.containsKey(clientId) || remitente == null
+                        || !currentUser.getObjectId().equals(remitente.getObjectId())) {
+                    continue;
+                }
+                Log.d(TAG, "Reenviando mensaje pendiente de una sesión anterior: " + clientId);
+                pendientes.put(clientId, mensaje);
+                // Puede que el guardado anterior haya llegado al servidor: verificar antes de reenviar
+                enviar(mensaje, 1);
+            }
+        });
+    }
+
+    /**
+     * Envía un mensaje pendiente. Desde el segundo intento se verifica primero si ya está en el servidor.
+     */
+    private void enviar(Mensaje mensaje, int intento) {
+        String clientId = mensaje.getClientId();
+        if (!pendientes.containsKey(clientId) || enVuelo.contains(clientId)) {
+            return;
+        }
+        enVuelo.add(clientId);
+        if (intento == 0) {
+            guardar(mensaje, intento);
+            return;
+        }
+
+        ParseQuery<Mensaje> query = ParseQuery.getQuery(Mensaje.class);
+        query.whereEqualTo(Mensaje.KEY_CLIENT_ID, clientId);
+        query.getFirstInBackground((existente, e) -> {
+            if (existente != null) {
+                Log.d(TAG, "El mensaje " + clientId + " ya estaba en el servidor");
+                enVuelo.remove(clientId);
+                confirmar(mensaje, existente);
+            } else if (e != null && e.getCode() == ParseException.OBJECT_NOT_FOUND) {
+                guardar(mensaje, intento);
+            } else {
+                enVuelo.remove(clientId);
+                programarReintento(mensaje, intento, e);
+            }
+        });
+    }
+
+    private void guardar(Mensaje mensaje, int intento) {
+        mensaje.saveInBackground(e -> {
+            enVuelo.remove(mensaje.getClientId());
+            if (e == null) {
+                confirmar(mensaje, mensaje);
+            } else {
+                programarReintento(mensaje, intento, e);
+            }
+        });
+    }
+
+    /**
+     * Programa el siguiente intento con backoff exponencial y jitter, o marca el mensaje como fallido.
+     */
+    private void programarReintento(Mensaje mensaje, int intento, @Nullable Exception error) {
+        Log.e(TAG, "Error al enviar el mensaje " + mensaje.getClientId() + " (intento " + (intento + 1) + "): "
+                + (error != null ? error.getMessage() : "desconocido"), error);
+        if (intento + 1 >= MAX_INTENTOS) {
+            mensaje.setEnvioFallido(true);
+            for (Listener listener : listeners) {
+                listener.onFallido(mensaje);
+            }
+            return;
+        }
+        long tope = Math.min(REINTENTO_MAX_MS, REINTENTO_BASE_MS << intento);
+        long espera = REINTENTO_BASE_MS / 2 + (long) (random.nextDouble() * tope);
+        handler.postDelayed(() -> enviar(mensaje, intento + 1), espera);
+    }
+
+    /**
+     * Da por enviado un mensaje: lo quita de la cola, actualiza la bandeja y avisa a los oyentes.
+     *
+     * @param pendiente Instancia encolada.
+     * @param guardado  Mensaje del servidor (la misma instancia, o la encontrada por clientId).
+     */
+    private void confirmar(Mensaje pendiente, Mensaje guardado) {
+        if (pendientes.remove(pendiente.getClientId()) == null) {
+            return;
+        }
+        pendiente.setEnvioFallido(false);
+        latencia.guardado(pendiente.getClientId());
+        pendiente.unpinInBackground(ETIQUETA, e -> {
+            if (e != null) {
+                Log.e(TAG, "Error al quitar el mensaje enviado de la cola local: " + e.getMessage(), e);
+            }
+        });
+        conversacionProvider.registrarMensaje(guardado);
+        for (Listener listener : listeners) {
+            listener.onEnviado(guardado);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.moviltpi.features.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.moviltpi.core.LiveQueryManager;
+import com.example.moviltpi.core.models.Conversacion;
+import com.example.moviltpi.core.models.Mensaje;
+import com.parse.ParseQuery;
+import com.parse.ParseUser;
+import com.parse.livequery.SubscriptionHandling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Suscripción única de la aplicación a los mensajes del usuario actual, creada por
+ * {@link com.example.moviltpi.core.MyApplication}.
+ * <p>
+ * En lugar de una suscripción LiveQuery por chat abierto, hay una sola para todos los mensajes en los
+ * que participa el usuario, y los eventos se reparten:
+ * - A la conversación abierta correspondiente, si la hay ({@link #abrir(String, LiveQueryManager.Listener)}).
+ *   Una conversación está abierta mientras el chat conserva su sesión en memoria, aunque no esté a la vista
+ * - A la bandeja de entrada, para mover la conversación arriba y actualizar su último mensaje
+ * - Al contador de no leídos y a la notificación dentro de la app, si la conversación no está a la vista
+ * <p>
+ * Se incluyen también los mensajes enviados por el usuario (por ejemplo, desde otro dispositivo, o el eco
+ * de los que confirma la cola de salida); sigue siendo una única suscripción.
+ */
+public class MensajeRouter {
+
+    private static final String TAG = "MensajeRouter";
+
+    /** Prefijo de la clave de la suscripción en el gestor */
+    private static final String PREFIJO_SUSCRIPCION = "mensajes:";
+
+    @Nullable
+    private final LiveQueryManager liveQueryManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /** Oyentes de las conversaciones abiertas por clave; se leen desde el hilo del socket */
+    private final Map<String, LiveQueryManager.Listener<Mensaje>> abiertas = new ConcurrentHashMap<>();
+
+    /** Oyentes de la bandeja de entrada; se llaman en el hilo principal */
+    private final List<Consumer<Mensaje>> oyentesBandeja = new CopyOnWriteArrayList<>();
+
+    /** Mensajes recibidos en conversaciones que no estaban a la vista durante esta sesión, por clave; solo en el hilo principal */
+    private final Map<String, Integer> noLeidos = new HashMap<>();
+
+    /** Clave de la conversación que se muestra en pantalla, o null; solo en el hilo principal */
+    @Nullable
+    private String claveVisible;
+
+    private final MutableLiveData<Integer> totalNoLeidos = new MutableLiveData<>(0);
+    private final MutableLiveData<Mensaje> notificacion = new MutableLiveData<>();
+
+    /** Clave de la suscripción activa, o null si no se inició */
+    private String claveSuscripcion;
+
+    /** Indica si el servidor confirmó la suscripción y la conexión sigue abierta */
+    private volatile boolean suscrito = false;
+
+    private final LiveQueryManager.Listener<Mensaje> listener = new LiveQueryManager.Listener<Mensaje>() {
+        @Override
+        public void onEvento(SubscriptionHandling.Event event, Mensaje mensaje) {
+            String clave = claveDe(mensaje);
+            if (clave == null) {
+                return;
+            }
+            LiveQueryManager.Listener<Mensaje> abierta = abiertas.get(clave);
+            if (abierta != null) {
+                abierta.onEvento(event, mensaje);
+            }
+            if (event == SubscriptionHandling.Event.CREATE) {
+                handler.post(() -> onMensajeRecibido(clave, mensaje));
+            }
+        }
+
+        @Override
+        public void onSuscrito() {
+            suscrito = true;
+            for (LiveQueryManager.Listener<Mensaje> abierta : abiertas.values()) {
+                abierta.onSuscrito();
+            }
+        }
+    };
+
+    /**
+     * Crea el router. No se suscribe hasta {@link #iniciar()}.
+     *
+     * @param liveQueryManager Gestor de LiveQuery de la aplicación, o null si no está disponible.
+     */
+    public MensajeRouter(@Nullable LiveQueryManager liveQueryManager) {
+        this.liveQueryManager = liveQueryManager;
+        if (liveQueryManager != null) {
+            liveQueryManager.getEstado().observeForever(estado -> {
+                if (estado != LiveQueryManager.EstadoConexion.CONECTADO) {
+                    suscrito = false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Abre la suscripción del usuario actual, si todavía no está abierta. Debe llamarse desde el hilo
+     * principal una vez iniciada la sesión.
+     */
+    public void iniciar() {
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        if (liveQueryManager == null || currentUser == null) {
+            return;
+        }
+        String clave = PREFIJO_SUSCRIPCION + currentUser.getObjectId();
+        if (clave.equals(claveSuscripcion)) {
+            return;
+        }
+        detener();
+
+        ParseQuery<Mensaje> recibidos = ParseQuery.getQuery(Mensaje.class);
+        recibidos.whereEqualTo(Mensaje.KEY_DESTINATARIO, currentUser);
+        ParseQuery<Mensaje> enviados = ParseQuery.getQuery(Mensaje.class);
+        enviados.whereEqualTo(Mensaje.KEY_REMITENTE, currentUser);
+        List<ParseQuery<Mensaje>> queries = new ArrayList<>();
+        queries.add(recibidos);
+        queries.add(enviados);
+
+        claveSuscripcion = clave;
+        liveQueryManager.suscribir(clave, ParseQuery.or(queries), listener);
+        Log.d(TAG, "Suscripción de mensajes iniciada para " + currentUser.getUsername());
+    }
+
+    /**
+     * Cierra la suscripción y olvida los contadores, por ejemplo al cerrar la sesión.
+     */
+    public void detener() {
+        if (claveSuscripcion != null && liveQueryManager != null) {
+            liveQueryManager.desuscribir(claveSuscripcion, listener);
+        }
+        claveSuscripcion = null;
+        suscrito = false;
+        noLeidos.clear();
+        totalNoLeidos.setValue(0);
+    }
+
+    /**
+     * Registra una conversación con sesión en memoria; sus eventos le llegan en el hilo del socket.
+     * Si la suscripción ya está confirmada, se avisa de inmediato con {@link LiveQueryManager.Listener#onSuscrito()}.
+     * Debe llamarse desde el hilo principal.
+     *
+     * @param clave    Clave de la conversación.
+     * @param oyente   Oyente de la conversación.
+     */
+    public void abrir(@NonNull String clave, @NonNull LiveQueryManager.Listener<Mensaje> oyente) {
+        abiertas.put(clave, oyente);
+        if (suscrito) {
+            oyente.onSuscrito();
+        }
+    }
+
+    /**
+     * Quita una conversación abierta. Debe llamarse desde el hilo principal.
+     *
+     * @param clave  Clave usada al abrirla.
+     * @param oyente Oyente registrado.
+     */
+    public void cerrar(@NonNull String clave, @NonNull LiveQueryManager.Listener<Mensaje> oyente) {
+        abiertas.remove(clave, oyente);
+    }
+
+    /**
+     * Indica qué conversación se muestra en pantalla: sus mensajes no suman no leídos ni notificaciones,
+     * y se olvidan los que tenía. Debe llamarse desde el hilo principal.
+     *
+     * @param clave Clave de la conversación visible, o null si no se muestra ninguna.
+     */
+    public void setVisible(@Nullable String clave) {
+        claveVisible = clave;
+        if (clave != null && noLeidos.remove(clave) != null) {
+            publicarTotal();
+        }
+    }
+
+    /**
+     * Indica si la suscripción está confirmada por el servidor.
+     */
+    public boolean isSuscrito() {
+        return suscrito;
+    }
+
+    /**
+     * Registra un oyente de la bandeja de entrada, que recibe cada mensaje nuevo en el hilo principal.
+     */
+    public void addOyenteBandeja(@NonNull Consumer<Mensaje> oyente) {
+        oyentesBandeja.add(oyente);
+    }
+
+    public void removeOyenteBandeja(@NonNull Consumer<Mensaje> oyente) {
+        oyentesBandeja.remove(oyente);
+    }
+
+    /**
+     * Obtiene la cantidad de mensajes recibidos en conversaciones que no estaban a la vista durante esta sesión.
+     */
+    public LiveData<Integer> getTotalNoLeidos() {
+        return totalNoLeidos;
+    }
+
+    /**
+     * Obtiene el último mensaje recibido en una conversación que no estaba a la vista, para mostrar una notificación
+     * dentro de la app. Vale null cuando no hay ninguna pendiente de mostrar.
+     */
+    public LiveData<Mensaje> getNotificacion() {
+        return notificacion;
+    }
+
+    /**
+     * Marca como mostrada la última notificación, para que no se repita al recrear la actividad.
+     */
+    public void consumirNotificacion() {
+        notificacion.setValue(null);
+    }
+
+    /**
+     * Reparte un mensaje nuevo a la bandeja y, si su conversación no está a la vista y no lo envió el
+     * usuario actual, suma un no leído y genera la notificación.
+     */
+    private void onMensajeRecibido(String clave, Mensaje mensaje) {
+        for (Consumer<Mensaje> oyente : oyentesBandeja) {
+            oyente.accept(mensaje);
+        }
+        ParseUser currentUser = ParseUser.getCurrentUser();
+        ParseUser remitente = mensaje.getRemitente();
+        if (clave.equals(claveVisible) || currentUser == null || remitente == null
+                || currentUser.getObjectId().equals(remitente.getObjectId())) {
+            return;
+        }
+        Integer actual = noLeidos.get(clave);
+        noLeidos.put(clave, actual != null ? actual + 1 : 1);
+        publicarTotal();
+        notificacion.setValue(mensaje);
+    }
+
+    private void publicarTotal() {
+        int total = 0;
+        for (int cantidad : noLeidos.values()) {
+            total += cantidad;
+        }
+        totalNoLeidos.setValue(total);
+    }
+
+    /**
+     * Obtiene la conversación de un mensaje; los anteriores a {@link Mensaje#KEY_CONVERSACION_ID}
+     * la calculan a partir de los participantes.
+     */
+    @Nullable
+    private static String claveDe(Mensaje mensaje) {
+        String clave = mensaje.getConversacionId();
+        if (clave != null) {
+            return clave;
+        }
+        ParseUser remitente = mensaje.getRemitente();
+        ParseUser destinatario = mensaje.getDestinatario();
+        if (remitente == null || destinatario == null) {
+            return null;
+        }
+        return Conversacion.calcularClave(remitente.getObjectId(), destinatario.getObjectId());
+    }
+}
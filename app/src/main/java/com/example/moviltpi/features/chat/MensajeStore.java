@@ -0,0 +1,288 @@
+package com.example.moviltpi.features.chat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Almacén ordenado de los mensajes de una conversación.
+ * Mantiene la lista ordenada por fecha de creación (y por ID ante empates) junto con un índice por ID,
+ * de modo que agregar, actualizar o eliminar un mensaje cuesta una búsqueda binaria en lugar de
+ * copiar y reordenar toda la lista. Los mensajes nuevos suelen ser los más recientes, por lo que
+ * la inserción casi siempre ocurre al final.
+ * <p>
+ * Es genérico para no depender de Parse; {@link ChatEngine} lo usa desde su único hilo. Los métodos
+ * siguen sincronizados para que el almacén también sea seguro si se usa por fuera del motor.
+ *
+ * @param <T> Tipo de mensaje almacenado.
+ */
+public class MensajeStore<T> {
+
+    /**
+     * Extrae las claves de orden de un mensaje.
+     *
+     * @param <T> Tipo de mensaje.
+     */
+    public interface Claves<T> {
+        /** @return ID único del mensaje, o null si todavía no fue guardado. */
+        String getId(T mensaje);
+
+        /** @return Fecha de creación asignada por el servidor, o null si no la tiene. */
+        Date getFecha(T mensaje);
+    }
+
+    private final Claves<T> claves;
+
+    /** Mensajes ordenados por (fecha, id) */
+    private final ArrayList<T> mensajes = new ArrayList<>();
+
+    /** Índice por ID para ubicar un mensaje sin recorrer la lista */
+    private final Map<String, T> porId = new HashMap<>();
+
+    /** Última instantánea generada; se descarta en cada modificación */
+    private List<T> snapshot = Collections.emptyList();
+    private boolean snapshotValida = true;
+
+    /**
+     * Crea un almacén vacío.
+     *
+     * @param claves Extractor de ID y fecha de los mensajes.
+     */
+    public MensajeStore(Claves<T> claves) {
+        this.claves = claves;
+    }
+
+    /**
+     * Agrega un mensaje si todavía no está en el almacén.
+     *
+     * @param mensaje Mensaje a agregar; se ignora si no tiene ID.
+     * @return true si el mensaje se agregó.
+     */
+    public synchronized boolean agregar(T mensaje) {
+        String id = claves.getId(mensaje);
+        if (id == null || porId.containsKey(id)) {
+            return false;
+        }
+        insertarOrdenado(mensaje);
+        porId.put(id, mensaje);
+        snapshotValida = false;
+        return true;
+    }
+
+    /**
+     * Agrega varios mensajes, ignorando los que ya estén en el almacén.
+     *
+     * @param nuevos Mensajes a agregar.
+     * @return Cantidad de mensajes efectivamente agregados.
+     */
+    public synchronized int agregarTodos(Collection<T> nuevos) {
+        int agregados = 0;
+        for (T mensaje : nuevos) {
+            if (agregar(mensaje)) {
+                agregados++;
+            }
+        }
+        return agregados;
+    }
+
+    /**
+     * Reemplaza un mensaje existente, o lo agrega si no estaba. Si se pasa la misma instancia ya guardada
+     * (por ejemplo, porque recibió su fecha al guardarse) se vuelve a ubicar en su posición de orden.
+     *
+     * @param mensaje Versión actualizada del mensaje.
+     * @return true si el almacén cambió.
+     */
+    public synchronized boolean actualizar(T mensaje) {
+        String id = claves.getId(mensaje);
+        if (id == null) {
+            return false;
+        }
+        T anterior = porId.get(id);
+        if (anterior == null) {
+            return agregar(mensaje);
+        }
+        int posicion = posicionDe(anterior);
+        if (posicion >= 0 && anterior != mensaje && igualFecha(claves.getFecha(anterior), claves.getFecha(mensaje))) {
+            // Misma posición de orden: reemplazo directo
+            mensajes.set(posicion, mensaje);
+        } else {
+            if (posicion >= 0) {
+                mensajes.remove(posicion);
+            }
+            insertarOrdenado(mensaje);
+        }
+        porId.put(id, mensaje);
+        snapshotValida = false;
+        return true;
+    }
+
+    /**
+     * Elimina un mensaje por su ID.
+     *
+     * @param id ID del mensaje.
+     * @return true si el mensaje estaba en el almacén.
+     */
+    public synchronized boolean eliminar(String id) {
+        T anterior = id != null ? porId.remove(id) : null;
+        if (anterior == null) {
+            return false;
+        }
+        int posicion = posicionDe(anterior);
+        if (posicion >= 0) {
+            mensajes.remove(posicion);
+        }
+        snapshotValida = false;
+        return true;
+    }
+
+    /**
+     * Indica si el almacén contiene un mensaje con el ID dado.
+     */
+    public synchronized boolean contiene(String id) {
+        return id != null && porId.containsKey(id);
+    }
+
+    /**
+     * @return Cantidad de mensajes almacenados.
+     */
+    public synchronized int tamano() {
+        return mensajes.size();
+    }
+
+    /**
+     * Descarta los mensajes más antiguos hasta dejar como máximo la cantidad indicada.
+     *
+     * @param maximo Cantidad máxima de mensajes a conservar.
+     * @return Mensajes descartados, del más antiguo al más reciente.
+     */
+    public synchronized List<T> recortarAntiguos(int maximo) {
+        int sobrantes = mensajes.size() - maximo;
+        if (sobrantes <= 0) {
+            return Collections.emptyList();
+        }
+        List<T> descartados = new ArrayList<>(mensajes.subList(0, sobrantes));
+        mensajes.subList(0, sobrantes).clear();
+        for (T mensaje : descartados) {
+            porId.remove(claves.getId(mensaje));
+        }
+        snapshotValida = false;
+        return descartados;
+    }
+
+    /**
+     * @return El mensaje más antiguo, o null si el almacén está vacío.
+     */
+    public synchronized T primero() {
+        return mensajes.isEmpty() ? null : mensajes.get(0);
+    }
+
+    /**
+     * Vacía el almacén.
+     */
+    public synchronized void limpiar() {
+        mensajes.clear();
+        porId.clear();
+        snapshotValida = false;
+    }
+
+    /**
+     * Devuelve una copia inmutable de los mensajes en orden.
+     * La copia se reutiliza mientras el almacén no cambie, así varias lecturas seguidas no copian de nuevo.
+     *
+     * @return Lista inmutable ordenada por fecha de creación.
+     */
+    public synchronized List<T> snapshot() {
+        if (!snapshotValida) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(mensajes));
+            snapshotValida = true;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Inserta un mensaje en su posición de orden. Comprueba primero el final, que es el caso habitual.
+     */
+    private void insertarOrdenado(T mensaje) {
+        int n = mensajes.size();
+        if (n == 0 || comparar(mensajes.get(n - 1), mensaje) <= 0) {
+            mensajes.add(mensaje);
+            return;
+        }
+        int posicion = buscar(mensaje);
+        mensajes.add(posicion < 0 ? -(posicion + 1) : posicion, mensaje);
+    }
+
+    /**
+     * Ubica un mensaje guardado. Si la misma instancia cambió de fecha después de insertarse (un mensaje
+     * pendiente que recibe su createdAt al guardarse) la búsqueda binaria no lo encuentra, y se recorre
+     * la lista desde el final, donde están los pendientes.
+     *
+     * @return Posición del mensaje, o -1 si no está.
+     */
+    private int posicionDe(T mensaje) {
+        int posicion = buscar(mensaje);
+        if (posicion >= 0 && mensajes.get(posicion) == mensaje) {
+            return posicion;
+        }
+        for (int i = mensajes.size() - 1; i >= 0; i--) {
+            if (mensajes.get(i) == mensaje) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Búsqueda binaria por (fecha, id).
+     *
+     * @return Posición del mensaje, o {@code -(puntoDeInsercion + 1)} si no está.
+     */
+    private int buscar(T mensaje) {
+        int bajo = 0;
+        int alto = mensajes.size() - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int c = comparar(mensajes.get(medio), mensaje);
+            if (c < 0) {
+                bajo = medio + 1;
+            } else if (c > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    /**
+     * Compara por fecha y luego por ID. Los mensajes sin fecha se ordenan al final.
+     */
+    private int comparar(T a, T b) {
+        Date fa = claves.getFecha(a);
+        Date fb = claves.getFecha(b);
+        if (fa == null || fb == null) {
+            if (fa != fb) {
+                return fa == null ? 1 : -1;
+            }
+        } else {
+            int c = fa.compareTo(fb);
+            if (c != 0) {
+                return c;
+            }
+        }
+        String ia = claves.getId(a);
+        String ib = claves.getId(b);
+        if (ia == null || ib == null) {
+            return ia == null ? (ib == null ? 0 : 1) : -1;
+        }
+        return ia.compareTo(ib);
+    }
+
+    private static boolean igualFecha(Date a, Date b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -11,9 +11,16 @@ import androidx.fragment.app.FragmentTransaction;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.example.moviltpi.R;
+import com.example.moviltpi.core.MyApplication;
+import com.example.moviltpi.core.models.Mensaje;
 import com.example.moviltpi.databinding.ActivityHomeBinding;
+import com.example.moviltpi.features.chat.ChatFragment;
+import com.example.moviltpi.features.chat.ConversacionesFragment;
+import com.example.moviltpi.features.chat.MensajeMigracion;
+import com.example.moviltpi.features.chat.MensajeRouter;
 import com.example.moviltpi.features.users.PerfilFragment;
-import com.example.moviltpi.features.users.UserFragment;
+import com.google.android.material.snackbar.Snackbar;
+import com.parse.ParseUser;
 
 /**
  * Actividad principal que gestiona la navegación entre los diferentes fragmentos de la aplicación.
@@ -41,6 +48,19 @@ public class HomeActivity extends AppCompatActivity {
         binding.mainCont.addView(progressBarLayout);
         progressBarLayout.setVisibility(View.GONE); // Ocultar por defecto
 
+        // Completar conversacionId en los mensajes antiguos (una sola vez por usuario)
+        MensajeMigracion.ejecutarSiHaceFalta(this);
+
+        // Reenviar los mensajes que quedaron pendientes de una sesión anterior
+        MyApplication.getMensajeOutbox().reanudar();
+
+        // Una sola suscripción LiveQuery para todos los mensajes del usuario: alimenta los chats abiertos,
+        // el contador de no leídos de la pestaña Chats y las notificaciones dentro de la app
+        MensajeRouter mensajeRouter = MyApplication.getMensajeRouter();
+        mensajeRouter.iniciar();
+        mensajeRouter.getTotalNoLeidos().observe(this, this::mostrarNoLeidos);
+        mensajeRouter.getNotificacion().observe(this, this::mostrarNotificacion);
+
         // Configurar la navegación inferior
         binding.bottomNavigation.setOnItemSelectedListener(item -> {
             if (item.getItemId() == R.id.itemHome) {
@@ -48,7 +68,7 @@ public class HomeActivity extends AppCompatActivity {
                 postViewModel.loadPosts();
                 openFragment(HomeFragment.newInstance(), true, "HOME_FRAGMENT");
             } else if (item.getItemId() == R.id.itemChats) {
-                openFragment(new UserFragment(), false, "USERS_FRAGMENT");
+                openFragment(new ConversacionesFragment(), false, "CONVERSACIONES_FRAGMENT");
             } else if (item.getItemId() == R.id.itemPerfil) {
                 openFragment(new PerfilFragment(), false, "PERFIL_FRAGMENT");
             } else if (item.getItemId() == R.id.itemFiltros) {
@@ -98,6 +118,54 @@ public class HomeActivity extends AppCompatActivity {
         transaction.commit();
     }
 
+    /**
+     * Muestra en la pestaña Chats la cantidad de mensajes recibidos en conversaciones cerradas.
+     *
+     * @param total Cantidad de mensajes no leídos
+     */
+    private void mostrarNoLeidos(Integer total) {
+        if (total == null || total == 0) {
+            binding.bottomNavigation.removeBadge(R.id.itemChats);
+        } else {
+            binding.bottomNavigation.getOrCreateBadge(R.id.itemChats).setNumber(total);
+        }
+    }
+
+    /**
+     * Muestra un aviso con el mensaje recibido y un acceso directo a su chat.
+     *
+     * @param mensaje Mensaje recibido en una conversación cerrada, o null si no hay aviso pendiente
+     */
+    private void mostrarNotificacion(Mensaje mensaje) {
+        if (mensaje == null) {
+            return;
+        }
+        MyApplication.getMensajeRouter().consumirNotificacion();
+        // LiveQuery entrega el remitente como puntero: el nombre sale de la caché de perfiles
+        ParseUser remitente = mensaje.getRemitente();
+        ParseUser perfil = MyApplication.getUsuarioCache().resolver(remitente);
+        String texto = perfil != null
+                ? perfil.getUsername() + ": " + mensaje.getTexto()
+                : mensaje.getTexto();
+        Snackbar.make(binding.getRoot(), texto, Snackbar.LENGTH_LONG)
+                .setAnchorView(binding.bottomNavigation)
+                .setAction("Ver", v -> abrirChat(remitente.getObjectId()))
+                .show();
+    }
+
+    /**
+     * Abre el chat con un usuario.
+     *
+     * @param otroUsuarioId ID del otro usuario
+     */
+    private void abrirChat(String otroUsuarioId) {
+        ChatFragment chatFragment = new ChatFragment();
+        Bundle bundle = new Bundle();
+        bundle.putString("otroUsuarioId", otroUsuarioId);
+        chatFragment.setArguments(bundle);
+        openFragment(chatFragment, false, "CHATS_FRAGMENT");
+    }
+
     /**
      * Muestra la barra de progreso en la interfaz.
      */
@@ -46,6 +46,7 @@ public class PostActivity extends AppCompatActivity {
 
     private PostViewModel postViewModel;
     private final List<String> imagenesUrls = new ArrayList<>();
+    private final List<String> placeholders = new ArrayList<>();
     private ImageAdapter adapter;
     private String categoria;
 
@@ -122,8 +123,14 @@ public class PostActivity extends AppCompatActivity {
                     ImageUtils.subirImagenAParse(PostActivity.this, imageUri, new ImageUtils.ImageUploadCallback() {
                         @Override
                         public void onSuccess(String imageUrl) {
+                            onSuccess(imageUrl, null);
+                        }
+
+                        @Override
+                        public void onSuccess(String imageUrl, String placeholder) {
                             Log.d(TAG, "Imagen subida con éxito: " + imageUrl);
                             imagenesUrls.add(imageUrl);
+                            placeholders.add(placeholder);
                             adapter.notifyDataSetChanged();
                             updateRecyclerViewVisibility();
                         }
@@ -198,6 +205,7 @@ public class PostActivity extends AppCompatActivity {
         post.setCategoria(categoria);
         post.setPresupuesto(presupuesto);
         post.setImagenes(new ArrayList<>(imagenesUrls));
+        post.setPlaceholders(new ArrayList<>(placeholders));
 
         // Mostrar un mensaje de carga
         binding.btnPublicar.setEnabled(false);
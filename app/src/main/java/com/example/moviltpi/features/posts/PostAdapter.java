@@ -3,6 +3,7 @@ package com.example.moviltpi.features.posts;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.drawable.Drawable;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,6 +19,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.moviltpi.R;
 import com.example.moviltpi.core.models.Post;
 import com.example.moviltpi.core.models.User;
+import com.example.moviltpi.core.utils.ImagePlaceholder;
 import com.squareup.picasso.Picasso;
 
 import java.util.ArrayList;
@@ -74,18 +76,15 @@ public class PostAdapter extends RecyclerView.Adapter<PostAdapter.PostViewHolder
 
         if (post.getImagenes() != null) {
             if (!post.getImagenes().isEmpty()) {
-                Picasso.get().load(post.getImagenes().get(0)).placeholder(R.drawable.uploadimg).into(holder.ivImage1);
-                holder.ivImage1.setVisibility(View.VISIBLE);
+                cargarImagen(holder.ivImage1, post, 0);
             }
 
             if (post.getImagenes().size() > 1) {
-                Picasso.get().load(post.getImagenes().get(1)).placeholder(R.drawable.uploadimg).into(holder.ivImage2);
-                holder.ivImage2.setVisibility(View.VISIBLE);
+                cargarImagen(holder.ivImage2, post, 1);
             }
 
             if (post.getImagenes().size() > 2) {
-                Picasso.get().load(post.getImagenes().get(2)).placeholder(R.drawable.uploadimg).into(holder.ivImage3);
-                holder.ivImage3.setVisibility(View.VISIBLE);
+                cargarImagen(holder.ivImage3, post, 2);
             }
         }
 
@@ -110,10 +109,12 @@ public class PostAdapter extends RecyclerView.Adapter<PostAdapter.PostViewHolder
                     User user = postDetail.getUser();
                     if (user != null) {
                         Log.d("Postadapter", user.getUsername());
+                        intent.putExtra("userId", user.getId());
                         intent.putExtra("username", user.getUsername());
                         intent.putExtra("email", user.getEmail());
                         intent.putExtra("redsocial", user.getRedSocial());
-                        intent.putExtra("foto_perfil", user.getString("foto_perfil"));
+                        intent.putExtra("foto_perfil", user.getFotoperfil());
+                        intent.putExtra("foto_perfil_version", user.getFotoPerfilVersion());
                     } else {
                         Log.d("Postadapter", "User is null");
                     }
@@ -131,6 +132,30 @@ public class PostAdapter extends RecyclerView.Adapter<PostAdapter.PostViewHolder
         });
     }
 
+    /**
+     * Carga una imagen del post en el ImageView indicado.
+     * Si el post tiene la vista previa de esa imagen (buscada por su URL), se pinta de inmediato como placeholder
+     * mientras Picasso descarga la imagen real; si no, se usa el placeholder genérico.
+     *
+     * @param imageView ImageView destino.
+     * @param post      Post que contiene la imagen.
+     * @param index     Índice de la imagen dentro de {@link Post#getImagenes()}.
+     */
+    private void cargarImagen(ImageView imageView, Post post, int index) {
+        String url = post.getImagenes().get(index);
+        String vistaPrevia = post.getPlaceholder(url);
+        Drawable placeholder = vistaPrevia != null
+                ? ImagePlaceholder.decodificar(imageView.getResources(), vistaPrevia)
+                : null;
+
+        if (placeholder != null) {
+            Picasso.get().load(url).placeholder(placeholder).into(imageView);
+        } else {
+            Picasso.get().load(url).placeholder(R.drawable.uploadimg).into(imageView);
+        }
+        imageView.setVisibility(View.VISIBLE);
+    }
+
     @Override
     public int getItemCount() {
         return posts.size();
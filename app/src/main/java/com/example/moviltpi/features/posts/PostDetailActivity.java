@@ -14,14 +14,15 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.viewpager2.widget.ViewPager2;
 
-import com.example.moviltpi.R;
+import com.example.moviltpi.core.utils.AvatarCache;
 import com.example.moviltpi.core.utils.EfectoTransformer;
 import com.example.moviltpi.core.utils.ImageSliderAdapter;
+import com.example.moviltpi.core.utils.SwipeFrameMonitor;
 import com.example.moviltpi.databinding.ActivityPostDetailBinding;
 import com.google.android.material.tabs.TabLayoutMediator;
 import com.parse.ParseUser;
-import com.squareup.picasso.Picasso;
 
 import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,7 +37,7 @@ public class PostDetailActivity extends AppCompatActivity {
     private ComentarioAdapter comentarioAdapter;
     private String postId;
     private final AtomicBoolean isNavigating = new AtomicBoolean(false);
-
+    private final SwipeFrameMonitor swipeFrameMonitor = new SwipeFrameMonitor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -166,6 +167,13 @@ public class PostDetailActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        binding.viewPager.unregisterOnPageChangeCallback(swipeFrameMonitor);
+        swipeFrameMonitor.detener();
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
@@ -180,12 +188,14 @@ public class PostDetailActivity extends AppCompatActivity {
         binding.emailUser.setText(getIntent().getStringExtra("email"));
         binding.insta.setText(getIntent().getStringExtra("redsocial"));
 
-        String fotoUrl = getIntent().getStringExtra("foto_perfil");
-        if (fotoUrl != null) {
-            Picasso.get().load(fotoUrl).placeholder(R.drawable.ic_person).error(R.drawable.ic_person).into(binding.circleImageView);
-        } else {
-            binding.circleImageView.setImageResource(R.drawable.ic_person);
+        // La URL del intent solo se registra con su versión real: sin ella podría pisar una foto más nueva
+        String userId = getIntent().getStringExtra("userId");
+        AvatarCache avatarCache = AvatarCache.getInstance();
+        if (getIntent().hasExtra("foto_perfil_version")) {
+            avatarCache.registrar(userId, getIntent().getStringExtra("foto_perfil"),
+                    getIntent().getIntExtra("foto_perfil_version", 0));
         }
+        avatarCache.cargar(binding.circleImageView, userId, AvatarCache.Tamano.GRANDE);
 
         ArrayList<String> urls = getIntent().getStringArrayListExtra("imagenes");
         String titulo = "Lugar: " + getIntent().getStringExtra("titulo");
@@ -201,9 +211,22 @@ public class PostDetailActivity extends AppCompatActivity {
 
         if (urls != null && !urls.isEmpty()) {
             ImageSliderAdapter imageSliderAdapter = new ImageSliderAdapter(urls);
+            // Decodificar al ancho de pantalla y al alto del carrusel para que carga y precarga compartan caché
+            imageSliderAdapter.setTamanoObjetivo(getResources().getDisplayMetrics().widthPixels,
+                    binding.viewPager.getLayoutParams().height);
             binding.viewPager.setAdapter(imageSliderAdapter);
             binding.viewPager.setPageTransformer(new EfectoTransformer());
 
+            // Precargar las páginas vecinas cada vez que cambia la página seleccionada
+            binding.viewPager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
+                @Override
+                public void onPageSelected(int position) {
+                    imageSliderAdapter.precargarAdyacentes(PostDetailActivity.this, position);
+                }
+            });
+            // Informar la duración de los frames de cada deslizamiento
+            binding.viewPager.registerOnPageChangeCallback(swipeFrameMonitor);
+
             // Conexión TabLayout con ViewPager2
             new TabLayoutMediator(binding.tabLayout, binding.viewPager, (tab, position) -> {
             }).attach();
@@ -8,6 +8,7 @@ import androidx.lifecycle.MutableLiveData;
 import com.example.moviltpi.core.models.Comentario;
 import com.example.moviltpi.core.models.Post;
 import com.example.moviltpi.core.models.User;
+import com.example.moviltpi.core.utils.AvatarCache;
 import com.parse.ParseException;
 import com.parse.ParseObject;
 import com.parse.ParseQuery;
@@ -26,6 +27,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class PostProvider {
 
     private static final String TAG = "PostProvider";
+    private static final String KEY_IMAGE_PLACEHOLDER = "placeholder";
     private MutableLiveData<List<Post>> postsLiveData = new MutableLiveData<>();
 
     /**
@@ -75,6 +77,11 @@ public class PostProvider {
             for (String url : imageUrls) {
                 ParseObject imageObject = new ParseObject("Image");
                 imageObject.put("url", url);
+                // La vista previa viaja con su imagen: la relación no conserva el orden de guardado
+                String placeholder = post.getPlaceholder(url);
+                if (placeholder != null) {
+                    imageObject.put(KEY_IMAGE_PLACEHOLDER, placeholder);
+                }
                 imageObject.saveInBackground(imgSaveError -> {
                     if (imgSaveError == null) {
                         relation.add(imageObject);
@@ -236,12 +243,16 @@ public class PostProvider {
     private void cargarImagenesYUsuario(Post post, MutableLiveData<Post> result) {
         ParseRelation<ParseObject> relation = post.getRelation("images");
         List<String> imageUrls = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
         try {
             List<ParseObject> images = relation.getQuery().find();
             for (ParseObject imageObject : images) {
                 imageUrls.add(imageObject.getString("url"));
+                placeholders.add(imageObject.getString(KEY_IMAGE_PLACEHOLDER));
             }
+            // Las dos listas salen de las mismas filas, así cada vista previa queda con su URL
             post.setImagenes(imageUrls);
+            post.setPlaceholders(placeholders);
         } catch (ParseException parseException) {
             Log.e(TAG, "Error al cargar las imágenes del post", parseException);
         }
@@ -250,10 +261,14 @@ public class PostProvider {
         if (userObject != null) {
             try {
                 userObject.fetchIfNeeded();
+                AvatarCache.getInstance().registrar(userObject.getObjectId(),
+                        userObject.getString("foto_perfil"), userObject.getInt(User.KEY_FOTO_PERFIL_VERSION));
                 User user = new User();
+                user.setObjectId(userObject.getObjectId());
                 user.setUsername(userObject.getString("username"));
                 user.setEmail(userObject.getString("email"));
                 user.setFotoperfil(userObject.getString("foto_perfil"));
+                user.setFotoPerfilVersion(userObject.getInt(User.KEY_FOTO_PERFIL_VERSION));
                 post.setUser(user);
             } catch (ParseException userFetchException) {
                 Log.e(TAG, "Error al cargar la información del usuario del post", userFetchException);
@@ -27,13 +27,13 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 import com.example.moviltpi.R;
+import com.example.moviltpi.core.utils.AvatarCache;
 import com.example.moviltpi.core.utils.ImageUtils;
 import com.example.moviltpi.databinding.FragmentPerfilBinding;
 import com.example.moviltpi.features.posts.HomeActivity;
 import com.example.moviltpi.features.posts.PostAdapter;
 import com.example.moviltpi.features.posts.PostViewModel;
 import com.parse.ParseUser;
-import com.squareup.picasso.Picasso;
 import java.io.IOException;
 
 /**
@@ -139,16 +139,10 @@ public class PerfilFragment extends Fragment {
             binding.emailUser.setText(currentUser.getEmail());
             binding.insta.setText(currentUser.getString("instagram"));
 
-            // Cargar la foto de perfil si existe
-            String fotoUrl = currentUser.getString("foto_perfil");
-            if (fotoUrl != null) {
-                Picasso.get().load(fotoUrl)
-                        .placeholder(R.drawable.ic_person)
-                        .error(R.drawable.ic_person)
-                        .into(binding.circleImageView);
-            } else {
-                binding.circleImageView.setImageResource(R.drawable.ic_person);
-            }
+            // Cargar la foto de perfil desde la caché de avatares
+            AvatarCache avatarCache = AvatarCache.getInstance();
+            avatarCache.registrar(currentUser);
+            avatarCache.cargar(binding.circleImageView, currentUser.getObjectId(), AvatarCache.Tamano.GRANDE);
         } else {
             Toast.makeText(getContext(), "Usuario no logueado", Toast.LENGTH_SHORT).show();
         }
@@ -197,7 +191,8 @@ public class PerfilFragment extends Fragment {
                 public void onSuccess(String imageUrl) {
                     ParseUser currentUser = ParseUser.getCurrentUser();
                     if (currentUser != null) {
-                        currentUser.put("foto_perfil", imageUrl);
+                        // Incrementar la versión del avatar para invalidar las copias en caché
+                        AvatarCache.getInstance().invalidar(currentUser, imageUrl);
                         currentUser.saveInBackground(e -> {
                             if (e == null) {
                                 Toast.makeText(requireContext(), "Foto subida correctamente", Toast.LENGTH_SHORT).show();
@@ -4,10 +4,12 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.moviltpi.R;
+import com.example.moviltpi.core.utils.AvatarCache;
 import com.parse.ParseUser;
 import java.util.List;
 
@@ -67,7 +69,6 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
         ParseUser user = users.get(position);
-        Log.d("UsersAdapter", "Binding usuario en posición " + position + ": " + user.getUsername());
         holder.bind(user);  // Vincular los datos del usuario al ViewHolder
     }
 
@@ -86,6 +87,7 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
      */
     class UserViewHolder extends RecyclerView.ViewHolder {
         private final TextView tvUsername;  // TextView para mostrar el nombre de usuario
+        private final ImageView ivAvatar;  // ImageView para mostrar la foto de perfil
 
         /**
          * Constructor del ViewHolder.
@@ -95,6 +97,7 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         public UserViewHolder(@NonNull View itemView) {
             super(itemView);
             tvUsername = itemView.findViewById(R.id.tvUsername);  // Encontrar el TextView en el layout
+            ivAvatar = itemView.findViewById(R.id.ivAvatar);
         }
 
         /**
@@ -107,6 +110,11 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
             // Mostrar el nombre de usuario o un texto por defecto si es nulo
             tvUsername.setText(username != null ? username : "Usuario sin nombre");
 
+            // Mostrar la foto de perfil desde la caché de avatares
+            AvatarCache avatarCache = AvatarCache.getInstance();
+            avatarCache.registrar(user);
+            avatarCache.cargar(ivAvatar, user.getObjectId(), AvatarCache.Tamano.CHICO);
+
             // Configurar el listener de clic para el elemento completo
             itemView.setOnClickListener(v -> {
                 Log.d("UsersAdapter", "Click en usuario: " + user.getUsername());
@@ -1,17 +1,19 @@
 package com.example.moviltpi.features.users;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.moviltpi.R;
+import com.example.moviltpi.core.MyApplication;
 import com.example.moviltpi.databinding.FragmentUserBinding; // Clase generada por View Binding
 import com.example.moviltpi.features.auth.AuthProvider;
 import com.example.moviltpi.features.chat.ChatFragment;
@@ -27,10 +29,16 @@ import java.util.Objects;
  */
 public class UserFragment extends Fragment {
 
+    /** Cantidad de usuarios restantes al final de la lista a partir de la cual se pide la página siguiente */
+    private static final int UMBRAL_CARGA = 10;
+
     private FragmentUserBinding binding; // Objeto de binding para acceder a las vistas
     private UserAdapter usersAdapter; // Adaptador para el RecyclerView
     private List<ParseUser> usersList; // Lista de usuarios cargados
     private AuthProvider authProvider; // Proveedor de autenticación
+    private String cursorUsername; // Username del último usuario cargado, o null antes de la primera página
+    private boolean hayMas = true; // Si el servidor puede tener más usuarios después del cursor
+    private boolean cargando = false; // Si hay una página en camino
 
     /**
      * Crea la vista del fragmento y configura sus componentes.
@@ -57,10 +65,14 @@ public class UserFragment extends Fragment {
         }
 
         // Inicializar el RecyclerView con un LinearLayoutManager
-        binding.recyclerUsers.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        binding.recyclerUsers.setLayoutManager(layoutManager);
 
-        // Inicializar la lista de usuarios
+        // Inicializar la lista de usuarios y el cursor de páginas
         usersList = new ArrayList<>();
+        cursorUsername = null;
+        hayMas = true;
+        cargando = false;
 
         // Configurar el adaptador con un listener para clics en usuarios
         usersAdapter = new UserAdapter(usersList, user -> {
@@ -88,6 +100,16 @@ public class UserFragment extends Fragment {
         });
         binding.recyclerUsers.setAdapter(usersAdapter);
 
+        // Pedir la página siguiente al acercarse al final de la lista
+        binding.recyclerUsers.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= usersAdapter.getItemCount() - UMBRAL_CARGA) {
+                    loadUsers();
+                }
+            }
+        });
+
         // Mostrar mensaje de carga inicial
         binding.tvNoUsers.setText("Cargando usuarios...");
         binding.tvNoUsers.setVisibility(View.VISIBLE);
@@ -109,11 +131,13 @@ public class UserFragment extends Fragment {
     }
 
     /**
-     * Carga la lista de usuarios desde el proveedor de autenticación.
+     * Carga la página siguiente de usuarios desde el proveedor de autenticación y la agrega al final
+     * de la lista. No hace nada si ya hay una página en camino o si no quedan más usuarios.
      */
-    @SuppressLint("NotifyDataSetChanged")
     private void loadUsers() {
-        Log.d("UsersFragment", "Cargando usuarios...");
+        if (cargando || !hayMas) {
+            return;
+        }
 
         String currentUserId = authProvider.getCurrentUserID();
         if (currentUserId == null) {
@@ -125,12 +149,22 @@ public class UserFragment extends Fragment {
             return;
         }
 
-        // Observar los usuarios obtenidos del proveedor
-        authProvider.getAllUsers().observe(getViewLifecycleOwner(), users -> {
+        cargando = true;
+        boolean primeraPagina = cursorUsername == null;
+        Log.d("UsersFragment", "Cargando usuarios después de: " + cursorUsername);
+
+        // Observar la página obtenida del proveedor
+        authProvider.getUsuarios(cursorUsername).observe(getViewLifecycleOwner(), users -> {
+            cargando = false;
             if (users != null) {
-                usersList.clear(); // Limpiar la lista actual
-                usersList.addAll(users); // Añadir los nuevos usuarios
-                usersAdapter.notifyDataSetChanged(); // Notificar al adaptador del cambio
+                hayMas = users.size() >= AuthProvider.TAMANO_PAGINA_USUARIOS;
+                if (!users.isEmpty()) {
+                    cursorUsername = users.get(users.size() - 1).getUsername();
+                    int inicio = usersList.size();
+                    usersList.addAll(users); // Agregar la página al final
+                    MyApplication.getUsuarioCache().registrarTodos(users); // Compartirlos con el chat
+                    usersAdapter.notifyItemRangeInserted(inicio, users.size());
+                }
 
                 if (usersList.isEmpty()) {
                     // Mostrar mensaje si no hay usuarios
@@ -144,12 +178,15 @@ public class UserFragment extends Fragment {
                     binding.recyclerUsers.setVisibility(View.VISIBLE);
                     binding.tvNoUsers.setVisibility(View.GONE);
                 }
-            } else {
+            } else if (primeraPagina) {
                 // Manejar error al cargar usuarios
                 Log.e("UsersFragment", "Error al cargar usuarios");
                 binding.recyclerUsers.setVisibility(View.GONE);
                 binding.tvNoUsers.setText("Error al cargar usuarios");
                 binding.tvNoUsers.setVisibility(View.VISIBLE);
+            } else {
+                // La lista ya visible se conserva; se reintenta al volver a desplazarse
+                Log.e("UsersFragment", "Error al cargar más usuarios");
             }
         });
     }
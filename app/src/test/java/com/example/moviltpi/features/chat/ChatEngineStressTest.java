@@ -0,0 +1,324 @@
+package com.example.moviltpi.features.chat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Prueba de estrés de {@link ChatEngine}: varios hilos simulan LiveQuery, el polling, las páginas del
+ * historial y las ediciones, entregando miles de mensajes solapados y repetidos a la vez.
+ * Comprueba que ninguna instantánea publicada tiene duplicados ni desorden y que al final quedan
+ * exactamente los mensajes únicos enviados, que la ventana acotada mantiene la memoria constante sin
+ * dejar volver mensajes ya recortados, y que una ráfaga se publica agrupada por cuadro.
+ */
+public class ChatEngineStressTest {
+
+    private static final int MENSAJES = 5_000;
+    private static final String CLAVE = "a_b";
+
+    /** Mensaje de prueba con ID, fecha del servidor y versión de edición */
+    private static final class Msg {
+        final String id;
+        final Date fecha;
+        final int version;
+
+        Msg(String id, Date fecha, int version) {
+            this.id = id;
+            this.fecha = fecha;
+            this.version = version;
+        }
+    }
+
+    private static final MensajeStore.Claves<Msg> CLAVES = new MensajeStore.Claves<Msg>() {
+        @Override
+        public String getId(Msg mensaje) {
+            return mensaje.id;
+        }
+
+        @Override
+        public Date getFecha(Msg mensaje) {
+            return mensaje.fecha;
+        }
+    };
+
+    @Test
+    public void entregasConcurrentesNoDuplicanNiDesordenan() throws Exception {
+        List<Msg> mensajes = new ArrayList<>();
+        for (int i = 0; i < MENSAJES; i++) {
+            // Fechas repetidas cada tanto para ejercitar el desempate por ID
+            mensajes.add(new Msg(String.format("m%05d", i), new Date(1_000_000L + (i / 3) * 10L), 0));
+        }
+
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicInteger publicaciones = new AtomicInteger();
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), snapshot -> {
+            publicaciones.incrementAndGet();
+            String problema = validar(snapshot);
+            if (problema != null) {
+                error.compareAndSet(null, problema);
+            }
+            ultima.set(snapshot);
+        }, MENSAJES);
+        engine.abrir(CLAVE);
+
+        ExecutorService fuentes = Executors.newFixedThreadPool(4);
+        CountDownLatch inicio = new CountDownLatch(1);
+
+        // LiveQuery: de a un mensaje, en orden aproximado y con reentregas
+        fuentes.execute(() -> {
+            esperar(inicio);
+            Random random = new Random(1);
+            for (Msg mensaje : mensajes) {
+                engine.agregar(CLAVE, Collections.singletonList(mensaje), null);
+                if (random.nextInt(10) == 0) {
+                    engine.agregar(CLAVE, Collections.singletonList(mensaje), null);
+                }
+            }
+        });
+
+        // Polling: lotes ascendentes que se solapan con lo que ya llegó por LiveQuery
+        fuentes.execute(() -> {
+            esperar(inicio);
+            for (int desde = 0; desde < MENSAJES; desde += 50) {
+                int hasta = Math.min(MENSAJES, desde + 120);
+                engine.agregar(CLAVE, mensajes.subList(desde, hasta), null);
+            }
+        });
+
+        // Historial: páginas descendentes desde el final, como las del servidor
+        fuentes.execute(() -> {
+            esperar(inicio);
+            for (int hasta = MENSAJES; hasta > 0; hasta -= 40) {
+                List<Msg> pagina = new ArrayList<>(mensajes.subList(Math.max(0, hasta - 40), hasta));
+                Collections.reverse(pagina);
+                engine.agregarAnteriores(CLAVE, pagina);
+            }
+        });
+
+        // Ediciones de mensajes al azar, algunas antes de que el original haya llegado
+        fuentes.execute(() -> {
+            esperar(inicio);
+            Random random = new Random(2);
+            for (int i = 0; i < MENSAJES; i++) {
+                Msg original = mensajes.get(random.nextInt(MENSAJES));
+                engine.actualizar(CLAVE, new Msg(original.id, original.fecha, 1), null);
+            }
+        });
+
+        inicio.countDown();
+        fuentes.shutdown();
+        assertTrue(fuentes.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(engine.esperarInactivo(30_000));
+        engine.apagar();
+
+        assertNull(error.get(), error.get());
+        List<Msg> resultado = ultima.get();
+        assertEquals(MENSAJES, resultado.size());
+        for (int i = 0; i < MENSAJES; i++) {
+            assertEquals(mensajes.get(i).id, resultado.get(i).id);
+        }
+        assertEquals(mensajes.get(MENSAJES - 1).fecha, engine.getCursor());
+        System.out.printf("%d mensajes únicos, %d instantáneas publicadas%n", resultado.size(), publicaciones.get());
+    }
+
+    @Test
+    public void operacionesDeOtraConversacionSeDescartan() throws Exception {
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), ultima::set);
+        engine.abrir("vieja");
+        engine.agregar("vieja", Collections.singletonList(new Msg("x", new Date(1), 0)), null);
+        engine.abrir(CLAVE);
+
+        // Respuestas tardías de la conversación anterior
+        engine.agregar("vieja", Collections.singletonList(new Msg("y", new Date(2), 0)), null);
+        engine.actualizar("vieja", new Msg("x", new Date(1), 1), null);
+        engine.agregar(CLAVE, Collections.singletonList(new Msg("z", new Date(3), 0)), null);
+
+        assertTrue(engine.esperarInactivo(5_000));
+        engine.apagar();
+
+        assertEquals(1, ultima.get().size());
+        assertEquals("z", ultima.get().get(0).id);
+        assertEquals(new Date(3), engine.getCursor());
+    }
+
+    @Test
+    public void enviosPropiosNoMuevenElCursorDeSincronizacion() throws Exception {
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), ultima::set);
+        engine.abrir(CLAVE);
+        engine.agregar(CLAVE, Collections.singletonList(new Msg("a", new Date(10), 0)), null);
+
+        // Con LiveQuery caído, el otro usuario escribe en t=20 y el envío propio se confirma en t=30
+        engine.agregarLocales(CLAVE, Collections.singletonList(new Msg("propio", null, 0)));
+        engine.confirmar(CLAVE, new Msg("propio", new Date(30), 0), null);
+        assertTrue(engine.esperarInactivo(5_000));
+        assertEquals(new Date(10), engine.getCursor());
+
+        // El polling desde el cursor trae el mensaje del otro usuario y el propio repetido
+        engine.agregar(CLAVE, Arrays.asList(new Msg("otro", new Date(20), 0),
+                new Msg("propio", new Date(30), 0)), null);
+        assertTrue(engine.esperarInactivo(5_000));
+        engine.apagar();
+        assertEquals(3, ultima.get().size());
+        assertEquals("otro", ultima.get().get(1).id);
+        assertEquals(new Date(30), engine.getCursor());
+    }
+
+    @Test
+    public void ventanaAcotadaDescartaReentregasDeMensajesRecortados() throws Exception {
+        int ventana = 100;
+        List<Msg> mensajes = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            mensajes.add(new Msg(String.format("m%04d", i), new Date(1_000L + i), 0));
+        }
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        AtomicReference<Msg> masAntiguo = new AtomicReference<>();
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), ultima::set, ventana);
+        engine.setAlRecortar((clave, mensaje) -> masAntiguo.set(mensaje));
+        engine.abrir(CLAVE);
+
+        // Entregas en vivo con reentregas de mensajes que ya salieron de la ventana
+        Random random = new Random(3);
+        for (int i = 0; i < mensajes.size(); i++) {
+            engine.agregar(CLAVE, Collections.singletonList(mensajes.get(i)), null);
+            engine.agregar(CLAVE, Collections.singletonList(mensajes.get(random.nextInt(i + 1))), null);
+            Msg editado = mensajes.get(random.nextInt(i + 1));
+            engine.actualizar(CLAVE, new Msg(editado.id, editado.fecha, 1), null);
+        }
+        assertTrue(engine.esperarInactivo(5_000));
+        assertEquals(ventana, ultima.get().size());
+        assertEquals("m0900", ultima.get().get(0).id);
+        assertEquals("m0900", masAntiguo.get().id);
+
+        // Mientras se lee el historial, las páginas anteriores entran y no se recortan
+        engine.setSiguiendoUltimos(false);
+        List<Msg> pagina = new ArrayList<>(mensajes.subList(860, 900));
+        Collections.reverse(pagina);
+        engine.agregarAnteriores(CLAVE, pagina);
+        engine.agregar(CLAVE, Collections.singletonList(new Msg("nuevo", new Date(5_000L), 0)), null);
+        assertTrue(engine.esperarInactivo(5_000));
+        assertEquals(ventana + 41, ultima.get().size());
+        assertNull(validar(ultima.get()));
+
+        // Al volver al final se recorta de nuevo
+        engine.setSiguiendoUltimos(true);
+        assertTrue(engine.esperarInactivo(5_000));
+        engine.apagar();
+        assertEquals(ventana, ultima.get().size());
+        assertEquals("nuevo", ultima.get().get(ventana - 1).id);
+    }
+
+    @Test
+    public void mensajeTardioAnteriorAlHorizonteSeEntregaParaGuardar() throws Exception {
+        int ventana = 10;
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        List<Msg> guardados = Collections.synchronizedList(new ArrayList<>());
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), ultima::set, ventana);
+        engine.abrir(CLAVE);
+        for (int i = 0; i < 30; i++) {
+            engine.agregar(CLAVE, Collections.singletonList(new Msg(String.format("m%02d", i), new Date(i * 10L), 0)),
+                    guardados::addAll);
+        }
+        assertTrue(engine.esperarInactivo(5_000));
+        assertEquals("m20", ultima.get().get(0).id);
+
+        // La recuperación tras un corte trae un mensaje que nunca llegó, anterior al horizonte
+        guardados.clear();
+        Msg tardio = new Msg("tardio", new Date(55), 0);
+        engine.agregar(CLAVE, Arrays.asList(tardio, new Msg("m05", new Date(50), 0)), guardados::addAll);
+        assertTrue(engine.esperarInactivo(5_000));
+        assertEquals(ventana, ultima.get().size());
+        assertEquals(2, guardados.size());
+        assertTrue(guardados.contains(tardio));
+
+        // Mientras se lee el historial cargado alrededor de él, entra en su lugar
+        engine.setSiguiendoUltimos(false);
+        List<Msg> pagina = new ArrayList<>();
+        for (int i = 19; i >= 0; i--) {
+            pagina.add(new Msg(String.format("m%02d", i), new Date(i * 10L), 0));
+        }
+        engine.agregarAnteriores(CLAVE, pagina);
+        engine.agregar(CLAVE, Collections.singletonList(tardio), null);
+        assertTrue(engine.esperarInactivo(5_000));
+        engine.apagar();
+        assertEquals(31, ultima.get().size());
+        assertEquals("tardio", ultima.get().get(6).id);
+        assertNull(validar(ultima.get()));
+    }
+
+    @Test
+    public void rafagaSePublicaAgrupadaPorCuadro() throws Exception {
+        int rafaga = 2_000;
+        AtomicReference<List<Msg>> ultima = new AtomicReference<>(Collections.emptyList());
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, Executors.newSingleThreadExecutor(), ultima::set, rafaga);
+        engine.abrir(CLAVE);
+        assertTrue(engine.esperarInactivo(5_000));
+        long publicacionesAntes = engine.getPublicaciones();
+
+        // Ráfaga como la de una reconexión: un evento por mensaje, lo más rápido posible
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rafaga; i++) {
+            engine.agregar(CLAVE, Collections.singletonList(new Msg(String.format("r%05d", i), new Date(i), 0)), null);
+        }
+        assertTrue(engine.esperarInactivo(5_000));
+        double segundos = (System.nanoTime() - t0) / 1e9;
+        engine.apagar();
+
+        long publicaciones = engine.getPublicaciones() - publicacionesAntes;
+        assertEquals(rafaga, engine.getEventos());
+        assertEquals(rafaga, ultima.get().size());
+        assertNull(validar(ultima.get()));
+        // Cada publicación agrupa los eventos de un cuadro: muchas menos que un evento por publicación
+        assertTrue("Publicaciones: " + publicaciones, publicaciones * 10 <= rafaga);
+        System.out.printf("%.0f eventos/s, %d eventos en %d publicaciones%n",
+                rafaga / segundos, rafaga, publicaciones);
+    }
+
+    /**
+     * Devuelve una descripción del problema si la instantánea tiene duplicados o está desordenada.
+     */
+    private static String validar(List<Msg> snapshot) {
+        Set<String> ids = new HashSet<>();
+        Msg anterior = null;
+        for (Msg mensaje : snapshot) {
+            if (!ids.add(mensaje.id)) {
+                return "Mensaje duplicado: " + mensaje.id;
+            }
+            if (anterior != null) {
+                int orden = anterior.fecha.compareTo(mensaje.fecha);
+                if (orden > 0 || (orden == 0 && anterior.id.compareTo(mensaje.id) > 0)) {
+                    return "Desorden entre " + anterior.id + " y " + mensaje.id;
+                }
+            }
+            anterior = mensaje;
+        }
+        return null;
+    }
+
+    private static void esperar(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.moviltpi.features.chat;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark de carga sostenida del chat: reproduce contra {@link ChatEngine} el mismo cableado que usa
+ * {@link ChatProvider}, con un servidor falso en memoria en lugar de Parse.
+ * <ul>
+ *   <li>Servidor REST falso: guarda los mensajes con su createdAt, que se repite cada tanto en el mismo
+ *   milisegundo, y responde las consultas de polling "createdAt mayor o igual al cursor" con una demora de
+ *   red. Con "mayor que" se perdía el mensaje que compartía el milisegundo del cursor.</li>
+ *   <li>LiveQuery falso: un hilo propio, como el del socket, que entrega cada mensaje guardado de a uno
+ *   al ritmo configurado y a veces lo repite. Cada tanto se corta: los mensajes guardados durante el corte
+ *   no llegan y, al reconectarse, se consulta el servidor desde el cursor, como hace
+ *   {@link ChatProvider} al confirmar la suscripción.</li>
+ *   <li>Polling intercalado: además, cada tanto se consulta el servidor desde el cursor del motor.</li>
+ *   <li>Hilo principal falso: recibe cada instantánea como la recibe el LiveData y mide cuánto tiempo
+ *   ocupa.</li>
+ * </ul>
+ * Informa el ritmo de ingesta, la asignación de memoria del hilo del motor, el tiempo del hilo principal y
+ * los mensajes duplicados o perdidos al final. Se configura con propiedades del sistema, por ejemplo
+ * {@code -Dchat.soak.mensajes=10000 -Dchat.soak.ritmo=200} para la tormenta de 10k mensajes a 200/s; los
+ * valores por defecto son cortos para que corra con el resto de las pruebas.
+ */
+public class ChatSoakBenchmarkTest {
+
+    private static final String CLAVE = "a_b";
+
+    private static final int MENSAJES = Integer.getInteger("chat.soak.mensajes", 3_000);
+    private static final int RITMO = Integer.getInteger("chat.soak.ritmo", 1_000);
+    private static final int INTERVALO_POLLING_MS = Integer.getInteger("chat.soak.polling", 250);
+    private static final int DEMORA_RED_MS = Integer.getInteger("chat.soak.red", 20);
+    private static final double CORTES = Double.parseDouble(System.getProperty("chat.soak.cortes", "0.005"));
+    private static final double REPETICION = Double.parseDouble(System.getProperty("chat.soak.repeticion", "0.05"));
+
+    /** Mensaje de prueba con ID y fecha del servidor */
+    private static final class Msg {
+        final String id;
+        final Date fecha;
+
+        Msg(String id, Date fecha) {
+            this.id = id;
+            this.fecha = fecha;
+        }
+    }
+
+    private static final MensajeStore.Claves<Msg> CLAVES = new MensajeStore.Claves<Msg>() {
+        @Override
+        public String getId(Msg mensaje) {
+            return mensaje.id;
+        }
+
+        @Override
+        public Date getFecha(Msg mensaje) {
+            return mensaje.fecha;
+        }
+    };
+
+    /**
+     * Servidor REST falso: los mensajes guardados, en orden de createdAt.
+     */
+    private static final class ServidorFalso {
+        private final List<Msg> guardados = new ArrayList<>();
+
+        synchronized Msg guardar(int numero) {
+            // createdAt creciente, con dos mensajes por milisegundo como en una ráfaga real
+            Msg mensaje = new Msg(String.format("m%06d", numero), new Date(1_000_000L + numero / 2));
+            guardados.add(mensaje);
+            return mensaje;
+        }
+
+        /** Consulta de polling: createdAt mayor o igual al cursor, ascendente */
+        synchronized List<Msg> desde(Date cursor) {
+            List<Msg> resultado = new ArrayList<>();
+            for (int i = guardados.size() - 1; i >= 0; i--) {
+                Msg mensaje = guardados.get(i);
+                if (cursor != null && mensaje.fecha.before(cursor)) {
+                    break;
+                }
+                resultado.add(mensaje);
+            }
+            Collections.reverse(resultado);
+            return resultado;
+        }
+
+        synchronized List<Msg> todos() {
+            return new ArrayList<>(guardados);
+        }
+    }
+
+    @Test
+    public void tormentaDeMensajesConPollingIntercalado() throws Exception {
+        ServidorFalso servidor = new ServidorFalso();
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+
+        // Hilo principal falso: recibe las instantáneas como el LiveData y mide su costo
+        ExecutorService principal = Executors.newSingleThreadExecutor();
+        AtomicLong nanosPrincipal = new AtomicLong();
+        AtomicLong publicaciones = new AtomicLong();
+        AtomicReference<List<Msg>> mostrada = new AtomicReference<>(Collections.emptyList());
+        AtomicReference<String> error = new AtomicReference<>();
+
+        ExecutorService hiloMotor = Executors.newSingleThreadExecutor();
+        long idHiloMotor = hiloMotor.submit(() -> Thread.currentThread().getId()).get();
+        ChatEngine<Msg> engine = new ChatEngine<>(CLAVES, hiloMotor, snapshot -> {
+            publicaciones.incrementAndGet();
+            principal.execute(() -> {
+                long inicio = System.nanoTime();
+                String problema = validar(snapshot);
+                if (problema != null) {
+                    error.compareAndSet(null, problema);
+                }
+                mostrada.set(snapshot);
+                nanosPrincipal.addAndGet(System.nanoTime() - inicio);
+            });
+        }, MENSAJES);
+        engine.abrir(CLAVE);
+        assertTrue(engine.esperarInactivo(5_000));
+        long asignadosAntes = asignados(hilos, idHiloMotor);
+
+        // Polling intercalado contra el servidor falso, desde el cursor del motor
+        ScheduledExecutorService polling = Executors.newSingleThreadScheduledExecutor();
+        AtomicLong consultas = new AtomicLong();
+        polling.scheduleWithFixedDelay(() -> {
+            Date cursor = engine.getCursor();
+            dormir(DEMORA_RED_MS);
+            List<Msg> nuevos = servidor.desde(cursor);
+            consultas.incrementAndGet();
+            if (!nuevos.isEmpty()) {
+                engine.agregar(CLAVE, nuevos, null);
+            }
+        }, INTERVALO_POLLING_MS, INTERVALO_POLLING_MS, TimeUnit.MILLISECONDS);
+
+        // LiveQuery falso: guarda y entrega de a un mensaje al ritmo pedido, con cortes y repeticiones
+        ExecutorService red = Executors.newCachedThreadPool();
+        Random random = new Random(7);
+        int cortes = 0;
+        int restanteCorte = 0;
+        long perdidos = 0;
+        long repetidos = 0;
+        long intervaloNanos = TimeUnit.SECONDS.toNanos(1) / RITMO;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < MENSAJES; i++) {
+            long objetivo = t0 + i * intervaloNanos;
+            long espera = objetivo - System.nanoTime();
+            if (espera > 0) {
+                TimeUnit.NANOSECONDS.sleep(espera);
+            }
+            Msg mensaje = servidor.guardar(i);
+            if (restanteCorte == 0 && random.nextDouble() < CORTES) {
+                cortes++;
+                restanteCorte = 5 + random.nextInt(50);
+            }
+            if (restanteCorte > 0) {
+                perdidos++;
+                if (--restanteCorte == 0) {
+                    // Reconexión: recuperar desde el cursor tomado al confirmarse la suscripción
+                    Date cursor = engine.getCursor();
+                    red.execute(() -> {
+                        dormir(DEMORA_RED_MS);
+                        engine.agregar(CLAVE, servidor.desde(cursor), null);
+                    });
+                }
+                continue;
+            }
+            engine.agregar(CLAVE, Collections.singletonList(mensaje), null);
+            if (random.nextDouble() < REPETICION) {
+                repetidos++;
+                engine.agregar(CLAVE, Collections.singletonList(mensaje), null);
+            }
+        }
+        double segundosEmision = (System.nanoTime() - t0) / 1e9;
+
+        // Dejar que el polling recupere lo que LiveQuery perdió
+        dormir(INTERVALO_POLLING_MS * 2 + DEMORA_RED_MS * 2);
+        polling.shutdown();
+        red.shutdown();
+        assertTrue(polling.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(red.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(engine.esperarInactivo(10_000));
+        double segundosTotal = (System.nanoTime() - t0) / 1e9;
+        long asignados = asignados(hilos, idHiloMotor) - asignadosAntes;
+        engine.apagar();
+        principal.shutdown();
+        assertTrue(principal.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Comparar lo mostrado con lo guardado en el servidor
+        List<Msg> final_ = mostrada.get();
+        List<Msg> esperados = servidor.todos();
+        Set<String> mostrados = new HashSet<>();
+        int duplicados = 0;
+        for (Msg mensaje : final_) {
+            if (!mostrados.add(mensaje.id)) {
+                duplicados++;
+            }
+        }
+        int faltantes = 0;
+        for (Msg mensaje : esperados) {
+            if (!mostrados.contains(mensaje.id)) {
+                faltantes++;
+            }
+        }
+
+        System.out.printf("Tormenta: %d mensajes a %d/s (%.1f s); LiveQuery: %d cortes, %d perdidos, %d repetidos; "
+                        + "%d consultas de polling%n",
+                MENSAJES, RITMO, segundosEmision, cortes, perdidos, repetidos, consultas.get());
+        System.out.printf("Ingesta: %.0f eventos/s, %d eventos en %d publicaciones%n",
+                engine.getEventos() / segundosTotal, engine.getEventos(), publicaciones.get());
+        if (asignados >= 0) {
+            System.out.printf("Asignación del hilo del motor: %.1f MB (%.1f MB/s, %.0f B por mensaje)%n",
+                    asignados / 1e6, asignados / 1e6 / segundosTotal, (double) asignados / MENSAJES);
+        }
+        System.out.printf("Hilo principal: %.1f ms en total, %.3f ms por publicación%n",
+                nanosPrincipal.get() / 1e6, nanosPrincipal.get() / 1e6 / Math.max(1, publicaciones.get()));
+        System.out.printf("Resultado: %d duplicados, %d perdidos%n", duplicados, faltantes);
+
+        assertTrue(error.get(), error.get() == null);
+        assertEquals(0, duplicados);
+        assertEquals(0, faltantes);
+        assertEquals(esperados.size(), final_.size());
+        // Las publicaciones se agrupan por cuadro: nunca más de una por evento
+        assertTrue(publicaciones.get() <= engine.getEventos());
+    }
+
+    /**
+     * Bytes asignados por un hilo, o -1 si la JVM no lo informa.
+     */
+    private static long asignados(ThreadMXBean hilos, long idHilo) {
+        if (hilos instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean medidor = (com.sun.management.ThreadMXBean) hilos;
+            if (medidor.isThreadAllocatedMemorySupported()) {
+                medidor.setThreadAllocatedMemoryEnabled(true);
+                return medidor.getThreadAllocatedBytes(idHilo);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Devuelve una descripción del problema si la instantánea tiene duplicados o está desordenada.
+     */
+    private static String validar(List<Msg> snapshot) {
+        Set<String> ids = new HashSet<>();
+        Msg anterior = null;
+        for (Msg mensaje : snapshot) {
+            if (!ids.add(mensaje.id)) {
+                return "Mensaje duplicado: " + mensaje.id;
+            }
+            if (anterior != null) {
+                int orden = anterior.fecha.compareTo(mensaje.fecha);
+                if (orden > 0 || (orden == 0 && anterior.id.compareTo(mensaje.id) > 0)) {
+                    return "Desorden entre " + anterior.id + " y " + mensaje.id;
+                }
+            }
+            anterior = mensaje;
+        }
+        return null;
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.moviltpi.features.chat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark local que compara el costo de las dos formas de consultar una conversación,
+ * simulando cómo las resuelve la base de datos con índices en memoria:
+ * <ul>
+ *   <li>Antes: OR de (remitente=A ∧ destinatario=B) y (remitente=B ∧ destinatario=A). Con un índice por
+ *   remitente, cada rama recorre todos los mensajes enviados por ese usuario, filtra por destinatario,
+ *   y después hay que unir, ordenar y recortar.</li>
+ *   <li>Después: igualdad sobre conversacionId más rango de createdAt, resuelta con un índice compuesto
+ *   (conversacionId, createdAt) que devuelve directamente la página pedida.</li>
+ * </ul>
+ * Mide documentos examinados (independiente de la máquina) y tiempo, y comprueba que ambas consultas
+ * devuelven los mismos mensajes.
+ */
+public class ConsultaConversacionBenchmarkTest {
+
+    private static final int USUARIOS = 200;
+    private static final int MENSAJES = 200_000;
+    private static final int PAGINA = 40;
+    private static final int CONSULTAS = 500;
+
+    /** Fila de la tabla de mensajes */
+    private static final class Fila {
+        final int id;
+        final String remitente;
+        final String destinatario;
+        final String conversacionId;
+        final long createdAt;
+
+        Fila(int id, String remitente, String destinatario, long createdAt) {
+            this.id = id;
+            this.remitente = remitente;
+            this.destinatario = destinatario;
+            this.conversacionId = remitente.compareTo(destinatario) < 0
+                    ? remitente + "_" + destinatario : destinatario + "_" + remitente;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /** Índice por remitente, como el que tendría el puntero remitente */
+    private final Map<String, List<Fila>> indiceRemitente = new HashMap<>();
+
+    /** Índice compuesto (conversacionId, createdAt) */
+    private final Map<String, NavigableMap<Long, Fila>> indiceConversacion = new HashMap<>();
+
+    private long examinados;
+
+    @Test
+    public void consultaPorConversacionIdExaminaMenosDocumentos() {
+        Random random = new Random(42);
+        List<String> usuarios = new ArrayList<>();
+        for (int i = 0; i < USUARIOS; i++) {
+            usuarios.add("u" + i);
+        }
+
+        // Distribución desigual: unos pocos usuarios concentran la mayoría de los mensajes
+        for (int i = 0; i < MENSAJES; i++) {
+            String remitente = usuarios.get((int) (Math.pow(random.nextDouble(), 3) * USUARIOS));
+            String destinatario;
+            do {
+                destinatario = usuarios.get(random.nextInt(USUARIOS));
+            } while (destinatario.equals(remitente));
+            Fila fila = new Fila(i, remitente, destinatario, i * 1000L);
+            indiceRemitente.computeIfAbsent(remitente, k -> new ArrayList<>()).add(fila);
+            indiceConversacion.computeIfAbsent(fila.conversacionId, k -> new TreeMap<>()).put(fila.createdAt, fila);
+        }
+
+        // Consultar conversaciones de los usuarios más activos, con cursor de página anterior
+        long examinadosAntes = 0;
+        long examinadosDespues = 0;
+        long nanosAntes = 0;
+        long nanosDespues = 0;
+        for (int i = 0; i < CONSULTAS; i++) {
+            String a = usuarios.get(random.nextInt(5));
+            String b = usuarios.get(5 + random.nextInt(USUARIOS - 5));
+            long antesDe = (long) (random.nextDouble() * MENSAJES) * 1000L;
+
+            examinados = 0;
+            long t0 = System.nanoTime();
+            List<Fila> resultadoOr = consultaOr(a, b, antesDe);
+            nanosAntes += System.nanoTime() - t0;
+            examinadosAntes += examinados;
+
+            examinados = 0;
+            t0 = System.nanoTime();
+            List<Fila> resultadoClave = consultaPorClave(a, b, antesDe);
+            nanosDespues += System.nanoTime() - t0;
+            examinadosDespues += examinados;
+
+            assertEquals(ids(resultadoOr), ids(resultadoClave));
+        }
+
+        System.out.printf("OR de remitente/destinatario: %d documentos examinados, %.2f ms%n",
+                examinadosAntes, nanosAntes / 1e6);
+        System.out.printf("conversacionId + createdAt:   %d documentos examinados, %.2f ms%n",
+                examinadosDespues, nanosDespues / 1e6);
+
+        // La consulta por clave solo toca las filas que devuelve
+        assertTrue(examinadosDespues <= (long) CONSULTAS * PAGINA);
+        assertTrue(examinadosDespues * 10 < examinadosAntes);
+    }
+
+    /**
+     * Forma anterior: dos ramas por remitente filtradas por destinatario, unidas, ordenadas y recortadas.
+     */
+    private List<Fila> consultaOr(String a, String b, long antesDe) {
+        List<Fila> union = new ArrayList<>();
+        ramaOr(a, b, antesDe, union);
+        ramaOr(b, a, antesDe, union);
+        union.sort(Comparator.comparingLong((Fila f) -> f.createdAt).reversed());
+        return new ArrayList<>(union.subList(0, Math.min(PAGINA, union.size())));
+    }
+
+    private void ramaOr(String remitente, String destinatario, long antesDe, List<Fila> salida) {
+        List<Fila> filas = indiceRemitente.get(remitente);
+        if (filas == null) {
+            return;
+        }
+        for (Fila fila : filas) {
+            examinados++;
+            if (fila.destinatario.equals(destinatario) && fila.createdAt < antesDe) {
+                salida.add(fila);
+            }
+        }
+    }
+
+    /**
+     * Forma nueva: igualdad por conversacionId y rango de createdAt sobre el índice compuesto.
+     */
+    private List<Fila> consultaPorClave(String a, String b, long antesDe) {
+        String clave = a.compareTo(b) < 0 ? a + "_" + b : b + "_" + a;
+        List<Fila> resultado = new ArrayList<>();
+        NavigableMap<Long, Fila> conversacion = indiceConversacion.get(clave);
+        if (conversacion == null) {
+            return resultado;
+        }
+        for (Fila fila : conversacion.headMap(antesDe, false).descendingMap().values()) {
+            examinados++;
+            resultado.add(fila);
+            if (resultado.size() == PAGINA) {
+                break;
+            }
+        }
+        return resultado;
+    }
+
+    private static List<Integer> ids(List<Fila> filas) {
+        List<Integer> ids = new ArrayList<>();
+        for (Fila fila : filas) {
+            ids.add(fila.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.moviltpi.features.chat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pruebas de {@link IndiceConversacion}: búsqueda sin mayúsculas ni acentos, prefijo en la última
+ * palabra, ediciones y borrados, el guardado en disco, y el tiempo de respuesta en una conversación larga.
+ */
+public class IndiceConversacionTest {
+
+    private static final String[] PALABRAS = {"hola", "mañana", "reunión", "proyecto", "café", "entrega",
+            "informe", "llamada", "viernes", "oficina", "cliente", "presupuesto", "revisión", "equipo"};
+
+    @Test
+    public void buscaSinAcentosNiMayusculasYConPrefijo() {
+        IndiceConversacion indice = new IndiceConversacion();
+        indice.agregar("a", 1, "¿Nos vemos MAÑANA en la reunión?");
+        indice.agregar("b", 2, "La reunión se pasó al viernes");
+        indice.agregar("c", 3, "Hola!");
+
+        List<IndiceConversacion.Documento> resultado = indice.buscar("reunion", 10);
+        assertEquals(2, resultado.size());
+        assertEquals("b", resultado.get(0).getId());
+        assertEquals("a", resultado.get(1).getId());
+
+        assertEquals("a", indice.buscar("Manana reu", 10).get(0).getId());
+        assertEquals(1, indice.buscar("reunión vier", 10).size());
+        assertTrue(indice.buscar("vier reunión", 10).isEmpty());
+        assertTrue(indice.buscar("  ¿? ", 10).isEmpty());
+    }
+
+    @Test
+    public void edicionesYBorradosActualizanLasPalabras() {
+        IndiceConversacion indice = new IndiceConversacion();
+        assertTrue(indice.agregar("a", 1, "enviame el informe"));
+        assertFalse(indice.agregar("a", 1, "enviame el informe"));
+        assertTrue(indice.agregar("a", 1, "enviame el presupuesto"));
+
+        assertTrue(indice.buscar("informe", 10).isEmpty());
+        assertEquals(1, indice.buscar("presupuesto", 10).size());
+
+        assertTrue(indice.quitar("a"));
+        assertFalse(indice.quitar("a"));
+        assertTrue(indice.buscar("presupuesto", 10).isEmpty());
+        assertEquals(0, indice.getTamano());
+    }
+
+    @Test
+    public void seGuardaYSeLeeIgual() throws Exception {
+        IndiceConversacion indice = new IndiceConversacion();
+        indice.agregar("a", 10, "Llamada con el cliente");
+        indice.agregar("b", 20, "El cliente aprobó la entrega");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        indice.escribir(new DataOutputStream(bytes));
+        IndiceConversacion leido = IndiceConversacion.leer(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, leido.getTamano());
+        List<IndiceConversacion.Documento> resultado = leido.buscar("cliente", 10);
+        assertEquals(2, resultado.size());
+        assertEquals("b", resultado.get(0).getId());
+        assertEquals(20, resultado.get(0).getFecha());
+        assertEquals("El cliente aprobó la entrega", resultado.get(0).getTexto());
+    }
+
+    @Test
+    public void respondeEnMilisegundosEnUnaConversacionLarga() {
+        int mensajes = 50_000;
+        IndiceConversacion indice = new IndiceConversacion();
+        Random random = new Random(1);
+        for (int i = 0; i < mensajes; i++) {
+            StringBuilder texto = new StringBuilder();
+            for (int p = 0; p < 8; p++) {
+                texto.append(PALABRAS[random.nextInt(PALABRAS.length)]).append(' ');
+            }
+            texto.append("m").append(i);
+            indice.agregar("id" + i, i, texto.toString());
+        }
+
+        // Incluye prefijos de una letra, que abarcan decenas de miles de palabras distintas
+        String[] consultas = {"m4999", "reunion cafe", "cliente presupuesto rev", "m12345", "viernes of", "m",
+                "hola m1", "r"};
+        long peor = 0;
+        for (int vuelta = 0; vuelta < 20; vuelta++) {
+            for (String consulta : consultas) {
+                long inicio = System.nanoTime();
+                List<IndiceConversacion.Documento> resultado = indice.buscar(consulta, 50);
+                peor = Math.max(peor, System.nanoTime() - inicio);
+                assertFalse(consulta, resultado.isEmpty());
+            }
+        }
+        assertEquals("id12345", indice.buscar("m12345", 10).get(0).getId());
+        assertEquals("id49999", indice.buscar("m", 10).get(0).getId());
+        System.out.printf("%d mensajes indexados, peor búsqueda: %.2f ms%n", mensajes, peor / 1e6);
+        assertTrue("Peor búsqueda: " + peor / 1e6 + " ms", peor < 200_000_000L);
+    }
+}
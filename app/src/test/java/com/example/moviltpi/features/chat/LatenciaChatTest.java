@@ -0,0 +1,96 @@
+package com.example.moviltpi.features.chat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Pruebas de {@link LatenciaChat} y {@link HistogramaLatencia} con un reloj controlado: cada tramo se
+ * mide una sola vez por mensaje, en la métrica de la ruta por la que llegó primero.
+ */
+public class LatenciaChatTest {
+
+    /** Reloj manual; el monótono se expresa en milisegundos para simplificar las cuentas */
+    private static final class RelojManual implements LatenciaChat.Reloj {
+        long ms;
+
+        @Override
+        public long monotonoNanos() {
+            return ms * 1_000_000L;
+        }
+
+        @Override
+        public long paredMs() {
+            return ms;
+        }
+    }
+
+    @Test
+    public void mensajePropioMideGuardadoEcoYRender() {
+        RelojManual reloj = new RelojManual();
+        LatenciaChat latencia = new LatenciaChat(reloj);
+
+        latencia.enviado("c1");
+        reloj.ms = 5;
+        latencia.mostrado("c1");
+        reloj.ms = 120;
+        latencia.recibido("c1", 0L, LatenciaChat.Ruta.LIVEQUERY);
+        reloj.ms = 150;
+        latencia.guardado("c1");
+        // Llegadas y vinculaciones repetidas no se vuelven a medir
+        reloj.ms = 5_000;
+        latencia.recibido("c1", 0L, LatenciaChat.Ruta.POLLING);
+        latencia.mostrado("c1");
+        latencia.guardado("c1");
+
+        assertEquals(5, latencia.getResumen(LatenciaChat.ENVIO_RENDER).getP99());
+        assertEquals(120, latencia.getResumen("envio.eco.livequery").getP50());
+        assertEquals(150, latencia.getResumen(LatenciaChat.ENVIO_GUARDADO).getP50());
+        assertEquals(1, latencia.getResumen(LatenciaChat.ENVIO_GUARDADO).getCantidad());
+        assertNull(latencia.getResumen("envio.eco.polling"));
+        assertEquals(3, latencia.getResumenes().size());
+    }
+
+    @Test
+    public void mensajeRecibidoSeMideDesdeSuHoraDeEnvio() {
+        RelojManual reloj = new RelojManual();
+        LatenciaChat latencia = new LatenciaChat(reloj);
+
+        reloj.ms = 10_000;
+        latencia.recibido("m1", 9_000L, LatenciaChat.Ruta.POLLING);
+        latencia.recibido("m1", 9_000L, LatenciaChat.Ruta.LIVEQUERY);
+        latencia.recibido("sinHora", null, LatenciaChat.Ruta.LIVEQUERY);
+        reloj.ms = 10_040;
+        latencia.mostrado("m1");
+        latencia.mostrado("sinHora");
+
+        assertEquals(1_000, latencia.getResumen("recepcion.polling").getP50());
+        assertEquals(1_040, latencia.getResumen("recepcion.render.polling").getP50());
+        assertNull(latencia.getResumen("recepcion.livequery"));
+        assertNull(latencia.getResumen("recepcion.render.livequery"));
+    }
+
+    @Test
+    public void histogramaCalculaPercentilesDeLasMuestrasRecientes() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        assertEquals(0, histograma.getResumen().getCantidad());
+        for (int i = 1; i <= 100; i++) {
+            histograma.registrar(i);
+        }
+        HistogramaLatencia.Resumen resumen = histograma.getResumen();
+        assertEquals(50, resumen.getP50());
+        assertEquals(95, resumen.getP95());
+        assertEquals(99, resumen.getP99());
+
+        // Al llenarse el búfer las mediciones viejas dejan de contar para los percentiles
+        for (int i = 0; i < HistogramaLatencia.MUESTRAS; i++) {
+            histograma.registrar(1_000);
+        }
+        resumen = histograma.getResumen();
+        assertEquals(100 + HistogramaLatencia.MUESTRAS, resumen.getCantidad());
+        assertEquals(1_000, resumen.getP50());
+        histograma.registrar(-5);
+        assertEquals(1_000, histograma.getResumen().getP50());
+    }
+}